@@ -0,0 +1,250 @@
+/*
+ * Copyright (c) 2020 Hassan Abouelela
+ * Licensed under the MIT License
+ */
+
+package com.example.examplemod.functions;
+
+import com.example.examplemod.events.ClientEventHandlers;
+import com.example.examplemod.inventory.CraftPlan;
+import com.example.examplemod.inventory.CraftPlanner;
+import net.minecraft.item.Item;
+import net.minecraft.item.ItemStack;
+import net.minecraft.item.Items;
+import net.minecraft.nbt.CompoundNBT;
+import net.minecraft.nbt.ListNBT;
+import net.minecraft.nbt.StringNBT;
+import net.minecraft.util.registry.Bootstrap;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.AbstractMap.SimpleEntry;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map.Entry;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Throughput of the inventory algorithms in {@link Functions} and {@link ArmorEquip}, on vanilla inventory sizes and
+ * a large modded container, with plain stacks or stacks carrying names and enchantments.
+ *
+ * <p>Runs against the real item registry, bootstrapped without a game. The default arguments of the jmh task add the
+ * gc profiler, so every result comes with its allocation rate. Algorithms that change the lists they are given run
+ * on fresh copies, whose cost is measured on its own by {@link #copyInventory()}.</p>
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class InventoryBenchmark {
+    /**
+     * Items the inventories are filled with.
+     */
+    private static final Item[] ITEMS = {Items.STONE, Items.DIRT, Items.COBBLESTONE, Items.OAK_LOG, Items.OAK_PLANKS,
+            Items.STICK, Items.TORCH, Items.IRON_INGOT, Items.GOLD_INGOT, Items.REDSTONE, Items.COAL, Items.DIAMOND,
+            Items.ROTTEN_FLESH, Items.BONE, Items.DIAMOND_SWORD, Items.IRON_PICKAXE, Items.BOW};
+    /**
+     * Armor the inventories are filled with, competing for the armor slots.
+     */
+    private static final Item[] ARMOR = {Items.LEATHER_HELMET, Items.LEATHER_BOOTS, Items.IRON_HELMET,
+            Items.IRON_CHESTPLATE, Items.IRON_LEGGINGS, Items.IRON_BOOTS, Items.DIAMOND_HELMET,
+            Items.DIAMOND_CHESTPLATE, Items.DIAMOND_LEGGINGS, Items.DIAMOND_BOOTS};
+
+    /**
+     * The number of slots: a player inventory, a large chest, a double large chest, and a large modded container.
+     */
+    @Param({"36", "54", "108", "1296"})
+    private int slots;
+
+    /**
+     * The kind of stacks: PLAIN stacks only, or NBT where most stacks are renamed and enchanted.
+     */
+    @Param({"PLAIN", "NBT"})
+    private String mix;
+
+    /**
+     * The inventory, about a quarter empty.
+     */
+    private ArrayList<ItemStack> inventory;
+    /**
+     * An empty inventory of the same size, to move items into.
+     */
+    private ArrayList<ItemStack> empty;
+    /**
+     * A crafting grid holding a single log.
+     */
+    private List<ItemStack> craftingGrid;
+    /**
+     * The result of crafting a log.
+     */
+    private ItemStack craftResult;
+    /**
+     * The inventory and its armor slots, as given to {@link ArmorEquip#getBestArmor(ArrayList)}.
+     */
+    private ArrayList<Entry<ItemStack, Integer>> armorInventory;
+    /**
+     * The width of the inventory, when arranged in rows of nine.
+     */
+    private int width;
+    /**
+     * The height of the inventory, when arranged in rows of nine.
+     */
+    private int height;
+
+    @Setup
+    public void setup() {
+        Bootstrap.register();
+
+        Random random = new Random(this.slots);
+        boolean nbt = this.mix.equals("NBT");
+
+        this.inventory = new ArrayList<>(this.slots);
+        for (int slot = 0; slot < this.slots; slot++) {
+            int roll = random.nextInt(20);
+
+            if (roll < 5) {
+                this.inventory.add(ItemStack.EMPTY.copy());
+                continue;
+            }
+
+            Item item = roll == 5 ? ARMOR[random.nextInt(ARMOR.length)] : ITEMS[random.nextInt(ITEMS.length)];
+            ItemStack itemStack = new ItemStack(item, 1 + random.nextInt(item.getMaxStackSize()));
+
+            // A few distinct tags, so that tagged stacks still merge with each other
+            if (nbt && random.nextInt(4) != 0) itemStack.setTag(createTag(random.nextInt(4)));
+
+            this.inventory.add(itemStack);
+        }
+
+        this.empty = new ArrayList<>(Collections.nCopies(this.slots, ItemStack.EMPTY));
+
+        this.craftingGrid = new ArrayList<>(Collections.nCopies(9, ItemStack.EMPTY));
+        this.craftingGrid.set(0, new ItemStack(Items.OAK_LOG));
+        this.craftResult = new ItemStack(Items.OAK_PLANKS, 4);
+
+        this.armorInventory = new ArrayList<>();
+        for (int i = 0; i < 4; i++) {
+            this.armorInventory.add(new SimpleEntry<>(ItemStack.EMPTY, -1));
+        }
+        for (int slot = 0; slot < this.slots; slot++) {
+            this.armorInventory.add(new SimpleEntry<>(this.inventory.get(slot), slot));
+        }
+
+        this.width = 9;
+        this.height = this.slots / this.width;
+    }
+
+    /**
+     * Create the tag of a renamed and enchanted stack.
+     *
+     * @param variant Which of the few tags to create.
+     * @return The tag.
+     */
+    private static CompoundNBT createTag(int variant) {
+        CompoundNBT display = new CompoundNBT();
+        display.putString("Name", "{\"text\":\"Stack " + variant + "\"}");
+
+        ListNBT lore = new ListNBT();
+        lore.add(StringNBT.valueOf("{\"text\":\"Looted from the nether\"}"));
+        display.put("Lore", lore);
+
+        ListNBT enchantments = new ListNBT();
+        for (int i = 0; i <= variant; i++) {
+            CompoundNBT enchantment = new CompoundNBT();
+            enchantment.putString("id", i % 2 == 0 ? "minecraft:unbreaking" : "minecraft:mending");
+            enchantment.putShort("lvl", (short) (1 + i));
+            enchantments.add(enchantment);
+        }
+
+        CompoundNBT tag = new CompoundNBT();
+        tag.put("display", display);
+        tag.put("Enchantments", enchantments);
+        tag.putInt("RepairCost", variant);
+
+        return tag;
+    }
+
+    /**
+     * Copy the list of the inventory. The planners never modify the stacks themselves.
+     *
+     * @return The copy.
+     */
+    private ArrayList<ItemStack> copy() {
+        return new ArrayList<>(this.inventory);
+    }
+
+    @Benchmark
+    public ArrayList<ItemStack> copyInventory() {
+        return copy();
+    }
+
+    @Benchmark
+    public ArrayList<ItemStack> sortAlphabetical() {
+        return Functions.sortStacks(this.inventory, 0, ClientEventHandlers.Order.DEFAULT, Functions.Mode.DEFAULT,
+                0, 0);
+    }
+
+    @Benchmark
+    public ArrayList<ItemStack> sortCompact() {
+        return Functions.sortStacks(this.inventory, 0, ClientEventHandlers.Order.DEFAULT, Functions.Mode.COMPACT,
+                0, 0);
+    }
+
+    @Benchmark
+    public ArrayList<ItemStack> sortColumns() {
+        return Functions.sortStacks(this.inventory, 0, ClientEventHandlers.Order.COLUMNS, Functions.Mode.DEFAULT,
+                this.width, this.height);
+    }
+
+    @Benchmark
+    public ArrayList<ItemStack> sortCategories() {
+        return Functions.sortStacks(this.inventory, 0, ClientEventHandlers.Order.CATEGORIES, Functions.Mode.DEFAULT,
+                this.width, this.height);
+    }
+
+    @Benchmark
+    public ArrayList<ItemStack> moveItem() {
+        ArrayList<ItemStack> from = copy();
+        ArrayList<ItemStack> to = new ArrayList<>(this.empty);
+
+        // Shift-click every slot, as dragging the whole inventory over would
+        for (int slot = 0; slot < from.size(); slot++) {
+            Functions.moveItem(from, to, slot, from.get(slot).getCount(), true);
+        }
+
+        return to;
+    }
+
+    @Benchmark
+    public ArrayList<ItemStack> moveAllItems() {
+        ArrayList<ItemStack> from = copy();
+        ArrayList<ItemStack> to = new ArrayList<>(this.empty);
+
+        Functions.moveAllItems(from, to, Items.COBBLESTONE);
+
+        return to;
+    }
+
+    @Benchmark
+    public CraftPlan<ItemStack> craftAll() {
+        return CraftPlanner.plan(this.craftingGrid, this.craftResult, this.inventory, ItemStackModel.INSTANCE);
+    }
+
+    @Benchmark
+    public int[] getBestArmor() {
+        return ArmorEquip.getBestArmor(this.armorInventory);
+    }
+}
@@ -0,0 +1,103 @@
+/*
+ * Copyright (c) 2020 Hassan Abouelela
+ * Licensed under the MIT License
+ */
+
+package com.example.examplemod.inventory;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares the old quadratic COMPACT ordering against {@link SortPlanner#sortCompact(List, List, java.util.function.Function)}.
+ * Stacks are stood in for by a plain object with an item kind, so the benchmark does not need a running game.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class CompactSortBenchmark {
+    /**
+     * Stand-in for an ItemStack.
+     */
+    private static final class Stack {
+        /**
+         * The kind of item in the stack.
+         */
+        private final Integer item;
+
+        Stack(int item) {
+            this.item = item;
+        }
+    }
+
+    /**
+     * The number of slots: a large chest, a double large chest, and a large modded container.
+     */
+    @Param({"54", "108", "1296"})
+    private int slots;
+
+    /**
+     * The inventory before compacting.
+     */
+    private List<Stack> original;
+    /**
+     * The compacted stacks, in alphabetical order.
+     */
+    private List<Stack> sorted;
+
+    @Setup
+    public void setup() {
+        Random random = new Random(slots);
+        int kinds = Math.max(4, slots / 3);
+
+        this.original = new ArrayList<>(slots);
+        for (int i = 0; i < slots; i++) {
+            this.original.add(new Stack(random.nextInt(kinds)));
+        }
+
+        // Compacting merges about half the stacks
+        this.sorted = new ArrayList<>(this.original.subList(0, slots / 2));
+        Collections.shuffle(this.sorted, random);
+    }
+
+    @Benchmark
+    public List<Stack> quadratic() {
+        ArrayList<Stack> sorted = new ArrayList<>(this.sorted);
+        ArrayList<Stack> tempSorted = new ArrayList<>();
+        for (Stack originalItem: this.original) {
+            for (Stack sortedItem: sorted) {
+                if (originalItem.item.equals(sortedItem.item)) {
+                    tempSorted.add(sortedItem);
+                    sorted.remove(sortedItem);
+                    break;
+                }
+            }
+        }
+        tempSorted.addAll(sorted);
+
+        return tempSorted;
+    }
+
+    @Benchmark
+    public List<Stack> linear() {
+        return SortPlanner.sortCompact(this.sorted, this.original, stack -> stack.item);
+    }
+}
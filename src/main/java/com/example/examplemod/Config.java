@@ -5,25 +5,27 @@
 
 package com.example.examplemod;
 
-import com.fasterxml.jackson.core.JsonProcessingException;
 import com.fasterxml.jackson.databind.ObjectMapper;
-import net.minecraft.client.gui.ChatLine;
-import net.minecraft.client.gui.screen.*;
-import net.minecraft.client.gui.screen.inventory.*;
 import net.minecraftforge.fml.loading.FMLPaths;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 
 import javax.annotation.Nullable;
 import java.io.File;
-import java.io.FileNotFoundException;
 import java.io.IOException;
-import java.io.PrintWriter;
+import java.nio.file.AtomicMoveNotSupportedException;
 import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 public class Config {
     /**
@@ -35,9 +37,17 @@ public class Config {
      */
     private static final ObjectMapper mapper = new ObjectMapper();
     /**
-     * The content of the options.
+     * Writes the options file in the background, one write at a time.
      */
-    private Map<String, Map> content = new HashMap<>();
+    private static final ExecutorService writer = Executors.newSingleThreadExecutor(task -> {
+        Thread thread = new Thread(task, ExampleMod.NAME_SHORT + " Config Writer");
+        thread.setDaemon(true);
+        return thread;
+    });
+    /**
+     * The content of the options. Replaced as a whole, never changed once published.
+     */
+    private volatile Map<String, Map> content = new HashMap<>();
     /**
      * Game constants.
      */
@@ -45,7 +55,19 @@ public class Config {
     /**
      * Whether the settings have been read successfully.
      */
-    private boolean readError = false;
+    private volatile boolean readError = false;
+    /**
+     * Whether the constants changed since they were last saved, see {@link Config#saveConstants()}.
+     */
+    private boolean constantsChanged = false;
+    /**
+     * The typed snapshot of the options. Replaced as a whole whenever the options change.
+     */
+    private volatile Settings settings = Settings.DEFAULTS;
+    /**
+     * Whether a write of the options file is scheduled and has not started yet.
+     */
+    private final AtomicBoolean savePending = new AtomicBoolean(false);
 
     /**
      * The file of the config.
@@ -53,32 +75,47 @@ public class Config {
     public final File configFile = new File(FMLPaths.CONFIGDIR.get() +
             String.format("/%s.json", ExampleMod.NAME));
     /**
-     * Blacklisted screens.
-     */
-    public static final ArrayList<String> blacklist = new ArrayList<>(Arrays.asList(
-            AbstractCommandBlockScreen.class.getName(), AddServerScreen.class.getName(), AlertScreen.class.getName(),
-            ChatOptionsScreen.class.getName(), ChatScreen.class.getName(), CommandBlockScreen.class.getName(),
-            ConfirmBackupScreen.class.getName(), ConfirmOpenLinkScreen.class.getName(), ConfirmScreen.class.getName(),
-            ConnectingScreen.class.getName(), ControlsScreen.class.getName(), CreateBuffetWorldScreen.class.getName(),
-            CreateFlatWorldScreen.class.getName(), CreateWorldScreen.class.getName(),
-            CustomizeSkinScreen.class.getName(), DeathScreen.class.getName(), DemoScreen.class.getName(),
-            DirtMessageScreen.class.getName(), DisconnectedScreen.class.getName(),
-            DownloadTerrainScreen.class.getName(), EditBookScreen.class.getName(),
-            EditMinecartCommandBlockScreen.class.getName(), EditSignScreen.class.getName(),
-            EditStructureScreen.class.getName(), EditWorldScreen.class.getName(), ErrorScreen.class.getName(),
-            FlatPresetsScreen.class.getName(), IngameMenuScreen.class.getName(), JigsawScreen.class.getName(),
-            LanguageScreen.class.getName(), MainMenuScreen.class.getName(), MemoryErrorScreen.class.getName(),
-            MouseSettingsScreen.class.getName(), MultiplayerScreen.class.getName(),
-            MultiplayerWarningScreen.class.getName(), OptimizeWorldScreen.class.getName(),
-            OptionsScreen.class.getName(), OptionsSoundsScreen.class.getName(), ReadBookScreen.class.getName(),
-            ResourcePacksScreen.class.getName(), ServerListScreen.class.getName(), ServerSelectionList.class.getName(),
-            SettingsScreen.class.getName(), ShareToLanScreen.class.getName(), SleepInMultiplayerScreen.class.getName(),
-            StatsScreen.class.getName(), VideoSettingsScreen.class.getName(), WinGameScreen.class.getName(),
-            WorkingScreen.class.getName(), WorldLoadProgressScreen.class.getName(), WorldSelectionList.class.getName(),
-            WorldSelectionScreen.class.getName(), ChatLine.class.getName(), OptionsScreen.class.getName(),
-            OptionsSoundsScreen.class.getName(), ChatOptionsScreen.class.getName(), ChatScreen.class.getName()
+     * The package of the game's screens.
+     */
+    private static final String SCREEN = "net.minecraft.client.gui.screen.";
+    /**
+     * The package of the game's inventory screens.
+     */
+    private static final String INVENTORY = "net.minecraft.client.gui.screen.inventory.";
+    /**
+     * Blacklisted screens, by class name. Names rather than classes, so that the screens are not loaded with the
+     * config, and the config can be loaded where the screens do not exist, such as on a dedicated server.
+     */
+    public static final List<String> blacklist = Collections.unmodifiableList(Arrays.asList(
+            INVENTORY + "AbstractCommandBlockScreen", SCREEN + "AddServerScreen", SCREEN + "AlertScreen",
+            SCREEN + "ChatOptionsScreen", SCREEN + "ChatScreen", INVENTORY + "CommandBlockScreen",
+            SCREEN + "ConfirmBackupScreen", SCREEN + "ConfirmOpenLinkScreen", SCREEN + "ConfirmScreen",
+            SCREEN + "ConnectingScreen", SCREEN + "ControlsScreen", SCREEN + "CreateBuffetWorldScreen",
+            SCREEN + "CreateFlatWorldScreen", SCREEN + "CreateWorldScreen", SCREEN + "CustomizeSkinScreen",
+            SCREEN + "DeathScreen", SCREEN + "DemoScreen", SCREEN + "DirtMessageScreen", SCREEN + "DisconnectedScreen",
+            SCREEN + "DownloadTerrainScreen", INVENTORY + "EditBookScreen",
+            INVENTORY + "EditMinecartCommandBlockScreen", INVENTORY + "EditSignScreen",
+            INVENTORY + "EditStructureScreen", SCREEN + "EditWorldScreen", SCREEN + "ErrorScreen",
+            SCREEN + "FlatPresetsScreen", SCREEN + "IngameMenuScreen", INVENTORY + "JigsawScreen",
+            SCREEN + "LanguageScreen", SCREEN + "MainMenuScreen", SCREEN + "MemoryErrorScreen",
+            SCREEN + "MouseSettingsScreen", SCREEN + "MultiplayerScreen", SCREEN + "MultiplayerWarningScreen",
+            SCREEN + "OptimizeWorldScreen", SCREEN + "OptionsScreen", SCREEN + "OptionsSoundsScreen",
+            SCREEN + "ReadBookScreen", SCREEN + "ResourcePacksScreen", SCREEN + "ServerListScreen",
+            SCREEN + "ServerSelectionList", SCREEN + "SettingsScreen", SCREEN + "ShareToLanScreen",
+            SCREEN + "SleepInMultiplayerScreen", SCREEN + "StatsScreen", SCREEN + "VideoSettingsScreen",
+            SCREEN + "WinGameScreen", SCREEN + "WorkingScreen", SCREEN + "WorldLoadProgressScreen",
+            SCREEN + "WorldSelectionList", SCREEN + "WorldSelectionScreen", "net.minecraft.client.gui.ChatLine"
     ));
     // TODO: Add all screens above
+    /**
+     * Whether each screen class looked up is blacklisted.
+     */
+    private static final ClassValue<Boolean> blacklisted = new ClassValue<Boolean>() {
+        @Override
+        protected Boolean computeValue(Class<?> type) {
+            return blacklist.contains(type.getName());
+        }
+    };
 
     /**
      * Loading or creating mod settings.
@@ -114,25 +151,10 @@ public class Config {
      * 1: File created.
      * 2: Error.
      */
-    public int load() {
+    public synchronized int load() {
         try {
             if (checkFile()) {
-                this.content = new HashMap<>();
-                Map raw = mapper.readValue(configFile, Map.class);
-
-                for (Object key: raw.keySet()) {
-                    try {
-                        this.content.put(String.valueOf(key), (Map) raw.get(key));
-
-                    } catch (Exception error) {
-                        LOGGER.warn(String.format("[%s] Could not load %s property while loading CONFIG. " +
-                                        "Reason: %s - %s",
-                                ExampleMod.NAME, key,
-                                error.getClass().getCanonicalName(), Arrays.toString(error.getStackTrace())));
-                    }
-                }
-
-                this.constants = getConstants();
+                apply(read());
 
                 return 0;
             } else {
@@ -145,10 +167,70 @@ public class Config {
                     ExampleMod.NAME, error.getClass().getCanonicalName(), Arrays.toString(error.getStackTrace())));
             this.readError = true;
             this.content = null;
+            compile();
             return 2;
         }
     }
 
+    /**
+     * Reload the options after the file changed. Unlike {@link Config#load()}, keeps the current options if the file
+     * can not be read, as it may be in the middle of being saved.
+     *
+     * @return True if the options were reloaded.
+     */
+    synchronized boolean reload() {
+        if (!checkFile()) return false;
+
+        try {
+            apply(read());
+            return true;
+
+        } catch (IOException error) {
+            LOGGER.warn(String.format("[%s] Could not read the changed settings file, keeping the current settings. " +
+                    "%s - %s", ExampleMod.NAME, error.getClass().getCanonicalName(), error.getMessage()));
+            return false;
+        }
+    }
+
+    /**
+     * Read the options file.
+     *
+     * @return The options.
+     * @throws IOException The file could not be read, or is not a JSON object.
+     */
+    private Map<String, Map> read() throws IOException {
+        Map<String, Map> content = new HashMap<>();
+        Map raw = mapper.readValue(configFile, Map.class);
+
+        if (raw == null) throw new IOException("The settings file holds no options");
+
+        for (Object key: raw.keySet()) {
+            try {
+                content.put(String.valueOf(key), (Map) raw.get(key));
+
+            } catch (Exception error) {
+                LOGGER.warn(String.format("[%s] Could not load %s property while loading CONFIG. " +
+                                "Reason: %s - %s",
+                        ExampleMod.NAME, key,
+                        error.getClass().getCanonicalName(), Arrays.toString(error.getStackTrace())));
+            }
+        }
+
+        return content;
+    }
+
+    /**
+     * Use options that were read, and publish them to the readers.
+     *
+     * @param content The options.
+     */
+    private void apply(Map<String, Map> content) {
+        this.content = content;
+        this.readError = false;
+        this.constants = getConstants();
+        compile();
+    }
+
 
     /**
      * Class for managing single options, and option groups.
@@ -218,26 +300,13 @@ public class Config {
      */
     private Setting getConstants() {
         try {
-            if (this.content.containsKey("Constants")) {
-                ArrayList value = (ArrayList) this.content.get("Constants");
-
-                ArrayList<Map> savedConstants = new ArrayList<>();
-                String description = null;
+            // Constants are saved as a single group, holding the builtin constants and the registered ones
+            if (this.content.get("Constants") != null) {
+                Map saved = this.content.get("Constants");
+                Setting constants = new Setting("Constants", String.valueOf(saved.get("Description")));
 
-                for (Object setting: value) {
-                    if (String.valueOf(((Map) setting).keySet().toArray()[0]).equals("Description")) {
-                        description = String.valueOf(((Map) setting).values().toArray()[0]);
-
-                    } else {
-                        savedConstants.add((Map) setting);
-
-                    }
-                }
-
-                Setting constants = new Setting("Constants", description);
-
-                for (Map setting: savedConstants) {
-                    constants.addSetting(String.valueOf(setting.keySet().toArray()[0]), setting.values());
+                for (Object key: saved.keySet()) {
+                    if (!"Description".equals(key)) constants.addSetting(String.valueOf(key), saved.get(key));
                 }
 
                 return constants;
@@ -268,16 +337,16 @@ public class Config {
             this.readError = true;
         }
 
-        ArrayList<Class> supportedClassesPlayer = new ArrayList<>(Arrays.asList(
-                AnvilScreen.class, BeaconScreen.class, BlastFurnaceScreen.class,
-                BrewingStandScreen.class, CartographyTableScreen.class,
-                CraftingScreen.class, CreativeScreen.class, FurnaceScreen.class,
-                InventoryScreen.class, MerchantScreen.class, SmokerScreen.class,
-                StonecutterScreen.class, GrindstoneScreen.class, HopperScreen.class,
-                LecternScreen.class, LoomScreen.class
+        ArrayList<String> supportedClassesPlayer = new ArrayList<>(Arrays.asList(
+                INVENTORY + "AnvilScreen", INVENTORY + "BeaconScreen", INVENTORY + "BlastFurnaceScreen",
+                INVENTORY + "BrewingStandScreen", INVENTORY + "CartographyTableScreen",
+                INVENTORY + "CraftingScreen", INVENTORY + "CreativeScreen", INVENTORY + "FurnaceScreen",
+                INVENTORY + "InventoryScreen", INVENTORY + "MerchantScreen", INVENTORY + "SmokerScreen",
+                INVENTORY + "StonecutterScreen", INVENTORY + "GrindstoneScreen", INVENTORY + "HopperScreen",
+                INVENTORY + "LecternScreen", INVENTORY + "LoomScreen"
         ));
-        ArrayList<Class> supportedClassesInventory = new ArrayList<>(Arrays.asList(
-                ChestScreen.class, ShulkerBoxScreen.class
+        ArrayList<String> supportedClassesInventory = new ArrayList<>(Arrays.asList(
+                INVENTORY + "ChestScreen", INVENTORY + "ShulkerBoxScreen"
         ));
 
         ArrayList<Setting> settings = new ArrayList<>();
@@ -312,13 +381,18 @@ public class Config {
         changeOrder.addSetting("Timeout (seconds)", 2);
 
         backups.addSetting("Backups", true);
-        backups.addSetting("Number of backups", 10);
+        backups.addSetting("Number of backups", 100);
         backups.addSetting("Location (Path)", "Default");
+        backups.addSetting("Queue Size", 8);
+        backups.addSetting("Queue Policy", "Merge");
+        backups.addSetting("Additional Note", "Backups are written in the background. When Queue Size backups are waiting, a new backup is dropped (Drop Newest), replaces the oldest (Drop Oldest), or replaces the newest waiting backup (Merge).");
 
         MMM.addSetting("Middle Mouse Move", true);
         MMM.addSetting("Invert Scroll", false);
 
         refill.addSetting("Refill", true);
+        refill.addSetting("Server Side", false);
+        refill.addSetting("Additional Note", "If true, the server refills your hand in the same tick it runs out. Read when joining a server.");
 
         replace.addSetting("Replace", true);
 
@@ -340,6 +414,7 @@ public class Config {
         sortSettings.addSetting(changeOrder.name, changeOrder.getSettings());
         sortSettings.addSetting(sortMethod.name, sortMethod.getSettings());
         sortSettings.addSetting("Sort On Pickup", false);
+        sortSettings.addSetting("Sort On Pickup Window (ms)", 250);
         sortSettings.addSetting("Sort Outside Inventory", false);
         sortSettings.addSetting("Equip Best Armor on Sort", false);
 
@@ -351,25 +426,89 @@ public class Config {
 
         this.constants = getConstants();
         this.content = config;
+        compile();
+        save();
+    }
 
-        try {
-            this.update();
-        } catch (FileNotFoundException | JsonProcessingException error) {
-            LOGGER.error(String.format("[%s] Could not write to config file. Falling back to defaults. %s - %s",
-                    ExampleMod.NAME, error.getClass().getCanonicalName(), Arrays.toString(error.getStackTrace())));
-        }
+    /**
+     * Whether a screen is on the builtin blacklist. Looked up once per screen class.
+     *
+     * @param screen The class of the screen.
+     * @return True if the screen is blacklisted.
+     */
+    public static boolean isBlacklisted(Class<?> screen) {
+        return blacklisted.get(screen);
+    }
+
+    /**
+     * Compile the current options into a new snapshot, and publish it to the readers.
+     */
+    private void compile() {
+        this.settings = Settings.compile(this.content, this.constants == null ? null : this.constants.getSettings());
+    }
+
+    /**
+     * Returns the typed snapshot of the options.
+     *
+     * @return The current snapshot.
+     */
+    public Settings getSettings() {
+        return this.settings;
+    }
+
+    /**
+     * Returns the typed snapshot of the options of the mod, or the defaults if the config could not be set up.
+     *
+     * @return The current snapshot.
+     */
+    public static Settings settings() {
+        Config config = ExampleMod.CONFIG;
+
+        return config != null ? config.settings : Settings.DEFAULTS;
     }
 
     /**
-     * Update the options file with the current options.
+     * Write the current options to the options file, in the background.
+     * Saves requested before the write starts are written together, with the options current at that time.
+     * Nothing is written while the options file could not be read, so it is never replaced by the defaults.
+     */
+    void save() {
+        if (this.readError || this.content == null) return;
+        if (!this.savePending.compareAndSet(false, true)) return;
+
+        writer.execute(() -> {
+            this.savePending.set(false);
+
+            Map<String, Map> content = this.content;
+            if (this.readError || content == null) return;
+
+            try {
+                this.update(content);
+            } catch (IOException error) {
+                LOGGER.error(String.format("[%s] Could not write to config file. %s - %s", ExampleMod.NAME,
+                        error.getClass().getCanonicalName(), Arrays.toString(error.getStackTrace())));
+            }
+        });
+    }
+
+    /**
+     * Update the options file with some options. The options are written to a temporary file first, which then
+     * replaces the options file, so that readers never see a partly written file.
      *
-     * @throws FileNotFoundException Couldn't find options file.
-     * @throws JsonProcessingException Couldn't convert the options to JSON.
+     * @param content The options to write.
+     * @throws IOException Couldn't write the options file.
      */
-    private void update() throws FileNotFoundException, JsonProcessingException {
-        PrintWriter printer = new PrintWriter(this.configFile);
-        printer.write(mapper.writerWithDefaultPrettyPrinter().writeValueAsString(content));
-        printer.flush(); printer.close();
+    private void update(Map<String, Map> content) throws IOException {
+        Path file = this.configFile.toPath();
+        Path temporary = file.resolveSibling(file.getFileName() + ".tmp");
+
+        Files.write(temporary, mapper.writerWithDefaultPrettyPrinter().writeValueAsBytes(content));
+
+        try {
+            Files.move(temporary, file, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        } catch (AtomicMoveNotSupportedException ignored) {
+            Files.move(temporary, file, StandardCopyOption.REPLACE_EXISTING);
+        }
     }
 
     /**
@@ -439,18 +578,29 @@ public class Config {
     }
 
     /**
-     * Updates the game's constants.
+     * Updates the game's constants in memory. Call {@link Config#saveConstants()} once done updating, to write them.
      *
      * @param key The constant to update.
      * @param value The new value.
-     *
-     * @throws FileNotFoundException Could not find the config file.
-     * @throws JsonProcessingException Could not convert to JSON.
      */
-    void updateConstants(String key, Object value) throws FileNotFoundException, JsonProcessingException {
+    synchronized void updateConstants(String key, Object value) {
         this.constants.addSetting(key, value);
-        this.content.putAll(this.constants.get());
 
-        this.update();
+        // A copy, the constants keep changing while the published content is written
+        Map<String, Map> content = new HashMap<>(this.content);
+        content.put(this.constants.name, new HashMap<>(this.constants.getSettings()));
+        this.content = content;
+        this.constantsChanged = true;
+        compile();
+    }
+
+    /**
+     * Write the options file if the constants were updated since the last call.
+     */
+    synchronized void saveConstants() {
+        if (!this.constantsChanged) return;
+
+        this.constantsChanged = false;
+        save();
     }
 }
\ No newline at end of file
@@ -0,0 +1,133 @@
+/*
+ * Copyright (c) 2020 Hassan Abouelela
+ * Licensed under the MIT License
+ */
+
+package com.example.examplemod;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.io.IOException;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.FileSystems;
+import java.nio.file.Path;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Watches the options file, and reloads the options when it changes.
+ *
+ * <p>Runs on its own daemon thread, so the game thread never parses the file. Editors often save a file in several
+ * writes, so changes are only read once the file has been quiet for {@link ConfigWatcher#DEBOUNCE_MS}. Options that
+ * can not be read are ignored, and the current options are kept until the next change.</p>
+ */
+public class ConfigWatcher implements Runnable {
+    /**
+     * Event logger.
+     */
+    private static final Logger LOGGER = LogManager.getLogger();
+    /**
+     * The time the file must be quiet for before it is read, in milliseconds.
+     */
+    private static final long DEBOUNCE_MS = 500;
+
+    /**
+     * The config to reload.
+     */
+    private final Config config;
+    /**
+     * The watch service of the folder of the options file.
+     */
+    private final WatchService watcher;
+    /**
+     * The name of the options file in its folder.
+     */
+    private final Path fileName;
+
+    /**
+     * Creates a watcher.
+     *
+     * @param config The config to reload.
+     * @param watcher The watch service, already watching the folder of the options file.
+     */
+    private ConfigWatcher(Config config, WatchService watcher) {
+        this.config = config;
+        this.watcher = watcher;
+        this.fileName = config.configFile.toPath().getFileName();
+    }
+
+    /**
+     * Start watching the options file of a config.
+     *
+     * @param config The config to reload.
+     * @return False if the file can not be watched. The options are then only reloaded by command.
+     */
+    public static boolean start(Config config) {
+        Path folder = config.configFile.getAbsoluteFile().toPath().getParent();
+
+        try {
+            WatchService watcher = FileSystems.getDefault().newWatchService();
+            folder.register(watcher, StandardWatchEventKinds.ENTRY_CREATE, StandardWatchEventKinds.ENTRY_MODIFY);
+
+            Thread thread = new Thread(new ConfigWatcher(config, watcher), ExampleMod.NAME_SHORT + " Config Watcher");
+            thread.setDaemon(true);
+            thread.start();
+
+            return true;
+
+        } catch (IOException error) {
+            LOGGER.warn(String.format("[%s] Could not watch the settings file, use the reload command after editing " +
+                    "it. %s - %s", ExampleMod.NAME, error.getClass().getCanonicalName(),
+                    Arrays.toString(error.getStackTrace())));
+            return false;
+        }
+    }
+
+    @Override
+    public void run() {
+        try {
+            while (true) {
+                if (!drain(this.watcher.take())) continue;
+
+                // Wait for the file to be quiet
+                WatchKey key;
+                while ((key = this.watcher.poll(DEBOUNCE_MS, TimeUnit.MILLISECONDS)) != null) {
+                    drain(key);
+                }
+
+                if (this.config.reload()) {
+                    LOGGER.info(String.format("[%s] Settings file changed, reloaded successfully", ExampleMod.NAME));
+                }
+            }
+
+        } catch (InterruptedException | ClosedWatchServiceException ignored) {
+            LOGGER.debug(String.format("[%s] Stopped watching the settings file", ExampleMod.NAME));
+        }
+    }
+
+    /**
+     * Take the events of a watch key, and watch for the next ones.
+     *
+     * @param key The watch key.
+     * @return True if the options file changed.
+     */
+    private boolean drain(WatchKey key) {
+        boolean changed = false;
+
+        for (WatchEvent<?> event: key.pollEvents()) {
+            // Events were lost, the file may have changed
+            if (event.kind() == StandardWatchEventKinds.OVERFLOW || this.fileName.equals(event.context())) {
+                changed = true;
+            }
+        }
+
+        key.reset();
+
+        return changed;
+    }
+}
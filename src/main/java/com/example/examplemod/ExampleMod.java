@@ -8,7 +8,6 @@ package com.example.examplemod;
 import com.example.examplemod.events.ClientEventHandlers;
 import com.example.examplemod.events.ServerEventHandlers;
 import com.example.examplemod.network.Channel;
-import com.fasterxml.jackson.core.JsonProcessingException;
 import net.minecraft.item.Item;
 import net.minecraft.item.ItemStack;
 import net.minecraftforge.common.MinecraftForge;
@@ -18,7 +17,6 @@ import net.minecraftforge.fml.javafmlmod.FMLJavaModLoadingContext;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 
-import java.io.FileNotFoundException;
 import java.util.Arrays;
 import java.util.HashMap;
 import java.util.Map;
@@ -65,9 +63,14 @@ public class ExampleMod {
 //     * Whether to run mod features on non-supported servers.
 //     */
 //    public static boolean serverAllowed = false; - Not Implemented
+    /**
+     * The time taken to set up the config, in nanoseconds. Reported with the construction time of the mod.
+     */
+    private static final long configTime;
 
     static {
         // Loading Config
+        long start = System.nanoTime();
         try {
             CONFIG = new Config();
         } catch (Exception error) {
@@ -75,12 +78,18 @@ public class ExampleMod {
                     error.getClass().getCanonicalName(), Arrays.toString(error.getStackTrace())));
             CONFIG = null;
         }
+        configTime = System.nanoTime() - start;
     }
 
     /**
      * Main mod class.
      */
     public ExampleMod( ) {
+        long start = System.nanoTime();
+
+        // Reload the options when their file changes
+        if (CONFIG != null) ConfigWatcher.start(CONFIG);
+
         // Register IMC processing
         FMLJavaModLoadingContext.get().getModEventBus().addListener(this::processIMC);
 
@@ -93,6 +102,9 @@ public class ExampleMod {
 
         ServerEventHandlers serverEventHandlers = new ServerEventHandlers();
         MinecraftForge.EVENT_BUS.register(serverEventHandlers);
+
+        LOGGER.info(String.format("[%s] Startup timing: config set up in %.1f ms, mod constructed in %.1f ms", NAME,
+                configTime / 1e6, (System.nanoTime() - start) / 1e6));
     }
 
     /**
@@ -110,14 +122,7 @@ public class ExampleMod {
 
                 Map.Entry message = (Map.Entry) imcMessage.getMessageSupplier().get();
 
-                try {
-                    CONFIG.updateConstants(String.valueOf(message.getKey()), message.getValue());
-                } catch (FileNotFoundException | JsonProcessingException error) {
-                    LOGGER.error(String.format("[%s] Failed to update constants as per request of %s, aborting. " +
-                                    "Message: %s. Reason: %s - %s", NAME, imcMessage.getSenderModId(),
-                            imcMessage.getMessageSupplier().get(), error.getClass().getCanonicalName(),
-                            Arrays.toString(error.getStackTrace())));
-                }
+                CONFIG.updateConstants(String.valueOf(message.getKey()), message.getValue());
 
             } else if (imcMessage.getMethod().equals("Add Inventory")) {
                 LOGGER.debug(String.format("[%s] Received Inventory Registration request from '%s'. Content: %s",
@@ -164,5 +169,8 @@ public class ExampleMod {
             }
         }));
 
+        // Every registration is written at once, in the background
+        if (CONFIG != null) CONFIG.saveConstants();
+
     }
 }
\ No newline at end of file
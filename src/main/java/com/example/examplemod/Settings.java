@@ -0,0 +1,500 @@
+/*
+ * Copyright (c) 2020 Hassan Abouelela
+ * Licensed under the MIT License
+ */
+
+package com.example.examplemod;
+
+import com.example.examplemod.functions.BackupWriter;
+import com.example.examplemod.functions.Functions;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import javax.annotation.Nullable;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * An immutable, typed snapshot of the options, compiled once from the JSON maps of {@link Config}.
+ * Event handlers read plain fields from the current snapshot, instead of walking maps and casting values on every key
+ * press, click and tool use. Missing options take the value the mod behaved with when the option was absent.
+ */
+public final class Settings {
+    /**
+     * Event logger.
+     */
+    private static final Logger LOGGER = LogManager.getLogger();
+
+    /**
+     * The options of a screen registered through the game constants.
+     */
+    public static final class Screen {
+        /**
+         * The permission level of the screen.
+         */
+        public final Functions.Permission permission;
+        /**
+         * Whether the screen registered its size. Otherwise it is sorted like a chest.
+         */
+        public final boolean sized;
+        /**
+         * The width of the screen's inventory.
+         */
+        public final int width;
+        /**
+         * The height of the screen's inventory.
+         */
+        public final int height;
+        /**
+         * The number of slots at the start of the inventory that are not sorted.
+         */
+        public final int protectedIndex;
+
+        /**
+         * Compile the options of a screen.
+         *
+         * @param options The options, as registered.
+         */
+        private Screen(Object options) {
+            Map map = options instanceof Map ? (Map) options : Collections.emptyMap();
+
+            Functions.Permission permission = Functions.Permission.PLAYER_FIRST;
+            if (map.containsKey("type")) {
+                switch (String.valueOf(map.get("type")).toLowerCase()) {
+                    case "blacklist":
+                        permission = Functions.Permission.BLACKLIST;
+                        break;
+                    case "inventory_first":
+                        permission = Functions.Permission.INVENTORY_FIRST;
+                        break;
+                }
+            }
+
+            this.permission = permission;
+            this.sized = map.get("width") instanceof Number && map.get("height") instanceof Number;
+            this.width = getInt(map, "width", 0);
+            this.height = getInt(map, "height", 0);
+            this.protectedIndex = getInt(map, "protectedIndex", 0);
+        }
+    }
+
+    /**
+     * The options used when the config could not be read.
+     */
+    public static final Settings DEFAULTS = new Settings(null, null);
+
+    /**
+     * The sort key bind, 0 to disable it.
+     */
+    public final int keybind;
+    /**
+     * Whether the sort key bind works outside of inventories.
+     */
+    public final boolean sortOutsideInventory;
+    /**
+     * Whether middle clicking sorts.
+     */
+    public final boolean middleMouseSort;
+    /**
+     * Whether sorting again within the timeout changes the order.
+     */
+    public final boolean changeOrder;
+    /**
+     * The time within which sorting again changes the order, in milliseconds.
+     */
+    public final long changeOrderTimeout;
+    /**
+     * The sorting logic to use.
+     */
+    public final Functions.Mode sortMode;
+    /**
+     * Whether picking up items sorts the inventory.
+     */
+    public final boolean sortOnPickup;
+    /**
+     * The time pickup sorts wait for more pickups, in milliseconds.
+     */
+    public final long sortOnPickupWindow;
+    /**
+     * Whether sorting the player's inventory also equips the best armor.
+     */
+    public final boolean equipArmorOnSort;
+
+    /**
+     * Whether shortcuts are enabled at all.
+     */
+    public final boolean shortcuts;
+    /**
+     * Move one item - Control + Click.
+     */
+    public final boolean moveOne;
+    /**
+     * Move one stack - Shift/W/Up/S/Down + Click.
+     */
+    public final boolean moveStack;
+    /**
+     * Move all items of the same type - Control + Shift + Click.
+     */
+    public final boolean moveAllType;
+    /**
+     * Move everything - Space + Click.
+     */
+    public final boolean moveEverything;
+    /**
+     * Drop - Alt + Click.
+     */
+    public final boolean drop;
+    /**
+     * Craft one item - Ctrl + Click.
+     */
+    public final boolean craftOne;
+    /**
+     * Craft all from inventory - Ctrl + Shift + Click.
+     */
+    public final boolean craftAll;
+
+    /**
+     * Whether scrolling moves items between inventories.
+     */
+    public final boolean middleMouseMove;
+    /**
+     * Whether the scroll direction is inverted.
+     */
+    public final boolean invertScroll;
+
+    /**
+     * Whether held items are refilled.
+     */
+    public final boolean refill;
+    /**
+     * Whether the server refills held items.
+     */
+    public final boolean serverRefill;
+    /**
+     * Whether held items are replaced before they run out or break.
+     */
+    public final boolean replace;
+    /**
+     * Whether inventories are backed up on sort.
+     */
+    public final boolean backups;
+    /**
+     * The folder backups are written to, null for the folder of the world.
+     */
+    @Nullable
+    public final String backupLocation;
+    /**
+     * The number of backups kept.
+     */
+    public final int backupCount;
+    /**
+     * The maximum number of backups waiting to be written.
+     */
+    public final int backupQueueSize;
+    /**
+     * What to do with a backup made while the maximum number of backups are waiting to be written.
+     */
+    public final BackupWriter.Policy backupQueuePolicy;
+
+    /**
+     * The size of the player's hotbar.
+     */
+    public final int hotbarSize;
+    /**
+     * The width of the player's inventory, 0 if unknown.
+     */
+    public final int playerInventoryWidth;
+    /**
+     * The height of the player's inventory, 0 if unknown.
+     */
+    public final int playerInventoryHeight;
+    /**
+     * The width of chests, 0 if unknown.
+     */
+    public final int defaultChestWidth;
+
+    /**
+     * The options of the screens registered through the game constants, by class name.
+     */
+    private final Map<String, Screen> screens;
+    /**
+     * The permission level of the screens listed in the options, by class name.
+     */
+    private final Map<String, Functions.Permission> inventories;
+    /**
+     * The permission level of every screen class looked up, resolved once per class for this snapshot.
+     */
+    private final ClassValue<Functions.Permission> permissions = new ClassValue<Functions.Permission>() {
+        @Override
+        protected Functions.Permission computeValue(Class<?> type) {
+            return resolvePermission(type);
+        }
+    };
+
+    /**
+     * Compile the options.
+     *
+     * @param content The options, or null if they could not be read.
+     * @param constants The game constants, or null if they could not be read.
+     */
+    private Settings(@Nullable Map<String, Map> content, @Nullable Map<String, Object> constants) {
+        if (content == null) content = Collections.emptyMap();
+        if (constants == null) constants = Collections.emptyMap();
+
+        Map sortOptions = getMap(content, "Sort Options");
+        Map keybind = getMap(sortOptions, "Keybind");
+        Map changeOrder = getMap(sortOptions, "Change Order");
+        Map sortMethod = getMap(sortOptions, "Sort Method");
+
+        this.keybind = getInt(keybind, "Keybind", 82);
+        this.sortOutsideInventory = getBoolean(sortOptions, "Sort Outside Inventory", true);
+        this.middleMouseSort = getBoolean(sortOptions, "Middle Mouse Sort", true);
+        this.changeOrder = getBoolean(changeOrder, "Change Order", false)
+                && changeOrder.get("Timeout (seconds)") instanceof Number;
+        this.changeOrderTimeout = getInt(changeOrder, "Timeout (seconds)", 0) * 1000L;
+        this.sortOnPickup = getBoolean(sortOptions, "Sort On Pickup", true);
+        this.sortOnPickupWindow = getInt(sortOptions, "Sort On Pickup Window (ms)", 250);
+        this.equipArmorOnSort = getBoolean(sortOptions, "Equip Best Armor on Sort", false);
+
+        if (getBoolean(sortMethod, "Alphabetical", false)) {
+            this.sortMode = Functions.Mode.DEFAULT;
+        } else if (getBoolean(sortMethod, "Compact", false)) {
+            this.sortMode = Functions.Mode.COMPACT;
+        } else {
+            this.sortMode = Functions.Mode.NONE;
+        }
+
+        Map shortcuts = getMap(content, "Shortcuts");
+        this.shortcuts = shortcuts != null && getBoolean(shortcuts, "Shortcuts", true);
+        this.moveOne = getBoolean(shortcuts, "Move one item - Control + Click", true);
+        this.moveStack = getBoolean(shortcuts, "Move one stack - Shift/W/Up/S/Down + Click", true);
+        this.moveAllType = getBoolean(shortcuts, "Move all items of the same type - Control + Shift + Click", true);
+        this.moveEverything = getBoolean(shortcuts, "Move everything - Space + Click", true);
+        this.drop = getBoolean(shortcuts, "Drop - Alt + Click", false);
+        this.craftOne = getBoolean(shortcuts, "Craft one item - Ctrl + Click", true);
+        this.craftAll = getBoolean(shortcuts, "Craft all from inventory - Ctrl + Shift + Click", true);
+
+        Map middleMouseMove = getMap(content, "Middle Mouse Move");
+        this.middleMouseMove = middleMouseMove == null || getBoolean(middleMouseMove, "Middle Mouse Move", false);
+        this.invertScroll = getBoolean(middleMouseMove, "Invert Scroll", false);
+
+        Map refill = getMap(content, "Refill");
+        this.refill = getBoolean(refill, "Refill", false);
+        this.serverRefill = this.refill && getBoolean(refill, "Server Side", false);
+        this.replace = getBoolean(getMap(content, "Replace"), "Replace", true);
+
+        Map backups = getMap(content, "Backups");
+        this.backups = getBoolean(backups, "Backups", false);
+        String backupLocation = getString(backups, "Location (Path)", "Default");
+        this.backupLocation = backupLocation.equals("Default") ? null : backupLocation;
+        this.backupCount = Math.max(getInt(backups, "Number of backups", 100), 1);
+        this.backupQueueSize = Math.max(getInt(backups, "Queue Size", 8), 1);
+        this.backupQueuePolicy = getPolicy(backups, "Queue Policy", BackupWriter.Policy.MERGE);
+
+        this.hotbarSize = getInt(constants, "Player Hotbar Size", 9);
+        if (constants.get("Player Inventory Width") instanceof Number
+                && constants.get("Player Inventory Height") instanceof Number) {
+            this.playerInventoryWidth = getInt(constants, "Player Inventory Width", 0);
+            this.playerInventoryHeight = getInt(constants, "Player Inventory Height", 0);
+        } else {
+            this.playerInventoryWidth = 0;
+            this.playerInventoryHeight = 0;
+        }
+        this.defaultChestWidth = getInt(constants, "Default Chest Width", 0);
+
+        // Any constant may be a screen registered by another mod, looked up by the screen's class name
+        HashMap<String, Screen> screens = new HashMap<>();
+        for (Map.Entry<String, Object> constant: constants.entrySet()) {
+            screens.put(constant.getKey(), new Screen(constant.getValue()));
+        }
+        this.screens = screens;
+
+        // Only the first list present is used
+        HashMap<String, Functions.Permission> inventories = new HashMap<>();
+        if (!addInventories(inventories, getMap(content, "Player-First Inventories"),
+                Functions.Permission.PLAYER_FIRST)
+                && !addInventories(inventories, getMap(content, "Inventory-First Inventories"),
+                Functions.Permission.INVENTORY_FIRST)) {
+            addInventories(inventories, getMap(content, "Blacklisted Inventories"), Functions.Permission.BLACKLIST);
+        }
+        this.inventories = inventories;
+    }
+
+    /**
+     * Compile a snapshot of the options.
+     *
+     * @param content The options, or null if they could not be read.
+     * @param constants The game constants, or null if they could not be read.
+     *
+     * @return The snapshot.
+     */
+    static Settings compile(@Nullable Map<String, Map> content, @Nullable Map<String, Object> constants) {
+        return new Settings(content, constants);
+    }
+
+    /**
+     * Returns the options of a screen registered through the game constants.
+     *
+     * @param className The name of the class of the screen.
+     * @return The options, or null if the screen was not registered.
+     */
+    @Nullable
+    public Screen getScreen(String className) {
+        return this.screens.get(className);
+    }
+
+    /**
+     * Returns the permission level of a screen for sorting purposes.
+     *
+     * @param screen The class of the screen.
+     * @return The permission level.
+     */
+    public Functions.Permission getPermission(Class<?> screen) {
+        return this.permissions.get(screen);
+    }
+
+    /**
+     * Find the permission level of a screen. The builtin blacklist comes first, then the screens registered through
+     * the game constants, then the inventory lists of the options.
+     *
+     * @param screen The class of the screen.
+     * @return The permission level.
+     */
+    private Functions.Permission resolvePermission(Class<?> screen) {
+        if (Config.isBlacklisted(screen)) return Functions.Permission.BLACKLIST;
+
+        Screen options = this.screens.get(screen.getName());
+        if (options != null) return options.permission;
+
+        return this.inventories.getOrDefault(screen.getName(), Functions.Permission.PLAYER_FIRST);
+    }
+
+    /**
+     * Add the screens of an inventory list to the permission levels.
+     *
+     * @param inventories The permission levels to add to.
+     * @param list The list option.
+     * @param permission The permission level of the listed screens.
+     *
+     * @return False if the list is missing.
+     */
+    private static boolean addInventories(Map<String, Functions.Permission> inventories, @Nullable Map list,
+                                          Functions.Permission permission) {
+        if (list == null || !list.containsKey("Inventories")) return false;
+
+        if (list.get("Inventories") instanceof List) {
+            for (Object screen: (List) list.get("Inventories")) {
+                inventories.put(String.valueOf(screen), permission);
+            }
+        }
+
+        return true;
+    }
+
+    /**
+     * Get a nested option group.
+     *
+     * @param map The options to search, or null.
+     * @param key The name of the group.
+     *
+     * @return The group, or null if it is missing.
+     */
+    @Nullable
+    private static Map getMap(@Nullable Map map, String key) {
+        if (map == null) return null;
+
+        Object value = map.get(key);
+        if (value == null || value instanceof Map) return (Map) value;
+
+        LOGGER.warn(String.format("[%s] Option %s is not a group, ignoring it.", ExampleMod.NAME, key));
+        return null;
+    }
+
+    /**
+     * Get a boolean option.
+     *
+     * @param map The options to search, or null.
+     * @param key The name of the option.
+     * @param fallback The value to use if the option is missing or invalid.
+     *
+     * @return The value of the option.
+     */
+    private static boolean getBoolean(@Nullable Map map, String key, boolean fallback) {
+        if (map == null) return fallback;
+
+        Object value = map.get(key);
+        if (value == null) return fallback;
+        if (value instanceof Boolean) return (boolean) value;
+
+        LOGGER.warn(String.format("[%s] Option %s is not true or false, assuming %s.", ExampleMod.NAME, key, fallback));
+        return fallback;
+    }
+
+    /**
+     * Get a whole number option.
+     *
+     * @param map The options to search, or null.
+     * @param key The name of the option.
+     * @param fallback The value to use if the option is missing or invalid.
+     *
+     * @return The value of the option.
+     */
+    private static int getInt(@Nullable Map map, String key, int fallback) {
+        if (map == null) return fallback;
+
+        Object value = map.get(key);
+        if (value == null) return fallback;
+        if (value instanceof Number) return ((Number) value).intValue();
+
+        LOGGER.warn(String.format("[%s] Option %s is not a number, assuming %s.", ExampleMod.NAME, key, fallback));
+        return fallback;
+    }
+
+    /**
+     * Get a text option.
+     *
+     * @param map The options to search, or null.
+     * @param key The name of the option.
+     * @param fallback The value to use if the option is missing or invalid.
+     *
+     * @return The value of the option.
+     */
+    private static String getString(@Nullable Map map, String key, String fallback) {
+        if (map == null) return fallback;
+
+        Object value = map.get(key);
+        if (value == null) return fallback;
+        if (value instanceof String) return (String) value;
+
+        LOGGER.warn(String.format("[%s] Option %s is not text, assuming %s.", ExampleMod.NAME, key, fallback));
+        return fallback;
+    }
+
+    /**
+     * Get a backup queue policy option, by the name of the policy.
+     *
+     * @param map The options to search, or null.
+     * @param key The name of the option.
+     * @param fallback The value to use if the option is missing or invalid.
+     *
+     * @return The value of the option.
+     */
+    private static BackupWriter.Policy getPolicy(@Nullable Map map, String key, BackupWriter.Policy fallback) {
+        if (map == null) return fallback;
+
+        Object value = map.get(key);
+        if (value == null) return fallback;
+
+        for (BackupWriter.Policy policy: BackupWriter.Policy.values()) {
+            if (policy.name().replace('_', ' ').equalsIgnoreCase(String.valueOf(value).replace('_', ' '))) {
+                return policy;
+            }
+        }
+
+        LOGGER.warn(String.format("[%s] Option %s is not a known policy, assuming %s.", ExampleMod.NAME, key,
+                fallback));
+        return fallback;
+    }
+}
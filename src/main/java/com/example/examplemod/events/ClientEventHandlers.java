@@ -7,7 +7,12 @@ package com.example.examplemod.events;
 
 import com.example.examplemod.Config;
 import com.example.examplemod.ExampleMod;
+import com.example.examplemod.Settings;
+import com.example.examplemod.functions.CoalescingScheduler;
 import com.example.examplemod.functions.Functions;
+import com.example.examplemod.functions.StackKey;
+import com.example.examplemod.functions.StackKeyMultimap;
+import com.example.examplemod.network.CapabilityPacket;
 import com.example.examplemod.network.Channel;
 import com.example.examplemod.network.DropPacket;
 import com.example.examplemod.network.OptimizationPacket;
@@ -22,14 +27,14 @@ import net.minecraft.inventory.CraftingInventory;
 import net.minecraft.inventory.container.PlayerContainer;
 import net.minecraft.inventory.container.Slot;
 import net.minecraft.inventory.container.WorkbenchContainer;
-import net.minecraft.item.Item;
 import net.minecraft.item.ItemStack;
-import net.minecraft.nbt.CompoundNBT;
 import net.minecraft.util.Hand;
 import net.minecraftforge.api.distmarker.Dist;
 import net.minecraftforge.api.distmarker.OnlyIn;
+import net.minecraftforge.client.event.ClientPlayerNetworkEvent;
 import net.minecraftforge.client.event.GuiScreenEvent;
 import net.minecraftforge.client.event.InputEvent;
+import net.minecraftforge.event.TickEvent;
 import net.minecraftforge.event.entity.item.ItemTossEvent;
 import net.minecraftforge.event.entity.player.*;
 import net.minecraftforge.event.world.BlockEvent;
@@ -38,11 +43,8 @@ import net.minecraftforge.eventbus.api.SubscribeEvent;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 
-import java.util.AbstractMap.SimpleEntry;
 import java.util.*;
 
-import static com.example.examplemod.ExampleMod.CONFIG;
-
 /**
  * Class for handling game events on the client side.
  */
@@ -59,7 +61,8 @@ public class ClientEventHandlers {
     public enum Order {
         /** Sort into default order. */ DEFAULT,
         /** Sort into columns. */ COLUMNS,
-        /** Sort into rows.*/ ROWS
+        /** Sort into rows.*/ ROWS,
+        /** Sort into regions by creative tab. */ CATEGORIES
     }
 
     /**
@@ -101,6 +104,10 @@ public class ClientEventHandlers {
                         currentOrder = Order.ROWS;
                         break;
 
+                    case ROWS:
+                        currentOrder = Order.CATEGORIES;
+                        break;
+
                     default:
                         currentOrder = Order.DEFAULT;
                 }
@@ -164,7 +171,7 @@ public class ClientEventHandlers {
      */
     private boolean keySort(GuiScreenEvent event) {
         // Supported GUIs
-        Functions.Permission permission = Functions.getPermission(event.getGui().getClass().getName());
+        Functions.Permission permission = Functions.getPermission(event.getGui().getClass());
 
         if (permission == Functions.Permission.BLACKLIST) return true;
 
@@ -236,16 +243,7 @@ public class ClientEventHandlers {
             lastMod = event.getModifiers();
             lastKeyPress = System.currentTimeMillis();
 
-            try {
-                Map settings = CONFIG.getSortSettings();
-                if (settings != null && settings.containsKey("Sort Outside Inventory")
-                        && !(boolean) settings.get("Sort Outside Inventory")) return;
-
-            } catch (Exception error) {
-                LOGGER.error(String.format("[%s] An error has occurred: (%s) - [%s]", ExampleMod.NAME,
-                        error.getClass().getCanonicalName(), Arrays.toString(error.getStackTrace())));
-                return;
-            }
+            if (!Config.settings().sortOutsideInventory) return;
 
             if (event.getAction() != 0) return;
 
@@ -278,7 +276,7 @@ public class ClientEventHandlers {
     @SubscribeEvent
     public void onMouseClick(GuiScreenEvent.MouseClickedEvent event) {
         if (event.getGui().isPauseScreen() ||
-                Config.blacklist.contains(event.getGui().getClass().getName())) return;
+                Config.isBlacklisted(event.getGui().getClass())) return;
 
         Slot slot = null;
         try {
@@ -287,11 +285,8 @@ public class ClientEventHandlers {
 
         if (slot != null && event.getButton() != 2) {
             if ((lastMod > 0 || lastKey != -1) && System.currentTimeMillis() < lastKeyPress + 500) {
-                Map config = CONFIG.getMap("Shortcuts");
-                if (config == null) return;
-                if (config.containsKey("Shortcuts") && !(boolean) config.get("Shortcuts")) {
-                    return;
-                }
+                Settings config = Config.settings();
+                if (!config.shortcuts) return;
 
                 if (event.getButton() == 0 && lastMod != 1 && slot.inventory instanceof CraftResultInventory) {
                     // Left click in a crafting inventory
@@ -322,8 +317,7 @@ public class ClientEventHandlers {
                                 switch (lastMod) {
                                     case 2:
                                         // Control. Craft one item.
-                                        if (config.containsKey("Craft one item - Ctrl + Click") &&
-                                                !(boolean) config.get("Craft one item - Ctrl + Click")) return;
+                                        if (!config.craftOne) return;
 
                                         for (Slot craftingSlot : slots) {
                                             ItemStack newItem = craftingSlot.getStack().copy();
@@ -342,10 +336,7 @@ public class ClientEventHandlers {
                                         break;
                                     case 3:
                                         // Control + Shift. Craft all items from inventory.
-                                        if (config.containsKey("Craft all from inventory - Ctrl + Shift + Click") &&
-                                                !(boolean) config.get("Craft all from inventory - Ctrl + Shift + Click")) {
-                                            return;
-                                        }
+                                        if (!config.craftAll) return;
 
                                         ArrayList<ItemStack> neededItems = new ArrayList<>();
                                         for (Slot craftingSlot : slots) {
@@ -369,8 +360,7 @@ public class ClientEventHandlers {
                     switch (lastMod) {
                         case 2:
                             // Control. Move one item.
-                            if (config.containsKey("Move one item - Control + Click") &&
-                                    !(boolean) config.get("Move one item - Control + Click")) return;
+                            if (!config.moveOne) return;
 
                             event.setCanceled(true);
                             Functions.moveUnknownInv(slot, 1, Functions.MoveType.MOVE_INT);
@@ -379,9 +369,7 @@ public class ClientEventHandlers {
 
                         case 3:
                             // Control + Shift. Move all items of the same type.
-                            if (config.containsKey("Move all items of the same type - Control + Shift + Click") &&
-                                    !(boolean) config.get("Move all items of the same type - Control + Shift + Click"))
-                                return;
+                            if (!config.moveAllType) return;
 
                             event.setCanceled(true);
                             Functions.moveUnknownInv(slot, 0, Functions.MoveType.MOVE_ALL_TYPE);
@@ -390,8 +378,7 @@ public class ClientEventHandlers {
 
                         case 4:
                             // Alt. Drop item.
-                            if (config.containsKey("Drop - Alt + Click") &&
-                                    (boolean) config.get("Drop - Alt + Click")) {
+                            if (config.drop) {
                                 event.setCanceled(true);
                                 Channel.INSTANCE.sendToServer(
                                         new DropPacket(slot.getSlotIndex(), slot.inventory instanceof PlayerInventory)
@@ -409,8 +396,7 @@ public class ClientEventHandlers {
                             case 83:
                             case 264:
                                 // W or Up, or S or Down. Move full stack.
-                                if (config.containsKey("Move one stack - Shift/W/Up/S/Down + Click") &&
-                                        !(boolean) config.get("Move one stack - Shift/W/Up/S/Down + Click")) return;
+                                if (!config.moveStack) return;
 
                                 event.setCanceled(true);
                                 Functions.moveUnknownInv(slot, 0, Functions.MoveType.MOVE_STACK);
@@ -418,8 +404,7 @@ public class ClientEventHandlers {
 
                             case 32:
                                 // Space. Move full inventory.
-                                if (config.containsKey("Move everything - Space + Click") &&
-                                        !(boolean) config.get("Move everything - Space + Click")) return;
+                                if (!config.moveEverything) return;
 
                                 event.setCanceled(true);
                                 Functions.moveUnknownInv(slot, 0, Functions.MoveType.MOVE_ALL);
@@ -443,23 +428,14 @@ public class ClientEventHandlers {
 
         if (event.getButton() != 2) return;
 
-        try {
-            Map settings = CONFIG.getSortSettings();
-            if (settings != null
-                    && settings.containsKey("Sort On Pickup") && !(boolean) settings.get("Middle Mouse Sort")) return;
-
-        } catch (Exception error) {
-            LOGGER.error(String.format("[%s] An error has occurred: (%s) - [%s]", ExampleMod.NAME,
-                    error.getClass().getCanonicalName(), Arrays.toString(error.getStackTrace())));
-            return;
-        }
+        if (!Config.settings().middleMouseSort) return;
 
         if (slot != null && slot.inventory instanceof CraftingInventory) {
             // Optimizing Crafting Screen
             int invSize = slot.inventory.getSizeInventory();
 
             // Collecting every unique item, and their places
-            Map<CompoundNBT, Map.Entry<Integer, ArrayList<Integer>>> uniqueItems = new HashMap<>();
+            StackKeyMultimap uniqueItems = new StackKeyMultimap();
             for (int i = 0; i < invSize; i++) {
                 ItemStack itemStack = slot.inventory.getStackInSlot(i);
 
@@ -467,40 +443,19 @@ public class ClientEventHandlers {
                     continue;
                 }
 
-                CompoundNBT tags = itemStack.getTag();
-                if (tags == null) {
-                    tags = new CompoundNBT();
-                }
-
-                if (tags.contains("Count")) tags.remove("Count");
-                tags.putInt("Custom-ID-Tag", Item.getIdFromItem(itemStack.getItem()));
-
-                if (uniqueItems.containsKey(tags)) {
-                    ArrayList<Integer> indexes = uniqueItems.get(tags).getValue();
-                    indexes.add(i);
-                    uniqueItems.replace(tags,
-                            new SimpleEntry<>(uniqueItems.get(tags).getKey() + itemStack.getCount(), indexes));
-                } else {
-                    ArrayList<Integer> indexes = new ArrayList<>();
-                    indexes.add(i);
-
-                    uniqueItems.put(tags, new SimpleEntry<>(itemStack.getCount(), indexes));
-                }
+                uniqueItems.put(itemStack, i);
             }
 
-            if (uniqueItems.size() == 0) return;
+            if (uniqueItems.isEmpty()) return;
 
             // Optimizing
             List<ItemStack> optimizedItems = Arrays.asList(new ItemStack[invSize]);
 
-            for (CompoundNBT tag: uniqueItems.keySet()) {
-                int itemsLeft = uniqueItems.get(tag).getKey();
-                List<Integer> indexes = uniqueItems.get(tag).getValue();
+            for (StackKey key: uniqueItems.keySet()) {
+                int itemsLeft = uniqueItems.getTotal(key);
+                List<Integer> indexes = uniqueItems.getIndexes(key);
 
-                ItemStack itemStack = new ItemStack(Item.getItemById(tag.getInt("Custom-ID-Tag")));
-                itemStack.setTag(tag);
-
-                tag.remove("Custom-ID-Tag");
+                ItemStack itemStack = key.createStack(1);
 
                 // Splitting into equal stacks
                 int base = Math.floorDiv(itemsLeft, indexes.size());
@@ -534,7 +489,7 @@ public class ClientEventHandlers {
 
         } else if (slot != null && !(slot.inventory instanceof PlayerInventory)) {
             // Sorting for an inventory
-            if (Functions.getPermission(event.getGui().getClass().getName()) == Functions.Permission.BLACKLIST) {
+            if (Functions.getPermission(event.getGui().getClass()) == Functions.Permission.BLACKLIST) {
                 return;
             }
 
@@ -544,7 +499,7 @@ public class ClientEventHandlers {
 
         } else {
             // Sorting for a player
-            if (Functions.getPermission(event.getGui().getClass().getName()) == Functions.Permission.BLACKLIST) {
+            if (Functions.getPermission(event.getGui().getClass()) == Functions.Permission.BLACKLIST) {
                 return;
             }
 
@@ -572,18 +527,9 @@ public class ClientEventHandlers {
 
         int delta = (int) Math.floor(event.getScrollDelta());
 
-        try {
-            Map settings = CONFIG.getMap("Middle Mouse Move");
-            if (settings != null) {
-                if (!(boolean) settings.get("Middle Mouse Move")) return;
-                if (settings.containsKey("Invert Scroll") && (boolean) settings.get("Invert Scroll")) delta *= -1;
-            }
-
-        } catch (Exception error) {
-            LOGGER.error(String.format("[%s] An error has occurred: (%s) - [%s]", ExampleMod.NAME,
-                    error.getClass().getCanonicalName(), Arrays.toString(error.getStackTrace())));
-            return;
-        }
+        Settings settings = Config.settings();
+        if (!settings.middleMouseMove) return;
+        if (settings.invertScroll) delta *= -1;
 
         LOGGER.debug(String.format("[%s] Detected mouse scroll.", ExampleMod.NAME));
 
@@ -625,34 +571,71 @@ public class ClientEventHandlers {
         lastScroll = System.currentTimeMillis();
     }
 
+    /**
+     * Merges item pickups into one sort per window.
+     */
+    private final CoalescingScheduler pickupSorts = new CoalescingScheduler();
+
     /**
      * Event handler for item pickup by players.
-     * Used to allow sorting on item pickups.
+     * Used to allow sorting on item pickups. The sort itself is run on the next client tick, see {@link #onClientTick}.
      *
      * @param event The general sorting event.
      */
     @OnlyIn(Dist.CLIENT)
     @SubscribeEvent
     public void onItemPickup(PlayerEvent.ItemPickupEvent event) {
-        try {
-            Map settings = CONFIG.getSortSettings();
-            if (settings != null
-                    && settings.containsKey("Sort On Pickup") && !(boolean) settings.get("Sort On Pickup")) return;
+        if (!Config.settings().sortOnPickup) return;
 
-        } catch (Exception error) {
-            LOGGER.error(String.format("[%s] An error has occurred: (%s) - [%s]", ExampleMod.NAME,
-                    error.getClass().getCanonicalName(), Arrays.toString(error.getStackTrace())));
-            return;
+        LOGGER.debug(String.format("[%s] Item picked up, scheduling sort on: %s",
+                ExampleMod.NAME, event.getEntity().getDisplayName().getFormattedText()));
+        pickupSorts.request();
+    }
+
+    /**
+     * Event handler for client ticks.
+     * Runs the deferred refills and replacements, and the sort scheduled by item pickups, at most once per configured
+     * window.
+     *
+     * @param event The client tick event.
+     */
+    @OnlyIn(Dist.CLIENT)
+    @SubscribeEvent
+    public void onClientTick(TickEvent.ClientTickEvent event) {
+        if (event.phase != TickEvent.Phase.END) return;
+
+        Functions.trackInventory(Minecraft.getInstance().player);
+
+        if (Minecraft.getInstance().player != null) {
+            Functions.getDeferredActions().tick();
+        } else {
+            // Left the world, the actions belong to the old player
+            Functions.getDeferredActions().clear();
         }
 
-        LOGGER.debug(String.format("[%s] Item picked up, attempting sort on: %s",
-                ExampleMod.NAME, event.getEntity().getDisplayName().getFormattedText()));
-        if (Functions.playerSort(event.getPlayer().inventory.mainInventory)) {
+        if (!pickupSorts.poll(Config.settings().sortOnPickupWindow)) return;
+
+        ClientPlayerEntity player = Minecraft.getInstance().player;
+        if (player == null) return;
+
+        LOGGER.debug(String.format("[%s] Sorting after pickups. Requests: %d, Sorts: %d, Merged: %d", ExampleMod.NAME,
+                pickupSorts.getRequests(), pickupSorts.getRuns(), pickupSorts.getMerged()));
+
+        if (Functions.playerSort(player.inventory.mainInventory)) {
             return;
         }
         LOGGER.error(String.format("[%s] Inventory Sort Error Occurred, See Above.", ExampleMod.NAME));
     }
 
+    /**
+     * Returns the scheduler merging item pickup sorts. Exposes the number of merged pickups.
+     *
+     * @return The scheduler.
+     */
+    public CoalescingScheduler getPickupSorts() {
+        return pickupSorts;
+    }
+
     /**
      * The last time a held item got replaced. Used to prevent multiple events firing in a row.
      */
@@ -765,6 +748,37 @@ public class ClientEventHandlers {
         lastReplace = System.currentTimeMillis();
     }
 
+    /**
+     * Whether the server was asked to refill held items itself.
+     */
+    private boolean serverRefill = false;
+
+    /**
+     * Event handler for joining a server.
+     * Used to tell the server which optional features to perform, such as server refills.
+     *
+     * @param event The logged in event.
+     */
+    @OnlyIn(Dist.CLIENT)
+    @SubscribeEvent
+    public void onLoggedIn(ClientPlayerNetworkEvent.LoggedInEvent event) {
+        serverRefill = Config.settings().serverRefill;
+
+        LOGGER.debug(String.format("[%s] Sending network capability packet", ExampleMod.NAME));
+        Channel.INSTANCE.sendToServer(new CapabilityPacket(serverRefill ? CapabilityPacket.SERVER_REFILL : 0));
+    }
+
+    /**
+     * Event handler for leaving a server.
+     *
+     * @param event The logged out event.
+     */
+    @OnlyIn(Dist.CLIENT)
+    @SubscribeEvent
+    public void onLoggedOut(ClientPlayerNetworkEvent.LoggedOutEvent event) {
+        serverRefill = false;
+    }
+
     /**
      * The last hand used. Used to determine which hand last clicked on a block.
      */
@@ -801,13 +815,12 @@ public class ClientEventHandlers {
             return;
         }
 
-        Map config = CONFIG.getMap("Refill");
-
-        if (config != null && config.containsKey("Refill") && (boolean) config.get("Refill")) {
-            int status = Functions.refill(
-                    Minecraft.getInstance().player, event.getPlacedBlock().getBlock().asItem(), lastUsedHand);
+        // The server refills the hand itself
+        if (serverRefill) return;
 
-            if (status == 2) {
+        if (Config.settings().refill) {
+            if (!Functions.refill(
+                    Minecraft.getInstance().player, event.getPlacedBlock().getBlock().asItem(), lastUsedHand)) {
                 LOGGER.warn(String.format("[%s] Refill failed", ExampleMod.NAME));
             }
         }
@@ -7,8 +7,22 @@ package com.example.examplemod.events;
 
 import com.example.examplemod.ExampleMod;
 import com.example.examplemod.functions.commands.CommandControl;
+import com.example.examplemod.network.ContainerSync;
+import com.example.examplemod.network.InventoryJournal;
+import com.example.examplemod.network.ServerRefill;
+import net.minecraft.entity.player.ServerPlayerEntity;
+import net.minecraft.item.Item;
+import net.minecraft.util.Hand;
+import net.minecraft.world.dimension.DimensionType;
+import net.minecraftforge.event.TickEvent;
+import net.minecraftforge.event.entity.living.LivingEntityUseItemEvent;
+import net.minecraftforge.event.entity.player.PlayerEvent;
+import net.minecraftforge.event.entity.player.PlayerInteractEvent;
+import net.minecraftforge.event.world.BlockEvent;
+import net.minecraftforge.eventbus.api.EventPriority;
 import net.minecraftforge.eventbus.api.SubscribeEvent;
 import net.minecraftforge.fml.event.server.FMLServerStartingEvent;
+import net.minecraftforge.fml.event.server.FMLServerStoppingEvent;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 
@@ -23,7 +37,7 @@ public class ServerEventHandlers {
 
     /**
      * Event handler for server starting.
-     * Used to start command registration.
+     * Used to start command registration, and the inventory journal.
      *
      * @param event The server starting event.
      */
@@ -31,5 +45,94 @@ public class ServerEventHandlers {
     public void onServerStarting(FMLServerStartingEvent event) {
         LOGGER.info(String.format("Server Starting, %s Active", ExampleMod.NAME));
         CommandControl.register(event.getCommandDispatcher());
+        InventoryJournal.start(
+                event.getServer().getWorld(DimensionType.OVERWORLD).getSaveHandler().getWorldDirectory());
     }
-}
\ No newline at end of file
+
+    /**
+     * Event handler for server stopping.
+     * Used to write the inventory snapshots left in the journal.
+     *
+     * @param event The server stopping event.
+     */
+    @SubscribeEvent
+    public void onServerStopping(FMLServerStoppingEvent event) {
+        InventoryJournal.stop();
+    }
+
+    /**
+     * Event handler for server ticks.
+     * Used to refill the hands that ran out during the tick, and send the inventory slots changed during the tick that
+     * the players' open containers do not show.
+     *
+     * @param event The server tick event.
+     */
+    @SubscribeEvent
+    public void onServerTick(TickEvent.ServerTickEvent event) {
+        if (event.phase != TickEvent.Phase.END) return;
+
+        ServerRefill.apply();
+        ContainerSync.flush();
+    }
+
+    /**
+     * Event handler for players leaving.
+     * Used to forget their server refill choice.
+     *
+     * @param event The player logged out event.
+     */
+    @SubscribeEvent
+    public void onPlayerLoggedOut(PlayerEvent.PlayerLoggedOutEvent event) {
+        if (event.getPlayer() instanceof ServerPlayerEntity) {
+            ServerRefill.remove((ServerPlayerEntity) event.getPlayer());
+        }
+    }
+
+    /**
+     * Event handler for placing blocks.
+     * Used to refill the hand that placed the block on the server, if it runs out.
+     *
+     * @param event The general block place event.
+     */
+    @SubscribeEvent(priority = EventPriority.LOWEST)
+    public void onBlockPlace(BlockEvent.EntityPlaceEvent event) {
+        if (event.isCanceled() || !(event.getEntity() instanceof ServerPlayerEntity)) return;
+
+        ServerPlayerEntity player = (ServerPlayerEntity) event.getEntity();
+        Item item = event.getPlacedBlock().getBlock().asItem();
+
+        // The stack is only shrunk after the event, so the hand still holds the placed item
+        if (player.getHeldItemMainhand().getItem() == item) {
+            ServerRefill.used(player, Hand.MAIN_HAND, item);
+        } else if (player.getHeldItemOffhand().getItem() == item) {
+            ServerRefill.used(player, Hand.OFF_HAND, item);
+        }
+    }
+
+    /**
+     * Event handler for right clicking with an item.
+     * Used to refill thrown items, such as snowballs, on the server.
+     *
+     * @param event The right click with an item event.
+     */
+    @SubscribeEvent(priority = EventPriority.LOWEST)
+    public void onRightClickItem(PlayerInteractEvent.RightClickItem event) {
+        if (event.isCanceled() || !(event.getPlayer() instanceof ServerPlayerEntity)) return;
+
+        ServerRefill.used((ServerPlayerEntity) event.getPlayer(), event.getHand(), event.getItemStack().getItem());
+    }
+
+    /**
+     * Event handler for finishing using an item.
+     * Used to refill eaten and drunk items on the server.
+     *
+     * @param event The item use finish event.
+     */
+    @SubscribeEvent
+    public void onItemUseFinish(LivingEntityUseItemEvent.Finish event) {
+        if (!(event.getEntityLiving() instanceof ServerPlayerEntity)) return;
+
+        ServerPlayerEntity player = (ServerPlayerEntity) event.getEntityLiving();
+        ServerRefill.used(player, player.getActiveHand(), event.getItem().getItem());
+    }
+}
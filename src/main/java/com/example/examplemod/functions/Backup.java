@@ -6,24 +6,29 @@
 package com.example.examplemod.functions;
 
 import com.example.examplemod.ExampleMod;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import net.minecraft.client.Minecraft;
 import net.minecraft.item.ItemStack;
+import net.minecraft.nbt.CompoundNBT;
+import net.minecraft.nbt.ListNBT;
 import net.minecraftforge.api.distmarker.Dist;
 import net.minecraftforge.api.distmarker.OnlyIn;
+import net.minecraftforge.common.util.Constants;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 
+import javax.annotation.Nullable;
 import java.io.File;
 import java.io.IOException;
-import java.io.PrintWriter;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
-import java.sql.Timestamp;
 import java.util.ArrayList;
 import java.util.Arrays;
-import java.util.Map;
+import java.util.List;
+import java.util.function.Predicate;
 
 /**
  * Class for Backing Up Items.
@@ -65,25 +70,51 @@ public class Backup {
     /**
      * Reduces number of backup files in a folder to a specified number.
      *
+     * @param index The index of the folder.
      * @param backupFolder The folder to clean up.
-     * @param config The settings to follow while performing the cleanup.
+     * @param max The number of backups to keep.
      */
-    private static void cleanup(Path backupFolder, Map config) {
-        File[] files = backupFolder.toFile().listFiles();
-        int max = (int) config.get("Number of backups");
-
-        if (files == null) { return; }
-        if (files.length > max) {
-            int index = max - files.length;
-
-            for (File file: files) {
-                if (index < 0) {
-                    if (recursiveDelete(file)){
-                        LOGGER.warn(String.format("[%s] Could not delete the backup folder: %s",
-                                ExampleMod.NAME, file.getName()));
-                    }
+    private static void cleanup(BackupIndex index, Path backupFolder, int max) {
+        List<BackupIndex.Entry> entries = index.getEntries();
+
+        if (entries.size() > max) {
+            List<BackupIndex.Entry> deleted = entries.subList(0, entries.size() - max);
+            List<File> kept = new ArrayList<>();
+            for (BackupIndex.Entry entry: entries.subList(entries.size() - max, entries.size())) {
+                kept.add(index.getPath(entry).toFile());
+            }
+
+            // Kept backups may be written as changes against the deleted ones
+            if (!kept.isEmpty() && !kept.get(0).isDirectory()) {
+                try {
+                    BackupStore.rebase(backupFolder, kept.get(0));
+                } catch (IOException error) {
+                    LOGGER.warn(String.format("[%s] Could not rewrite backup %s, keeping older backups: (%s) - %s",
+                            ExampleMod.NAME, kept.get(0).getName(), error.getClass().getCanonicalName(),
+                            Arrays.toString(error.getStackTrace())));
+                    return;
+                }
+            }
+
+            for (BackupIndex.Entry entry: deleted) {
+                File file = index.getPath(entry).toFile();
+                if (file.exists() && recursiveDelete(file)){
+                    LOGGER.warn(String.format("[%s] Could not delete the backup folder: %s",
+                            ExampleMod.NAME, file.getName()));
+                    continue;
+                }
+
+                try {
+                    index.remove(entry.id);
+                } catch (IOException error) {
+                    LOGGER.warn(String.format("[%s] Could not update the backup index: (%s) - %s", ExampleMod.NAME,
+                            error.getClass().getCanonicalName(), Arrays.toString(error.getStackTrace())));
                 }
-                index++;
+            }
+
+            // Sweeping reads every kept backup, doing it once per as many deletions costs about a read per backup
+            if (index.isSweepDue(Math.max(max, BackupStore.MIN_SWEEP_INTERVAL))) {
+                BackupStore.sweep(backupFolder, kept);
             }
 
             LOGGER.debug(String.format("[%s] Cleaned Up Files", ExampleMod.NAME));
@@ -91,31 +122,37 @@ public class Backup {
     }
 
     /**
-     * Gets the path of the last json file in a folder.
+     * Gets the path of the latest backup in a folder: the backup file, or the json index of a backup in the old format.
      *
      * @param folderPath The folder to search in.
-     * @return The path of the latest json file in a folder.
+     * @return The path of the latest backup in a folder.
      */
     private static Path getLatest(Path folderPath) {
-        File[] files = folderPath.toFile().listFiles();
+        BackupIndex.Entry entry = null;
+        BackupIndex backups = null;
+        try {
+            backups = BackupIndex.open(folderPath);
+            entry = backups.getLatest();
+        } catch (IOException error) {
+            LOGGER.warn(String.format("[%s] Could not read the backup index: (%s) - %s", ExampleMod.NAME,
+                    error.getClass().getCanonicalName(), Arrays.toString(error.getStackTrace())));
+        }
 
-        if (files == null) {
+        if (entry == null) {
             LOGGER.warn(String.format("[%s] Tried to restore, but the default backup folder is empty.",
                     ExampleMod.NAME));
             return null;
         }
 
-        File[] backupFolder = null;
-        int index = 0;
-        for (File file: files ) {
-            if (index == files.length - 1 ) {
-                backupFolder = file.listFiles((dir, name) -> name.toLowerCase().endsWith(".json"));
-            }
-            index++;
+        File latest = backups.getPath(entry).toFile();
+        if (!latest.isDirectory()) {
+            return latest.toPath();
         }
 
+        File[] backupFolder = latest.listFiles((dir, name) -> name.toLowerCase().endsWith(".json"));
+
         if (backupFolder == null) { return null; }
-        index = 0;
+        int index = 0;
         for (File file: backupFolder ) {
             if (index == backupFolder.length - 1 ) {
                 return file.toPath();
@@ -127,30 +164,80 @@ public class Backup {
     }
 
     /**
-     * Writes backups to SER file.
+     * Gets a backup by name: the backup file, or the folder of a backup in the old format.
      *
-     * @param config The settings to follow when performing backup.
+     * @param folderPath The folder to search in.
+     * @param name The name of the backup, with or without its extension.
+     * @return The path of the backup, which may not exist.
+     */
+    private static Path getNamed(Path folderPath, String name) {
+        try {
+            BackupIndex index = BackupIndex.open(folderPath);
+            BackupIndex.Entry entry = index.get(name);
+            if (entry != null) return index.getPath(entry);
+
+        } catch (IOException error) {
+            LOGGER.warn(String.format("[%s] Could not read the backup index: (%s) - %s", ExampleMod.NAME,
+                    error.getClass().getCanonicalName(), Arrays.toString(error.getStackTrace())));
+        }
+
+        // Backups outside the index, such as a path to a backup
+        Path named = Paths.get(folderPath.toFile().getAbsolutePath(), name);
+        Path file = Paths.get(folderPath.toFile().getAbsolutePath(), name + BackupStore.EXTENSION);
+
+        return !Files.exists(named) && Files.exists(file) ? file : named;
+    }
+
+    /**
+     * Gets the folder backups of the current world are written to.
+     *
+     * @param location The folder set in the options, null for the default.
+     * @return The folder.
+     */
+    @OnlyIn(Dist.CLIENT)
+    static Path getWorldPath(@Nullable String location) {
+        if (Minecraft.getInstance().getIntegratedServer() != null) {
+            String folderName = Minecraft.getInstance().getIntegratedServer().getFolderName();
+            Path worldPath = Paths.get((Minecraft.getInstance().gameDir + "/saves/" + folderName));
+
+            if (location != null){
+                worldPath = Paths.get(location);
+            }
+
+            return worldPath;
+        }
+
+        return Minecraft.getInstance().gameDir.toPath();
+    }
+
+    /**
+     * Gets the player backups are made for.
+     *
+     * @return The UUID of the player.
+     */
+    @OnlyIn(Dist.CLIENT)
+    static String getOwner() {
+        if (Minecraft.getInstance().player == null) return BackupIndex.UNKNOWN;
+
+        return Minecraft.getInstance().player.getUniqueID().toString();
+    }
+
+    /**
+     * Writes a backup to the backup store, see {@link BackupStore}. Only touches the disk, so it can be called from the
+     * backup writer.
+     *
+     * @param worldPath The folder to write the backup to, see {@link Backup#getWorldPath(String)}.
+     * @param owner The player the backup belongs to, see {@link Backup#getOwner()}.
+     * @param count The number of backups to keep.
+     * @param time The time the backup was taken. Moved after the latest backup of the folder if it is not already.
      * @param itemList The items to be written to file.
      *
      * @throws IOException The backup file could not be located, backup written to logs.
      */
-    @OnlyIn(Dist.CLIENT)
-    static void backup(Map config, ArrayList<ItemStack> itemList) throws IOException {
+    static void backup(Path worldPath, String owner, int count, long time, List<ItemStack> itemList)
+            throws IOException {
         try {
             if (itemList.size() == 0) { return; }
-            String folderName;
-            Path worldPath;
-            if (Minecraft.getInstance().getIntegratedServer() != null) {
-                folderName = Minecraft.getInstance().getIntegratedServer().getFolderName();
-                worldPath = Paths.get((Minecraft.getInstance().gameDir + "/saves/" + folderName));
-
-                if (config.containsKey("Location (Path)") && !config.get("Location (Path)").equals("Default")){
-                    worldPath = Paths.get((String) config.get("Location (Path)"));
-                }
-            } else {
-                worldPath = Minecraft.getInstance().gameDir.toPath();
-            }
-
             if (Files.exists(worldPath)){
                 Path backupFolder = Paths.get((worldPath + "/" + ExampleMod.NAME_SHORT + "Backups"));
                 if (!Files.exists(backupFolder)) {
@@ -165,24 +252,17 @@ public class Backup {
                     }
                     return;
                 }
-                long timestamp = new Timestamp(System.currentTimeMillis()).getTime();
-                Path nbtFolder = Files.createDirectory(Paths.get((backupFolder + String.format("/%s",
-                        timestamp))));
-                File backupFile = Files.createFile(Paths.get((nbtFolder + String.format("/%s.json",
-                        timestamp)))).toFile();
-
-                ArrayList<String> serialized = new ArrayList<>();
-                int itemNumber = 0;
-                for (ItemStack item: itemList) {
-                    serialized.add(new ItemStackSerialization(item, nbtFolder, itemNumber).serialize());
-                    itemNumber++;
-                }
+                BackupIndex index = BackupIndex.open(backupFolder);
 
-                PrintWriter printer = new PrintWriter(backupFile);
-                printer.write(mapper.writerWithDefaultPrettyPrinter().writeValueAsString(serialized));
-                printer.flush(); printer.close();
-                
-                cleanup(backupFolder, config);
+                // Backups are named after their time, and written as changes against the latest one
+                BackupIndex.Entry latest = index.getLatest();
+                long timestamp = latest == null ? time : Math.max(time, latest.time + 1);
+
+                Path manifest = BackupStore.write(backupFolder, timestamp, itemList);
+                index.add(new BackupIndex.Entry(manifest.getFileName().toString(), timestamp, Files.size(manifest),
+                        owner));
+
+                cleanup(index, backupFolder, count);
             }
         } catch (Exception error) {
             LOGGER.error(String.format("[%s] Backup Error: (%s) - %s", ExampleMod.NAME,
@@ -197,10 +277,11 @@ public class Backup {
 
     /**
      * Read a backup file and get the items within it.
+     * The items are read one at a time and handed to a sink, which can stop the restore once it has enough.
      *
-     * @param config The settings to follow while performing restore.
+     * @param location The folder set in the options, null for the default.
      * @param file The name of the backup to restore from. Use "latest" to restore the latest backup.
-     * @param result A list to write results to.
+     * @param sink Takes every item in order, returns false to stop reading.
      *
      * @return The success of the operation.
      *   1: Can't find file `file`.
@@ -210,11 +291,11 @@ public class Backup {
      *  10: Can't locate game folder.
      */
     @OnlyIn(Dist.CLIENT)
-    public static int restore(Map config, String file, ArrayList<ItemStack> result) {
+    public static int restore(@Nullable String location, String file, Predicate<ItemStack> sink) {
         // Getting backup file
         File backupFile = null;
 
-        if (config.get("Location (Path)").equals("Default")){
+        if (location == null){
             if (Minecraft.getInstance().getIntegratedServer() == null) {
                 LOGGER.warn(String.format("[%s] Could not get game folder.", ExampleMod.NAME));
                 return 10;
@@ -232,18 +313,18 @@ public class Backup {
                 }
                 backupFile = latest.toFile();
             } else {
-                backupFile = Paths.get(backupPath.toFile().getAbsolutePath(), file).toFile();
+                backupFile = getNamed(backupPath, file).toFile();
             }
 
         } else {
-            Path backupPath = Paths.get((String) config.get("Location (Path)"));
+            Path backupPath = Paths.get(location);
             if (file.toLowerCase().equals("latest")) {
                 Path latest = getLatest(backupPath);
                 if (latest != null) {
                     backupFile = latest.toFile();
                 }
             } else {
-                backupFile = Paths.get(backupPath.toFile().getAbsolutePath(), file).toFile();
+                backupFile = getNamed(backupPath, file).toFile();
             }
         }
 
@@ -262,11 +343,20 @@ public class Backup {
 
         // Reading file
         try {
-            if (Files.isReadable(backupFile.toPath())){
-                Object[] backupItems = mapper.readValue(backupFile, Object[].class);
+            if (Files.isReadable(backupFile.toPath()) && backupFile.getName().endsWith(BackupStore.EXTENSION)) {
+                read(backupFile.toPath(), sink);
+                return 0;
+
+            } else if (Files.isReadable(backupFile.toPath())){
+                // Backups in the old format, an array of serialized items
+                try (JsonParser parser = mapper.getFactory().createParser(backupFile)) {
+                    if (parser.nextToken() != JsonToken.START_ARRAY) {
+                        throw new IOException("Not a backup: " + backupFile);
+                    }
 
-                for (Object item: backupItems) {
-                    result.add(ItemStackSerialization.deserialize((String) item));
+                    while (parser.nextToken() == JsonToken.VALUE_STRING) {
+                        if (!sink.test(ItemStackSerialization.deserialize(parser.getText()))) break;
+                    }
                 }
 
                 return 0;
@@ -282,4 +372,32 @@ public class Backup {
             return 5;
         }
     }
+
+    /**
+     * Read the items of a backup file.
+     *
+     * @param backupFile The backup file.
+     * @param sink Takes every item in order, returns false to stop reading.
+     *
+     * @throws IOException Could not read the file, or it is not a backup.
+     */
+    private static void read(Path backupFile, Predicate<ItemStack> sink) throws IOException {
+        CompoundNBT snapshot = BackupStore.readCompressed(backupFile);
+
+        int version = snapshot.getInt("Version");
+        if (version > BackupStore.VERSION) {
+            throw new IOException("Backup written by a newer version: " + backupFile);
+        }
+
+        if (version == BackupStore.VERSION) {
+            BackupStore.read(backupFile.getParent(), snapshot, sink);
+            return;
+        }
+
+        // Backups holding every stack in full
+        ListNBT items = snapshot.getList("Items", Constants.NBT.TAG_COMPOUND);
+        for (int index = 0; index < items.size(); index++) {
+            if (!sink.test(ItemStack.read(items.getCompound(index)))) return;
+        }
+    }
 }
@@ -0,0 +1,360 @@
+/*
+ * Copyright (c) 2020 Hassan Abouelela
+ * Licensed under the MIT License
+ */
+
+package com.example.examplemod.functions;
+
+import com.example.examplemod.ExampleMod;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import javax.annotation.Nullable;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeSet;
+
+/**
+ * An index of the backups in a backup folder, so backups are found without listing the folder.
+ *
+ * <p>The index is a text file that is only appended to: a line for every backup written, and a line for every backup
+ * deleted. It is rewritten without the deleted backups once they make up most of it. A folder without an index is
+ * listed once to create it, so deleting the index picks up backups that were copied into the folder by hand. Lines
+ * that can not be read, such as a line cut short by a crash, are skipped.</p>
+ */
+final class BackupIndex {
+    /**
+     * Event Logger.
+     */
+    private static final Logger LOGGER = LogManager.getLogger();
+    /**
+     * The name of the index file, inside the backup folder.
+     */
+    private static final String NAME = "index.txt";
+    /**
+     * The owner of backups found by listing the folder.
+     */
+    static final String UNKNOWN = "unknown";
+
+    /**
+     * The open indexes, by backup folder.
+     */
+    private static final Map<Path, BackupIndex> indexes = new HashMap<>();
+
+    /**
+     * A backup in the index.
+     */
+    static final class Entry {
+        /**
+         * The name of the backup in the backup folder.
+         */
+        final String id;
+        /**
+         * The time the backup was made.
+         */
+        final long time;
+        /**
+         * The size of the backup, in bytes.
+         */
+        final long size;
+        /**
+         * The player the backup belongs to.
+         */
+        final String owner;
+
+        /**
+         * Creates an entry.
+         *
+         * @param id The name of the backup in the backup folder.
+         * @param time The time the backup was made.
+         * @param size The size of the backup, in bytes.
+         * @param owner The player the backup belongs to.
+         */
+        Entry(String id, long time, long size, String owner) {
+            this.id = id;
+            this.time = time;
+            this.size = size;
+            this.owner = owner;
+        }
+    }
+
+    /**
+     * The backup folder.
+     */
+    private final Path folder;
+    /**
+     * The index file.
+     */
+    private final Path file;
+    /**
+     * The backups, oldest first.
+     */
+    private final TreeSet<Entry> entries = new TreeSet<>(
+            Comparator.<Entry>comparingLong(entry -> entry.time).thenComparing(entry -> entry.id));
+    /**
+     * The backups, by name.
+     */
+    private final Map<String, Entry> byId = new HashMap<>();
+    /**
+     * The number of lines in the index file.
+     */
+    private int lines = 0;
+    /**
+     * The number of backups deleted since the unused objects were last swept, see {@link BackupIndex#isSweepDue(int)}.
+     */
+    private int unswept = 0;
+
+    /**
+     * Creates an index. Use {@link BackupIndex#open(Path)}.
+     *
+     * @param folder The backup folder.
+     */
+    private BackupIndex(Path folder) {
+        this.folder = folder;
+        this.file = folder.resolve(NAME);
+    }
+
+    /**
+     * Get the index of a backup folder, reading or creating it the first time.
+     *
+     * @param folder The backup folder.
+     *
+     * @return The index.
+     * @throws IOException Could not read the index, or list the folder to create it.
+     */
+    static BackupIndex open(Path folder) throws IOException {
+        Path key = folder.toAbsolutePath().normalize();
+
+        synchronized (indexes) {
+            BackupIndex index = indexes.get(key);
+            if (index == null) {
+                index = new BackupIndex(key);
+                index.load();
+                indexes.put(key, index);
+            }
+
+            return index;
+        }
+    }
+
+    /**
+     * Read the index file, or list the folder if there is none.
+     *
+     * @throws IOException Could not read the index, or list the folder.
+     */
+    private synchronized void load() throws IOException {
+        List<String> read;
+        try {
+            read = Files.readAllLines(this.file, StandardCharsets.UTF_8);
+        } catch (NoSuchFileException ignored) {
+            rebuild();
+            return;
+        }
+
+        for (String line: read) {
+            String[] fields = line.split("\t");
+
+            try {
+                if (fields.length == 5 && fields[0].equals("+")) {
+                    put(new Entry(fields[1], Long.parseLong(fields[2]), Long.parseLong(fields[3]), fields[4]));
+                } else if (fields.length == 2 && fields[0].equals("-")) {
+                    delete(fields[1]);
+                }
+            } catch (NumberFormatException ignored) {
+                // Cut short by a crash
+            }
+        }
+
+        this.lines = read.size();
+    }
+
+    /**
+     * Create the index from the contents of the backup folder.
+     *
+     * @throws IOException Could not list the folder, or write the index.
+     */
+    private void rebuild() throws IOException {
+        File[] files = this.folder.toFile().listFiles();
+        if (files == null) {
+            if (Files.exists(this.folder)) throw new IOException("Could not list backups: " + this.folder);
+            return;
+        }
+
+        for (File backup: files) {
+            // Backups are named after the time they were made, the folders of old backups have no extension
+            String name = backup.getName();
+            String time = name.endsWith(BackupStore.EXTENSION)
+                    ? name.substring(0, name.length() - BackupStore.EXTENSION.length()) : name;
+            if (!(backup.isDirectory() || name.endsWith(BackupStore.EXTENSION)) || !time.matches("\\d+")) continue;
+
+            put(new Entry(name, Long.parseLong(time), backup.isDirectory() ? 0 : backup.length(), UNKNOWN));
+        }
+
+        compact();
+        LOGGER.info(String.format("[%s] Indexed %d backups in %s", ExampleMod.NAME, this.entries.size(),
+                this.folder));
+    }
+
+    /**
+     * Record a new backup.
+     *
+     * @param entry The backup.
+     * @throws IOException Could not write to the index.
+     */
+    synchronized void add(Entry entry) throws IOException {
+        put(entry);
+        append(format(entry));
+    }
+
+    /**
+     * Record that a backup was deleted.
+     *
+     * @param id The name of the backup.
+     * @throws IOException Could not write to the index.
+     */
+    synchronized void remove(String id) throws IOException {
+        if (!delete(id)) return;
+
+        append("-\t" + id);
+        this.unswept++;
+
+        // Most of the index is deleted backups
+        if (this.lines > 2 * this.entries.size() + 16) compact();
+    }
+
+    /**
+     * Whether enough backups were deleted to sweep the objects no backup uses anymore. Sweeping reads every kept
+     * backup, so it is only done once in a while. Starts counting again when it returns true.
+     *
+     * @param interval The number of deleted backups to sweep after.
+     * @return True if the objects should be swept.
+     */
+    synchronized boolean isSweepDue(int interval) {
+        if (this.unswept < interval) return false;
+
+        this.unswept = 0;
+        return true;
+    }
+
+    /**
+     * Returns the backups, oldest first.
+     *
+     * @return A copy of the backups.
+     */
+    synchronized List<Entry> getEntries() {
+        return new ArrayList<>(this.entries);
+    }
+
+    /**
+     * Returns the latest backup.
+     *
+     * @return The backup, or null if there are none.
+     */
+    @Nullable
+    synchronized Entry getLatest() {
+        return this.entries.isEmpty() ? null : this.entries.last();
+    }
+
+    /**
+     * Returns a backup by name.
+     *
+     * @param name The name of the backup, with or without its extension.
+     * @return The backup, or null if there is none.
+     */
+    @Nullable
+    synchronized Entry get(String name) {
+        Entry entry = this.byId.get(name);
+
+        return entry != null ? entry : this.byId.get(name + BackupStore.EXTENSION);
+    }
+
+    /**
+     * Gets the path of a backup.
+     *
+     * @param entry The backup.
+     * @return The path of the backup file, or the folder of a backup in the old format.
+     */
+    Path getPath(Entry entry) {
+        return this.folder.resolve(entry.id);
+    }
+
+    /**
+     * Add a backup to the backups in memory.
+     *
+     * @param entry The backup.
+     */
+    private void put(Entry entry) {
+        Entry previous = this.byId.put(entry.id, entry);
+        if (previous != null) this.entries.remove(previous);
+
+        this.entries.add(entry);
+    }
+
+    /**
+     * Remove a backup from the backups in memory.
+     *
+     * @param id The name of the backup.
+     * @return False if there is no such backup.
+     */
+    private boolean delete(String id) {
+        Entry entry = this.byId.remove(id);
+        if (entry == null) return false;
+
+        this.entries.remove(entry);
+        return true;
+    }
+
+    /**
+     * Append a line to the index file.
+     *
+     * @param line The line.
+     * @throws IOException Could not write to the index.
+     */
+    private void append(String line) throws IOException {
+        Files.write(this.file, Collections.singletonList(line), StandardCharsets.UTF_8, StandardOpenOption.CREATE,
+                StandardOpenOption.APPEND);
+        this.lines++;
+    }
+
+    /**
+     * Rewrite the index file with only the current backups.
+     *
+     * @throws IOException Could not write the index.
+     */
+    private void compact() throws IOException {
+        List<String> write = new ArrayList<>(this.entries.size());
+        for (Entry entry: this.entries) {
+            write.add(format(entry));
+        }
+
+        Path temporary = Paths.get(this.file + ".tmp");
+        Files.write(temporary, write, StandardCharsets.UTF_8);
+        Files.move(temporary, this.file, StandardCopyOption.REPLACE_EXISTING);
+
+        this.lines = write.size();
+    }
+
+    /**
+     * Format the line recording a backup.
+     *
+     * @param entry The backup.
+     * @return The line.
+     */
+    private static String format(Entry entry) {
+        return String.format("+\t%s\t%d\t%d\t%s", entry.id, entry.time, entry.size,
+                entry.owner.replaceAll("\\s", "_"));
+    }
+}
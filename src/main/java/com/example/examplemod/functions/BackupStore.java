@@ -0,0 +1,429 @@
+/*
+ * Copyright (c) 2020 Hassan Abouelela
+ * Licensed under the MIT License
+ */
+
+package com.example.examplemod.functions;
+
+import com.example.examplemod.ExampleMod;
+import net.minecraft.item.ItemStack;
+import net.minecraft.nbt.CompoundNBT;
+import net.minecraft.nbt.CompressedStreamTools;
+import net.minecraft.nbt.ListNBT;
+import net.minecraftforge.common.util.Constants;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import javax.annotation.Nullable;
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.function.Predicate;
+
+/**
+ * A content-addressed store of backups.
+ *
+ * <p>Every distinct stack, its item and tags without its count, is written once to the objects folder, named after
+ * the hash of its contents. A backup is a manifest of the object and count in every slot. Consecutive backups are
+ * almost identical, so a manifest is written as the changes since the previous backup when that is smaller, up to
+ * {@link BackupStore#MAX_CHAIN} in a row.</p>
+ *
+ * <p>Manifests are compressed NBT compounds: the format version, the time, the number of slots, the time of the
+ * backup the changes are against if any, and the list of slots. Removed slots are listed with an empty reference.</p>
+ */
+final class BackupStore {
+    /**
+     * Event Logger.
+     */
+    private static final Logger LOGGER = LogManager.getLogger();
+    /**
+     * The version of the manifest format.
+     */
+    static final int VERSION = 2;
+    /**
+     * The name of the objects folder, inside the backup folder.
+     */
+    static final String OBJECTS = "objects";
+    /**
+     * The extension of manifests and objects.
+     */
+    static final String EXTENSION = ".dat";
+    /**
+     * The most backups in a row written as changes, before a backup is written in full again.
+     */
+    private static final int MAX_CHAIN = 16;
+    /**
+     * The fewest backups deleted between sweeps of the unused objects.
+     */
+    static final int MIN_SWEEP_INTERVAL = 16;
+
+    /**
+     * A backup, with the changes it was written as applied.
+     */
+    private static final class Manifest {
+        /**
+         * The time of the backup, which is also its name.
+         */
+        private final long time;
+        /**
+         * The object in each slot, null for empty slots.
+         */
+        private final String[] refs;
+        /**
+         * The count of each slot.
+         */
+        private final int[] counts;
+        /**
+         * The number of backups written as changes leading to this one, 0 if it is written in full.
+         */
+        private final int chain;
+
+        /**
+         * Creates a manifest.
+         *
+         * @param time The time of the backup.
+         * @param refs The object in each slot.
+         * @param counts The count of each slot.
+         * @param chain The number of backups written as changes leading to this one.
+         */
+        Manifest(long time, String[] refs, int[] counts, int chain) {
+            this.time = time;
+            this.refs = refs;
+            this.counts = counts;
+            this.chain = chain;
+        }
+    }
+
+    /**
+     * The folder of the last backup written. Only used by the thread writing backups.
+     */
+    private static Path lastFolder = null;
+    /**
+     * The last backup written, the next backup may be written as changes against it.
+     */
+    private static Manifest last = null;
+
+    /**
+     * Static utility class.
+     */
+    private BackupStore() {}
+
+    /**
+     * Write a backup, and the objects it needs that are not stored yet.
+     *
+     * @param backupFolder The backup folder.
+     * @param time The time of the backup, which is also its name.
+     * @param items The items to back up.
+     *
+     * @return The manifest of the backup.
+     * @throws IOException Could not write the backup.
+     */
+    static Path write(Path backupFolder, long time, List<ItemStack> items) throws IOException {
+        Path objects = Files.createDirectories(backupFolder.resolve(OBJECTS));
+
+        String[] refs = new String[items.size()];
+        int[] counts = new int[items.size()];
+        for (int slot = 0; slot < items.size(); slot++) {
+            ItemStack itemStack = items.get(slot);
+            if (Functions.isAir(itemStack)) continue;
+
+            CompoundNBT object = itemStack.write(new CompoundNBT());
+            object.remove("Count");
+
+            refs[slot] = hash(object);
+            counts[slot] = itemStack.getCount();
+
+            Path objectFile = objects.resolve(refs[slot] + EXTENSION);
+            if (!Files.exists(objectFile)) {
+                writeCompressed(object, objectFile);
+            }
+        }
+
+        Manifest base = backupFolder.equals(lastFolder) ? last : null;
+        if (base != null && (base.refs.length != refs.length || base.chain >= MAX_CHAIN
+                || !Files.exists(getPath(backupFolder, base.time)))) {
+            base = null;
+        }
+
+        Manifest manifest = new Manifest(time, refs, counts, 0);
+        ListNBT full = getSlots(manifest, null);
+        ListNBT changes = base == null ? null : getSlots(manifest, base);
+
+        CompoundNBT compound = new CompoundNBT();
+        compound.putInt("Version", VERSION);
+        compound.putLong("Time", time);
+        compound.putInt("Size", refs.length);
+
+        if (changes != null && changes.size() < full.size()) {
+            compound.putLong("Base", base.time);
+            compound.put("Slots", changes);
+            manifest = new Manifest(time, refs, counts, base.chain + 1);
+        } else {
+            compound.put("Slots", full);
+        }
+
+        Path path = getPath(backupFolder, time);
+        writeCompressed(compound, path);
+
+        lastFolder = backupFolder;
+        last = manifest;
+
+        return path;
+    }
+
+    /**
+     * Read the items of a backup. Each object is read when its first slot is reached.
+     *
+     * @param backupFolder The backup folder.
+     * @param compound The manifest of the backup.
+     * @param sink Takes every item in order, returns false to stop reading.
+     *
+     * @throws IOException Could not read the backup, or a backup or object it needs.
+     */
+    static void read(Path backupFolder, CompoundNBT compound, Predicate<ItemStack> sink) throws IOException {
+        Manifest manifest = resolve(backupFolder, compound);
+        Path objects = backupFolder.resolve(OBJECTS);
+
+        // Stacks often repeat within a backup
+        Map<String, CompoundNBT> loaded = new HashMap<>();
+        for (int slot = 0; slot < manifest.refs.length; slot++) {
+            String ref = manifest.refs[slot];
+            ItemStack itemStack = ItemStack.EMPTY;
+
+            if (ref != null) {
+                CompoundNBT object = loaded.get(ref);
+                if (object == null) {
+                    object = readCompressed(objects.resolve(ref + EXTENSION));
+                    loaded.put(ref, object);
+                }
+
+                CompoundNBT stack = object.copy();
+                stack.putByte("Count", (byte) manifest.counts[slot]);
+                itemStack = ItemStack.read(stack);
+            }
+
+            if (!sink.test(itemStack)) return;
+        }
+    }
+
+    /**
+     * Prepare to delete the backups before a backup: if it is written as changes, write it in full instead.
+     *
+     * @param backupFolder The backup folder.
+     * @param oldest The oldest backup that is kept.
+     *
+     * @throws IOException Could not rewrite the backup.
+     */
+    static void rebase(Path backupFolder, File oldest) throws IOException {
+        CompoundNBT compound = readCompressed(oldest.toPath());
+        if (compound.getInt("Version") != VERSION || !compound.contains("Base")) return;
+
+        Manifest manifest = resolve(backupFolder, compound);
+        compound.remove("Base");
+        compound.put("Slots", getSlots(manifest, null));
+
+        writeCompressed(compound, oldest.toPath());
+
+        if (last != null && last.time == manifest.time) {
+            last = new Manifest(last.time, last.refs, last.counts, 0);
+        }
+    }
+
+    /**
+     * Delete the objects no kept backup refers to. Lists the objects and reads every kept backup, so it is not done
+     * after every backup, see {@link BackupIndex#isSweepDue(int)}.
+     *
+     * @param backupFolder The backup folder.
+     * @param kept The kept backups.
+     */
+    static void sweep(Path backupFolder, List<File> kept) {
+        File[] objects = backupFolder.resolve(OBJECTS).toFile().listFiles(
+                (ignored, name) -> name.endsWith(EXTENSION));
+        if (objects == null) return;
+
+        // Backups written as changes only list some slots, but the backups they are against are kept too
+        Set<String> used = new HashSet<>();
+        for (File backup: kept) {
+            if (backup.isDirectory()) continue;
+
+            try {
+                CompoundNBT compound = readCompressed(backup.toPath());
+                if (compound.getInt("Version") != VERSION) continue;
+
+                ListNBT slots = compound.getList("Slots", Constants.NBT.TAG_COMPOUND);
+                for (int index = 0; index < slots.size(); index++) {
+                    used.add(slots.getCompound(index).getString("Ref"));
+                }
+
+            } catch (IOException error) {
+                // An object that may still be needed must not be deleted
+                LOGGER.warn(String.format("[%s] Could not read backup %s, not deleting unused items: (%s) - %s",
+                        ExampleMod.NAME, backup.getName(), error.getClass().getCanonicalName(),
+                        error.getMessage()));
+                return;
+            }
+        }
+
+        for (File object: objects) {
+            String name = object.getName();
+            if (!used.contains(name.substring(0, name.length() - EXTENSION.length())) && !object.delete()) {
+                LOGGER.warn(String.format("[%s] Could not delete the backup item: %s", ExampleMod.NAME, name));
+            }
+        }
+    }
+
+    /**
+     * Apply the changes a manifest was written as to the backups before it.
+     *
+     * @param backupFolder The backup folder.
+     * @param compound The manifest.
+     *
+     * @return The backup.
+     * @throws IOException Could not read a backup the changes are against.
+     */
+    private static Manifest resolve(Path backupFolder, CompoundNBT compound) throws IOException {
+        Manifest base = null;
+        if (compound.contains("Base")) {
+            long baseTime = compound.getLong("Base");
+            if (baseTime >= compound.getLong("Time")) {
+                throw new IOException("Backup written against a later backup: " + compound.getLong("Time"));
+            }
+
+            base = resolve(backupFolder, readCompressed(getPath(backupFolder, baseTime)));
+        }
+
+        int size = compound.getInt("Size");
+        String[] refs = base == null ? new String[size] : Arrays.copyOf(base.refs, size);
+        int[] counts = base == null ? new int[size] : Arrays.copyOf(base.counts, size);
+
+        ListNBT slots = compound.getList("Slots", Constants.NBT.TAG_COMPOUND);
+        for (int index = 0; index < slots.size(); index++) {
+            CompoundNBT slot = slots.getCompound(index);
+            int number = slot.getInt("Slot");
+            if (number < 0 || number >= size) continue;
+
+            String ref = slot.getString("Ref");
+            refs[number] = ref.isEmpty() ? null : ref;
+            counts[number] = slot.getInt("Count");
+        }
+
+        return new Manifest(compound.getLong("Time"), refs, counts, base == null ? 0 : base.chain + 1);
+    }
+
+    /**
+     * Lists the slots of a backup.
+     *
+     * @param manifest The backup.
+     * @param base The backup to list the changes against, or null to list every slot.
+     *
+     * @return The slots.
+     */
+    private static ListNBT getSlots(Manifest manifest, @Nullable Manifest base) {
+        ListNBT slots = new ListNBT();
+
+        for (int slot = 0; slot < manifest.refs.length; slot++) {
+            String ref = manifest.refs[slot];
+            int count = manifest.counts[slot];
+
+            if (base == null ? ref == null
+                    : Objects.equals(ref, base.refs[slot]) && count == base.counts[slot]) continue;
+
+            CompoundNBT compound = new CompoundNBT();
+            compound.putInt("Slot", slot);
+            compound.putString("Ref", ref == null ? "" : ref);
+            compound.putInt("Count", count);
+            slots.add(compound);
+        }
+
+        return slots;
+    }
+
+    /**
+     * Gets the path of a backup.
+     *
+     * @param backupFolder The backup folder.
+     * @param time The time of the backup.
+     *
+     * @return The path of the manifest.
+     */
+    private static Path getPath(Path backupFolder, long time) {
+        return Paths.get(backupFolder + String.format("/%s%s", time, EXTENSION));
+    }
+
+    /**
+     * Hash the contents of a compound. Equal compounds usually hash the same, and a compound that does not only
+     * costs a copy of its object.
+     *
+     * @param compound The compound.
+     *
+     * @return The hash, as hexadecimal.
+     * @throws IOException Could not write the compound.
+     */
+    private static String hash(CompoundNBT compound) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        CompressedStreamTools.write(compound, new DataOutputStream(bytes));
+
+        byte[] digest;
+        try {
+            digest = MessageDigest.getInstance("SHA-1").digest(bytes.toByteArray());
+        } catch (NoSuchAlgorithmException error) {
+            throw new IOException(error);
+        }
+
+        StringBuilder hex = new StringBuilder(digest.length * 2);
+        for (byte value: digest) {
+            hex.append(Character.forDigit((value >> 4) & 0xF, 16)).append(Character.forDigit(value & 0xF, 16));
+        }
+
+        return hex.toString();
+    }
+
+    /**
+     * Read a compressed compound.
+     *
+     * @param path The file.
+     *
+     * @return The compound.
+     * @throws IOException Could not read the file.
+     */
+    static CompoundNBT readCompressed(Path path) throws IOException {
+        try (InputStream input = new BufferedInputStream(Files.newInputStream(path))) {
+            return CompressedStreamTools.readCompressed(input);
+        }
+    }
+
+    /**
+     * Write a compressed compound. It is written next to the file first, so a file is never left half written.
+     *
+     * @param compound The compound.
+     * @param path The file.
+     *
+     * @throws IOException Could not write the file.
+     */
+    static void writeCompressed(CompoundNBT compound, Path path) throws IOException {
+        Path temporary = Paths.get(path + ".tmp");
+        try (OutputStream output = new BufferedOutputStream(Files.newOutputStream(temporary))) {
+            CompressedStreamTools.writeCompressed(compound, output);
+        }
+
+        Files.move(temporary, path, StandardCopyOption.REPLACE_EXISTING);
+    }
+}
@@ -0,0 +1,396 @@
+/*
+ * Copyright (c) 2020 Hassan Abouelela
+ * Licensed under the MIT License
+ */
+
+package com.example.examplemod.functions;
+
+import com.example.examplemod.ExampleMod;
+import net.minecraft.item.ItemStack;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.nio.file.Path;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Writes backups on its own thread, so sorting never waits for the disk.
+ *
+ * <p>Backups are queued as snapshots: copies of the items, and the folder and options they are written with, all
+ * taken by the thread submitting them. A single daemon thread writes the snapshots in order. The queue is bounded,
+ * and what happens to a snapshot submitted while it is full is decided by a {@link Policy}. Queued snapshots are
+ * written before the game exits.</p>
+ */
+public class BackupWriter implements Runnable {
+    /**
+     * Event Logger.
+     */
+    private static final Logger LOGGER = LogManager.getLogger();
+    /**
+     * The longest time to wait for queued backups when the game exits, in milliseconds.
+     */
+    private static final long SHUTDOWN_TIMEOUT_MS = 5000;
+
+    /**
+     * The writer of the client's backups.
+     */
+    public static final BackupWriter INSTANCE = start();
+
+    /**
+     * What to do with a backup submitted while the queue is full.
+     */
+    public enum Policy {
+        /**
+         * Drop the submitted backup, keeping the queued ones.
+         */
+        DROP_NEWEST,
+        /**
+         * Drop the oldest queued backup.
+         */
+        DROP_OLDEST,
+        /**
+         * Replace the newest queued backup with the submitted one. The earliest states and the latest state are kept,
+         * and only the states in between are lost.
+         */
+        MERGE
+    }
+
+    /**
+     * A backup waiting to be written.
+     */
+    private static final class Snapshot {
+        /**
+         * The folder of the world the backup belongs to.
+         */
+        private final Path worldPath;
+        /**
+         * The player the backup belongs to.
+         */
+        private final String owner;
+        /**
+         * The number of backups to keep.
+         */
+        private final int count;
+        /**
+         * The time the backup was taken, which it is named after. Set when it is queued.
+         */
+        private long time;
+        /**
+         * Copies of the items to back up.
+         */
+        private final List<ItemStack> items;
+        /**
+         * The hash of the items, see {@link StackKey#hashOf(List)}.
+         */
+        private final long hash;
+
+        /**
+         * Creates a snapshot.
+         *
+         * @param worldPath The folder of the world the backup belongs to.
+         * @param owner The player the backup belongs to.
+         * @param count The number of backups to keep.
+         * @param items Copies of the items to back up.
+         */
+        Snapshot(Path worldPath, String owner, int count, List<ItemStack> items) {
+            this.worldPath = worldPath;
+            this.owner = owner;
+            this.count = count;
+            this.items = items;
+            this.hash = StackKey.hashOf(items);
+        }
+
+        /**
+         * Returns the key of the backups this snapshot follows: the backups of the same player in the same world.
+         *
+         * @return The key.
+         */
+        private String getKey() {
+            return this.worldPath + "\t" + this.owner;
+        }
+    }
+
+    /**
+     * The queued backups, oldest first. Guarded by the writer.
+     */
+    private final ArrayDeque<Snapshot> queue = new ArrayDeque<>();
+    /**
+     * Whether a backup is being written. Guarded by the writer.
+     */
+    private boolean writing = false;
+    /**
+     * The hash of the last backup queued, by world and player. Guarded by the writer.
+     */
+    private final Map<String, Long> lastHashes = new HashMap<>();
+    /**
+     * The time of the last backup queued, by world. Guarded by the writer.
+     */
+    private final Map<Path, Long> lastTimes = new HashMap<>();
+
+    /**
+     * The number of backups written.
+     */
+    private final AtomicLong written = new AtomicLong(0);
+    /**
+     * The number of backups that could not be written.
+     */
+    private final AtomicLong failed = new AtomicLong(0);
+    /**
+     * The number of backups dropped because the queue was full.
+     */
+    private final AtomicLong dropped = new AtomicLong(0);
+    /**
+     * The number of queued backups replaced by newer ones.
+     */
+    private final AtomicLong merged = new AtomicLong(0);
+    /**
+     * The number of backups skipped because they were the same as the previous one.
+     */
+    private final AtomicLong skipped = new AtomicLong(0);
+    /**
+     * The time spent writing all backups, in nanoseconds.
+     */
+    private final AtomicLong totalWriteTime = new AtomicLong(0);
+
+    /**
+     * Creates a writer. Use {@link BackupWriter#INSTANCE}.
+     */
+    private BackupWriter() {}
+
+    /**
+     * Create the writer, start its thread, and write its queued backups and log its counters when the game exits.
+     *
+     * @return The writer.
+     */
+    private static BackupWriter start() {
+        BackupWriter writer = new BackupWriter();
+
+        Thread thread = new Thread(writer, ExampleMod.NAME_SHORT + " Backup Writer");
+        thread.setDaemon(true);
+        thread.start();
+
+        Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+            if (!writer.flush(SHUTDOWN_TIMEOUT_MS)) {
+                LOGGER.warn(String.format("[%s] Exited with %d backups left to write.", ExampleMod.NAME,
+                        writer.getQueued()));
+            }
+
+            LOGGER.info(String.format("[%s] Backups this session: %d written (%.1f ms average), %d failed, " +
+                    "%d unchanged, %d replaced before being written, %d dropped.", ExampleMod.NAME,
+                    writer.getWritten(), writer.getAverageWriteMillis(), writer.getFailed(), writer.getSkipped(),
+                    writer.getMerged(), writer.getDropped()));
+        }, ExampleMod.NAME_SHORT + " Backup Flush"));
+
+        return writer;
+    }
+
+    /**
+     * Queue a backup. A backup with the same items as the last one queued for the same world and player is skipped.
+     *
+     * @param worldPath The folder of the world the backup belongs to.
+     * @param owner The player the backup belongs to.
+     * @param count The number of backups to keep.
+     * @param items The items to back up. They are copied, and may change once this returns.
+     * @param capacity The maximum number of queued backups.
+     * @param policy What to do if the queue is full.
+     *
+     * @return False if the backup was dropped, true if it was queued or skipped.
+     */
+    public boolean submit(Path worldPath, String owner, int count, List<ItemStack> items, int capacity,
+                          Policy policy) {
+        ArrayList<ItemStack> copies = new ArrayList<>(items.size());
+        for (ItemStack itemStack: items) {
+            copies.add(itemStack.copy());
+        }
+        Snapshot snapshot = new Snapshot(worldPath, owner, count, copies);
+
+        synchronized (this) {
+            Long last = this.lastHashes.get(snapshot.getKey());
+            if (last != null && last == snapshot.hash) {
+                this.skipped.incrementAndGet();
+                return true;
+            }
+
+            if (this.queue.size() >= Math.max(capacity, 1)) {
+                if (policy == Policy.DROP_NEWEST) {
+                    this.dropped.incrementAndGet();
+                    return false;
+
+                } else if (policy == Policy.DROP_OLDEST) {
+                    this.queue.pollFirst();
+                    this.dropped.incrementAndGet();
+
+                } else {
+                    this.queue.pollLast();
+                    this.merged.incrementAndGet();
+                }
+            }
+
+            // Backups are named after their time, two backups of a world never share one
+            Long lastTime = this.lastTimes.get(snapshot.worldPath);
+            snapshot.time = lastTime == null ? System.currentTimeMillis()
+                    : Math.max(System.currentTimeMillis(), lastTime + 1);
+            this.lastTimes.put(snapshot.worldPath, snapshot.time);
+
+            this.queue.addLast(snapshot);
+            this.lastHashes.put(snapshot.getKey(), snapshot.hash);
+            notifyAll();
+        }
+
+        return true;
+    }
+
+    /**
+     * Wait for the queued backups to be written.
+     *
+     * @param timeout The longest time to wait, in milliseconds.
+     * @return False if backups were still left to write when the time ran out.
+     */
+    public synchronized boolean flush(long timeout) {
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(timeout);
+
+        try {
+            while (!this.queue.isEmpty() || this.writing) {
+                long remaining = TimeUnit.NANOSECONDS.toMillis(deadline - System.nanoTime());
+                if (remaining <= 0) return false;
+
+                wait(remaining);
+            }
+
+        } catch (InterruptedException ignored) {
+            Thread.currentThread().interrupt();
+            return false;
+        }
+
+        return true;
+    }
+
+    @Override
+    public void run() {
+        try {
+            while (true) {
+                Snapshot snapshot;
+                synchronized (this) {
+                    while (this.queue.isEmpty()) {
+                        wait();
+                    }
+
+                    snapshot = this.queue.pollFirst();
+                    this.writing = true;
+                }
+
+                try {
+                    write(snapshot);
+                } finally {
+                    synchronized (this) {
+                        this.writing = false;
+                        notifyAll();
+                    }
+                }
+            }
+
+        } catch (InterruptedException ignored) {
+            LOGGER.debug(String.format("[%s] Stopped writing backups", ExampleMod.NAME));
+        }
+    }
+
+    /**
+     * Write a backup, and record how long it took.
+     *
+     * @param snapshot The backup.
+     */
+    private void write(Snapshot snapshot) {
+        long start = System.nanoTime();
+
+        try {
+            Backup.backup(snapshot.worldPath, snapshot.owner, snapshot.count, snapshot.time, snapshot.items);
+            this.written.incrementAndGet();
+
+        } catch (Exception ignored) {
+            // The error and the items are already written to the logs
+            this.failed.incrementAndGet();
+
+            // The same items are written again next time
+            synchronized (this) {
+                this.lastHashes.remove(snapshot.getKey(), snapshot.hash);
+            }
+        }
+
+        long time = System.nanoTime() - start;
+        this.totalWriteTime.addAndGet(time);
+
+        LOGGER.debug(String.format("[%s] Backed up %d items in %.1f ms, %d backups queued", ExampleMod.NAME,
+                snapshot.items.size(), time / 1e6, getQueued()));
+    }
+
+    /**
+     * Returns the number of queued backups, not counting the one being written.
+     *
+     * @return The queue depth.
+     */
+    public synchronized int getQueued() {
+        return this.queue.size();
+    }
+
+    /**
+     * Returns the number of backups written.
+     *
+     * @return The number of written backups.
+     */
+    public long getWritten() {
+        return this.written.get();
+    }
+
+    /**
+     * Returns the number of backups that could not be written.
+     *
+     * @return The number of failed backups.
+     */
+    public long getFailed() {
+        return this.failed.get();
+    }
+
+    /**
+     * Returns the number of backups dropped because the queue was full.
+     *
+     * @return The number of dropped backups.
+     */
+    public long getDropped() {
+        return this.dropped.get();
+    }
+
+    /**
+     * Returns the number of queued backups replaced by newer ones.
+     *
+     * @return The number of merged backups.
+     */
+    public long getMerged() {
+        return this.merged.get();
+    }
+
+    /**
+     * Returns the number of backups skipped because they were the same as the previous one.
+     *
+     * @return The number of skipped backups.
+     */
+    public long getSkipped() {
+        return this.skipped.get();
+    }
+
+    /**
+     * Returns the average time spent writing a backup.
+     *
+     * @return The average write latency, in milliseconds.
+     */
+    public double getAverageWriteMillis() {
+        long count = this.written.get() + this.failed.get();
+
+        return count == 0 ? 0 : this.totalWriteTime.get() / 1e6 / count;
+    }
+}
@@ -0,0 +1,94 @@
+/*
+ * Copyright (c) 2020 Hassan Abouelela
+ * Licensed under the MIT License
+ */
+
+package com.example.examplemod.functions;
+
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Merges repeated requests for the same piece of work into a single run per time window.
+ *
+ * <p>Requests may come from any thread, and only mark the work as pending. The thread that runs the work polls the
+ * scheduler (usually once per tick), and gets told to run it at most once per window.</p>
+ */
+public class CoalescingScheduler {
+    /**
+     * Whether there is a request that has not been run yet.
+     */
+    private final AtomicBoolean pending = new AtomicBoolean(false);
+    /**
+     * The total number of requests.
+     */
+    private final AtomicLong requests = new AtomicLong(0);
+    /**
+     * The total number of runs.
+     */
+    private final AtomicLong runs = new AtomicLong(0);
+    /**
+     * The last time the work was run. Only used by the polling thread.
+     */
+    private long lastRun = 0;
+
+    /**
+     * Request the work to be run.
+     */
+    public void request() {
+        this.requests.incrementAndGet();
+        this.pending.set(true);
+    }
+
+    /**
+     * Check whether the work should be run now. Clears the pending request if it should.
+     *
+     * @param window The minimum time between runs, in milliseconds.
+     * @return True if the caller should run the work.
+     */
+    public boolean poll(long window) {
+        if (!this.pending.get()) return false;
+
+        long now = System.currentTimeMillis();
+        if (now - this.lastRun < window || !this.pending.compareAndSet(true, false)) return false;
+
+        this.lastRun = now;
+        this.runs.incrementAndGet();
+
+        return true;
+    }
+
+    /**
+     * Drop any pending request without running it.
+     */
+    public void cancel() {
+        this.pending.set(false);
+    }
+
+    /**
+     * Returns the total number of requests.
+     *
+     * @return The number of requests.
+     */
+    public long getRequests() {
+        return this.requests.get();
+    }
+
+    /**
+     * Returns the total number of times the work was run.
+     *
+     * @return The number of runs.
+     */
+    public long getRuns() {
+        return this.runs.get();
+    }
+
+    /**
+     * Returns the number of requests that were merged into another request's run.
+     *
+     * @return The number of merged requests.
+     */
+    public long getMerged() {
+        return Math.max(0, this.requests.get() - this.runs.get());
+    }
+}
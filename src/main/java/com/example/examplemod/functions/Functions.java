@@ -7,7 +7,16 @@ package com.example.examplemod.functions;
 
 import com.example.examplemod.Config;
 import com.example.examplemod.ExampleMod;
+import com.example.examplemod.Settings;
 import com.example.examplemod.events.ClientEventHandlers;
+import com.example.examplemod.inventory.CraftPlan;
+import com.example.examplemod.inventory.CraftPlanner;
+import com.example.examplemod.inventory.GridLayout;
+import com.example.examplemod.inventory.MovePlan;
+import com.example.examplemod.inventory.MovePlanner;
+import com.example.examplemod.inventory.SlotArray;
+import com.example.examplemod.inventory.SlotIndex;
+import com.example.examplemod.inventory.SortPlanner;
 import com.example.examplemod.network.*;
 import net.minecraft.client.Minecraft;
 import net.minecraft.client.entity.player.ClientPlayerEntity;
@@ -16,11 +25,14 @@ import net.minecraft.client.gui.screen.inventory.CreativeScreen;
 import net.minecraft.entity.player.PlayerEntity;
 import net.minecraft.entity.player.PlayerInventory;
 import net.minecraft.inventory.EquipmentSlotType;
+import net.minecraft.inventory.container.Container;
+import net.minecraft.inventory.container.CraftingResultSlot;
+import net.minecraft.inventory.container.FurnaceResultSlot;
+import net.minecraft.inventory.container.MerchantResultSlot;
 import net.minecraft.inventory.container.PlayerContainer;
 import net.minecraft.inventory.container.Slot;
 import net.minecraft.item.Item;
 import net.minecraft.item.ItemStack;
-import net.minecraft.nbt.CompoundNBT;
 import net.minecraft.nbt.INBT;
 import net.minecraft.util.Hand;
 import net.minecraft.util.NonNullList;
@@ -29,7 +41,7 @@ import net.minecraftforge.api.distmarker.OnlyIn;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 
-import java.io.IOException;
+import javax.annotation.Nullable;
 import java.util.AbstractMap.SimpleEntry;
 import java.util.*;
 import java.util.regex.Matcher;
@@ -45,6 +57,23 @@ public class Functions {
      * Event Logger.
      */
     private static final Logger LOGGER = LogManager.getLogger();
+    /**
+     * The layout engine of each thread sorting, reused between sorts.
+     */
+    private static final ThreadLocal<GridLayout<ItemStack>> LAYOUT =
+            ThreadLocal.withInitial(() -> new GridLayout<>(ItemStackModel.INSTANCE));
+    /**
+     * Actions deferred to later client ticks, such as refills waiting for the held item to settle.
+     */
+    private static final TickScheduler DEFERRED = new TickScheduler(64);
+    /**
+     * The number of ticks refills and replacements keep checking the held item for, before giving up.
+     */
+    private static final int SETTLE_TICKS = 5;
+    /**
+     * The index of the client player's inventory, used by refills and replacements.
+     */
+    private static ItemLocator locator = null;
 
     /**
      * The permission level of a given class for sorting purposes.
@@ -69,7 +98,7 @@ public class Functions {
     /**
      * The sorting logic to use.
      */
-    private enum Mode {
+    public enum Mode {
         /*** Alphabetical sorting. */ DEFAULT,
         /** Combine ItemStacks without rearranging. */ COMPACT,
         /** Doesn't perform any logic. Returns unchanged. */ NONE
@@ -84,207 +113,138 @@ public class Functions {
      */
     @OnlyIn(Dist.CLIENT)
     public static boolean getChangeOrder(long lastSortTime) {
-        Map config = null;
-        if (CONFIG != null) {
-            Map outer = CONFIG.getSortSettings();
-            if (outer != null) {
-                if (outer.containsKey("Change Order")) {
-                    config = Config.getMap("Change Order", outer);
-                }
-            }
-        }
-
-        boolean changeOrder = false;
-
-        if (config != null && config.containsKey("Change Order") && config.containsKey("Timeout (seconds)")) {
-            try {
-                if ((boolean) config.get("Change Order")) {
-                    if (System.currentTimeMillis() < lastSortTime + (int) config.get("Timeout (seconds)") * 1000) {
-                        changeOrder = true;
-                    }
-                }
-            } catch (ClassCastException error) {
-                LOGGER.warn(String.format("[%s] Could not read change order options, skipping.", ExampleMod.NAME));
-            }
-        }
+        Settings settings = Config.settings();
 
-        return changeOrder;
+        return settings.changeOrder && System.currentTimeMillis() < lastSortTime + settings.changeOrderTimeout;
     }
 
     /**
      * Get the permission level of an inventory's class for sorting purposes.
+     * Resolved once per class, until the options change.
      *
-     * @param className The name of the class of the inventory.
+     * @param screen The class of the inventory.
      * @return The permission level.
      */
     @OnlyIn(Dist.CLIENT)
-    public static Permission getPermission(String className) {
-        if (Config.blacklist.contains(className)) {
-            return Permission.BLACKLIST;
-        }
-
-        if (CONFIG != null && CONFIG.getConstant(className) != null) {
-            try {
-                Map settings = (Map) CONFIG.getConstant(className);
-                if (settings != null && settings.containsKey("type")) {
-                    switch (String.valueOf(settings.get("type")).toLowerCase()) {
-                        case "blacklist":
-                            return Permission.BLACKLIST;
-                        case "player_first":
-                            return Permission.PLAYER_FIRST;
-                        case "inventory_first":
-                            return Permission.INVENTORY_FIRST;
-                    }
-                }
-
-                return Permission.PLAYER_FIRST;
-            } catch (Exception ignored) {
-                return Permission.PLAYER_FIRST;
-            }
-        }
-
-        if (CONFIG == null) return Permission.PLAYER_FIRST;
-        try {
-            Map playerFirst = CONFIG.getMap("Player-First Inventories");
-            Map inventoryFirst = CONFIG.getMap("Inventory-First Inventories");
-            Map blackList = CONFIG.getMap("Blacklisted Inventories");
-
-            if (playerFirst != null && playerFirst.containsKey("Inventories")) {
-                if (((List) playerFirst.get("Inventories")).contains(className)) {
-                    return Permission.PLAYER_FIRST;
-                }
+    public static Permission getPermission(Class<?> screen) {
+        return Config.settings().getPermission(screen);
+    }
 
-            } else if (inventoryFirst != null && inventoryFirst.containsKey("Inventories")) {
-                if (((List) inventoryFirst.get("Inventories")).contains(className)) {
-                    return Permission.INVENTORY_FIRST;
-                }
+    /**
+     * Returns the actions deferred to later client ticks. Run by the client tick handler.
+     *
+     * @return The scheduler.
+     */
+    public static TickScheduler getDeferredActions() {
+        return DEFERRED;
+    }
 
-            } else if (blackList != null && blackList.containsKey("Inventories")) {
-                if (((List) blackList.get("Inventories")).contains(className)) {
-                    return Permission.BLACKLIST;
-                }
+    /**
+     * Forget the index of the client player's inventory after leaving the world. Run by the client tick handler. The
+     * index itself is brought up to date from changed slots when it is looked up, see {@link ItemLocator}.
+     *
+     * @param player The client player, or null after leaving the world.
+     */
+    @OnlyIn(Dist.CLIENT)
+    public static void trackInventory(@Nullable ClientPlayerEntity player) {
+        if (player == null || (locator != null && !locator.isTracking(player))) locator = null;
+    }
 
-            }
+    /**
+     * Returns the index of the client player's inventory.
+     *
+     * @param player The client player.
+     * @return The index.
+     */
+    @OnlyIn(Dist.CLIENT)
+    private static SlotIndex getInventoryIndex(PlayerEntity player) {
+        if (locator == null || !locator.isTracking(player)) locator = ItemLocator.attach(player);
 
-        } catch (Exception ignored) {}
+        // Lookups follow using or placing the held item, which changes the held stack in place without any update
+        locator.markDirty(player.inventory.currentItem);
 
-        return Permission.PLAYER_FIRST;
+        return locator.getIndex();
     }
 
     /**
      * Replace the item held by a player.
+     * The replacement is sent on a later tick, once the held stack has been used up if it is not a tool.
      *
      * @param playerEntity The player to perform the action on.
      * @param hand Main hand, or secondary hand.
      * @param itemStack The ItemStack to place.
      *
-     * @return The success of the operation.
+     * @return Whether a replacement was scheduled.
      */
     @OnlyIn(Dist.CLIENT)
     public static boolean replaceItem(PlayerEntity playerEntity, Hand hand, ItemStack itemStack) {
         if (playerEntity.isCreative() || Minecraft.getInstance().player == null
                 || !(Minecraft.getInstance().player.getUniqueID() == playerEntity.getUniqueID())) return false;
 
-        Map config = CONFIG.getMap("Replace");
-        if (config != null && config.containsKey("Replace") && !(boolean) config.get("Replace")) {
-            return false;
-        }
+        if (!Config.settings().replace) return false;
 
-        try {
-            Thread.sleep(50);
-        } catch (Exception ignored) { }
+        ItemStack item = (itemStack != null ? itemStack : playerEntity.getHeldItem(hand)).copy();
 
-        PlayerInventory inventory = playerEntity.inventory;
-        int hotbarSize = 9;
-        if (CONFIG.getConstant("Player Hotbar Size") != null) {
-            hotbarSize = (int) CONFIG.getConstant("Player Hotbar Size");
-        }
+        if (item.isDamageable() && item.getMaxDamage() - item.getDamage() > 4) return false;
+        if (!item.isDamageable() && item.getCount() > 1) return false;
 
-        int index = inventory.mainInventory.size() - 1;
-        ItemStack item;
-        if (itemStack != null) {
-            item = itemStack;
-        } else {
-            item = playerEntity.getHeldItem(hand);
-        }
+        int selected = playerEntity.inventory.currentItem;
+        boolean scheduled = DEFERRED.schedule(() -> {
+            // The player switched slots in the meantime
+            if (hand == Hand.MAIN_HAND && playerEntity.inventory.currentItem != selected) return true;
 
-        if (item.isDamageable() && item.getMaxDamage() - item.getDamage() <= 4) {
-            // Getting all possible indexes for switching
-            int bestSameItem = -1;
-            int bestSameItemHealth = 0;
-            int firstEmptyIndex = -1;
-            int lastEmptyHotbar = -1;
-            int lastNonItem = -1;
-            int lastSafeItem = -1;
-
-            for (int i = 0; i <= index; i++) {
-                ItemStack currItemStack = inventory.mainInventory.get(i);
-
-                if (isAir(currItemStack)) {
-                    if (i < hotbarSize) {
-                        lastEmptyHotbar = i;
-                    } else {
-                        if (firstEmptyIndex == -1) {
-                            firstEmptyIndex = i;
-                        }
-                    }
+            // Wait for the last item to be used up, tools are replaced before they break
+            if (!item.isDamageable() && !isAir(playerEntity.getHeldItem(hand))) return false;
 
-                    continue;
-                }
+            sendReplacement(playerEntity, hand, item);
+            return true;
+        }, SETTLE_TICKS);
 
-                if (currItemStack.isDamageable()) {
-                    if (currItemStack.getMaxDamage() - currItemStack.getDamage() > 4) {
-                        if (currItemStack.getItem() == item.getItem() &&
-                                currItemStack.getMaxDamage() - currItemStack.getDamage() > bestSameItemHealth) {
-                            bestSameItem = i;
-                            bestSameItemHealth = currItemStack.getMaxDamage() - currItemStack.getDamage();
-                        } else {
-                            lastSafeItem = i;
-                        }
-                    }
-                } else {
-                    lastNonItem = i;
-                }
-            }
+        if (!scheduled) {
+            LOGGER.warn(String.format("[%s] Too many deferred actions, skipping item replace.", ExampleMod.NAME));
+        }
 
-            if (bestSameItem != -1) {
-                index = bestSameItem;
-            } else if (firstEmptyIndex != -1) {
-                index = firstEmptyIndex;
-            } else if (lastEmptyHotbar != -1) {
-                index = lastEmptyHotbar;
-            } else if (lastNonItem != -1) {
-                index = lastNonItem;
-            } else if (lastSafeItem != -1) {
-                index = lastSafeItem;
-            }
+        return scheduled;
+    }
 
-        } else if (item.isDamageable()) {
-            return false;
+    /**
+     * Find the best replacement for a held item, and ask the server to swap it in.
+     *
+     * @param playerEntity The player.
+     * @param hand The hand holding the item.
+     * @param item The item to replace.
+     */
+    @OnlyIn(Dist.CLIENT)
+    private static void sendReplacement(PlayerEntity playerEntity, Hand hand, ItemStack item) {
+        int hotbarSize = Config.settings().hotbarSize;
 
-        } else {
-            if (item.getCount() > 1) return false;
+        SlotIndex slots = getInventoryIndex(playerEntity);
+        int index = slots.size() - 1;
 
-            int finalIndex = -1;
-            int count = 0;
+        if (item.isDamageable()) {
+            // Getting the possible indexes for switching, by order of preference
+            int bestSameItem = slots.getBestTool(item.getItem());
+            if (bestSameItem != -1 && slots.getValue(bestSameItem) <= 4) bestSameItem = -1;
 
-            for (int i = 0; i <= index; i++) {
-                ItemStack currItemStack = inventory.mainInventory.get(i);
+            int[] candidates = {bestSameItem, slots.getFirstEmpty(hotbarSize), slots.getLastEmpty(hotbarSize),
+                    slots.getLastPlain(), slots.getLastTool(4)};
 
-                if (currItemStack.getItem() == item.getItem() && currItemStack.getCount() >= count) {
-                    finalIndex = i;
-                    count = currItemStack.getCount();
+            for (int candidate: candidates) {
+                if (candidate != -1) {
+                    index = candidate;
+                    break;
                 }
             }
 
-            if (finalIndex == -1) return false;
+        } else {
+            int finalIndex = slots.getBestStack(item.getItem());
+
+            if (finalIndex == -1) return;
             index = finalIndex;
         }
 
         LOGGER.debug(String.format("[%s] Sending network item replace packet.", ExampleMod.NAME));
         Channel.INSTANCE.sendToServer(new ItemReplacePacket(hand, index));
-
-        return true;
     }
 
     /**
@@ -364,177 +324,15 @@ public class Functions {
     @OnlyIn(Dist.CLIENT)
     public static void craftAllInventory(List<ItemStack> craftingItemStacks, ItemStack craftResult,
                                          PlayerEntity player) {
-        ArrayList<ItemStack> playerInventory = new ArrayList<>(player.inventory.mainInventory);
-
-        ArrayList<Integer> airIndexes = new ArrayList<>();
-        ArrayList<Integer> resultIndexes = new ArrayList<>();
-
-        HashMap<Item, Integer> itemCount = new HashMap<>();
-        HashMap<Item, Integer> uniqueCraftingItems = new HashMap<>();
-
-        for (ItemStack craftingItem: craftingItemStacks) {
-            // Get all unique items, and initialize counting map.
-            if (isAir(craftingItem)) continue;
-            if (itemCount.containsKey(craftingItem.getItem())) {
-                itemCount.replace(craftingItem.getItem(),
-                        itemCount.get(craftingItem.getItem()) + craftingItem.getCount());
-            } else {
-                itemCount.put(craftingItem.getItem(), craftingItem.getCount());
-            }
-
-            if (uniqueCraftingItems.containsKey(craftingItem.getItem())) {
-                uniqueCraftingItems.replace(craftingItem.getItem(), uniqueCraftingItems.get(craftingItem.getItem()) + 1);
-            } else {
-                uniqueCraftingItems.put(craftingItem.getItem(), 1);
-            }
-        }
-
-        for (int index = 0; index < playerInventory.size(); index++) {
-            // Get index of all empty slots and slots that can take the result.
-            // Get total of items for each item in craftingItems.
-            ItemStack itemStack = playerInventory.get(index);
-
-            if (isAir(itemStack)) {
-                airIndexes.add(index);
-            } else if (uniqueCraftingItems.containsKey(itemStack.getItem())) {
-                Item item = itemStack.getItem();
-                itemCount.replace(item, itemCount.get(item) + itemStack.getCount());
-
-                playerInventory.set(index, ExampleMod.AIR.copy());
-                airIndexes.add(index);
-            } else if (itemStack.getItem() == craftResult.getItem()) {
-                resultIndexes.add(index);
-            }
-        }
-
-        // Calculate how many crafts can be done.
-        int maxCraft = 0;
-        for (Item item: itemCount.keySet()) {
-            // Maximum items in relation to item required per craft
-            int max = Math.floorDiv(itemCount.get(item), uniqueCraftingItems.get(item));
-
-            if (maxCraft == 0 && max != 0) {
-                maxCraft =  max;
-            } else if (max < maxCraft) {
-                maxCraft = max;
-            }
-        }
-        int craftedItems = maxCraft * craftResult.getCount();
-
-        // Record how many items left
-        for (Item item: itemCount.keySet()) {
-            int itemsLeft = itemCount.get(item) - (maxCraft * uniqueCraftingItems.get(item));
-            itemCount.replace(item, itemsLeft);
-        }
-
-        // Fit as much input items as possible into the inventory and crafting grid
-        ArrayList<ItemStack> updatedCraftingGrid = new ArrayList<>();
-        for (Item item: itemCount.keySet()) {
-            int count = itemCount.get(item);
-            ItemStack itemStack = new ItemStack(item);
-
-            if (count == 0) continue;
-
-            // Fit into crafting grid.
-            for (int i = 0; i < uniqueCraftingItems.get(item); i++) {
-                if (count >= itemStack.getMaxStackSize()) {
-                    itemStack.setCount(itemStack.getMaxStackSize());
-                    updatedCraftingGrid.add(itemStack.copy());
-
-                    count -= itemStack.getMaxStackSize();
-                } else {
-                    itemStack.setCount(count);
-                    updatedCraftingGrid.add(itemStack.copy());
-
-                    count = 0;
-                }
-
-                if (count == 0) break;
-            }
-
-            // Fit into inventory
-            while (count > 0) {
-                if (count >= itemStack.getMaxStackSize()) {
-                    itemStack.setCount(itemStack.getMaxStackSize());
-                    count -= itemStack.getMaxStackSize();
-                } else {
-                    itemStack.setCount(count);
-                    count = 0;
-                }
-                if (airIndexes.size() != 0) {
-                    playerInventory.set(airIndexes.remove(0), itemStack.copy());
-                }
-            }
-
-            itemCount.replace(item, count);
-        }
-
-        // Fit as many craft results as possible into the inventory
-        for (int index: resultIndexes) {
-            ItemStack invItem = playerInventory.get(index);
-            int delta = invItem.getMaxStackSize() - invItem.getCount();
-            if (craftedItems >= delta) {
-                invItem.setCount(invItem.getMaxStackSize());
-                craftedItems -= delta;
-            } else {
-                invItem.setCount(invItem.getCount() + craftedItems);
-                craftedItems = 0;
-            }
-
-            playerInventory.set(index, invItem);
-
-            if (craftedItems == 0) {
-                break;
-            }
-        }
-        ArrayList<ItemStack> overFlow = new ArrayList<>();
-
-        while (craftedItems > 0) {
-            if (craftedItems >= craftResult.getMaxStackSize()) {
-                craftResult.setCount(craftResult.getMaxStackSize());
-                craftedItems -= craftResult.getMaxStackSize();
-            } else {
-                craftResult.setCount(craftedItems);
-                craftedItems = 0;
-            }
-            if (airIndexes.size() > 0) {
-                playerInventory.set(airIndexes.remove(0), craftResult.copy());
-            } else {
-                overFlow.add(craftResult.copy());
-            }
-        }
-
-        // Update Empty Spots
-        while (updatedCraftingGrid.size() < craftingItemStacks.size()) {
-            updatedCraftingGrid.add(ExampleMod.AIR.copy());
-        }
+        CraftPlan<ItemStack> plan = CraftPlanner.plan(craftingItemStacks, craftResult,
+                player.inventory.mainInventory, ItemStackModel.INSTANCE);
 
         // Send inventory and crafting grid to server
-        Channel.INSTANCE.sendToServer(new SortPacket(playerInventory, 0));
-        Channel.INSTANCE.sendToServer(new OptimizationPacket(updatedCraftingGrid));
+        Channel.INSTANCE.sendToServer(new SortPacket(plan.getInventory(), 0));
+        Channel.INSTANCE.sendToServer(new OptimizationPacket(plan.getCraftingGrid()));
 
         // Dump any items that didn't fit
-        for (Item item: itemCount.keySet()) {
-            int count = itemCount.get(item);
-            if (count > 0) {
-                ItemStack result = new ItemStack(item);
-                while (count > 0) {
-                    if (count >= result.getMaxStackSize()) {
-                        result.setCount(result.getMaxStackSize());
-                        count -= result.getMaxStackSize();
-                    } else {
-                        result.setCount(count);
-                        count = 0;
-                    }
-
-                    overFlow.add(result.copy());
-                }
-
-                itemCount.replace(item, 0);
-            }
-        }
-
-        Channel.INSTANCE.sendToServer(new OverFlowPacket(overFlow));
+        Channel.INSTANCE.sendToServer(new OverFlowPacket(plan.getOverflow()));
     }
 
     /**
@@ -551,122 +349,18 @@ public class Functions {
     @OnlyIn(Dist.CLIENT)
     public static boolean moveItem(ArrayList<ItemStack> oldInventory, ArrayList<ItemStack> newInventory,
                                    int oldIndex, int number, boolean oldToNew) {
-        number = Math.abs(number);
-        int notMoved = number;
-
         if (oldIndex >= oldInventory.size()) {
             LOGGER.warn(String.format("[%s] Move item called outside of inventory.", ExampleMod.NAME));
             return true;
         }
 
-        CompoundNBT tag = oldInventory.get(oldIndex).getTag();
-        if (tag == null) tag = new CompoundNBT();
-        tag.putInt("Custom-ID-Tag", Item.getIdFromItem(oldInventory.get(oldIndex).getItem()));
-
-        if (oldToNew) {
-            int emptyIndex = - 1;
-
-            for (int index = 0; index < newInventory.size(); index++) {
-                ItemStack newItem = newInventory.get(index);
-                if (newItem.getCount() == newItem.getMaxStackSize()) continue;
-                if (isAir(newItem)) {
-                    if (emptyIndex == -1) {
-                        emptyIndex = index;
-                    }
-
-                    continue;
-                }
-
-                CompoundNBT newTag = newItem.getTag();
-                if (newTag == null) newTag = new CompoundNBT();
-                newTag.putInt("Custom-ID-Tag", Item.getIdFromItem(newItem.getItem()));
-
-                if (newTag.equals(tag)) {
-                    int itemDif = newItem.getMaxStackSize() - newItem.getCount();
-
-                    if (notMoved > itemDif) {
-                        newItem.setCount(newItem.getMaxStackSize());
-                        newInventory.set(index, newItem.copy());
-
-                        notMoved -= itemDif;
-
-                    } else {
-                        newItem.setCount(newItem.getCount() + notMoved);
-                        newInventory.set(index, newItem.copy());
-
-                        notMoved = 0;
-                        break;
-                    }
-                }
-            }
-
-            if (notMoved > 0 && emptyIndex != -1) {
-                Item item = Item.getItemById(tag.getInt("Custom-ID-Tag"));
-                tag.remove("Custom-ID-Tag");
-                if (tag.isEmpty()) {
-                    tag = null;
-                }
-
-                ItemStack itemStack = new ItemStack(item, notMoved);
-                itemStack.setTag(tag);
-
-                newInventory.set(emptyIndex, itemStack);
+        MovePlan plan = new MovePlan();
+        boolean moved = MovePlanner.moveItem(SlotArray.of(oldInventory, ItemStackModel.INSTANCE),
+                SlotArray.of(newInventory, ItemStackModel.INSTANCE), oldIndex, number, oldToNew, plan);
 
-                if (tag == null) tag = new CompoundNBT();
-                tag.putInt("Custom-ID-Tag", Item.getIdFromItem(item));
+        plan.apply(oldInventory, newInventory, ItemStackModel.INSTANCE);
 
-                notMoved = 0;
-            }
-
-        } else {
-            if (oldInventory.get(oldIndex).getCount() == oldInventory.get(oldIndex).getMaxStackSize()) return false;
-
-            for (int index = newInventory.size() - 1; index >= 0; index--) {
-                ItemStack newItem = newInventory.get(index);
-                if (isAir(newItem)) continue;
-
-                CompoundNBT newTag = newItem.getTag();
-                if (newTag == null) newTag = new CompoundNBT();
-                newTag.putInt("Custom-ID-Tag", Item.getIdFromItem(newItem.getItem()));
-
-                if (newTag.equals(tag)) {
-                    if (newItem.getCount() < notMoved) {
-                        notMoved -= newItem.getCount();
-                        newInventory.remove(index);
-                    } else {
-                        newItem.setCount(newItem.getCount() - notMoved);
-                        newInventory.set(index, newItem.copy());
-
-                        notMoved = 0;
-                        break;
-                    }
-                }
-            }
-        }
-
-        if (number != notMoved) {
-            Item item = Item.getItemById(tag.getInt("Custom-ID-Tag"));
-            tag.remove("Custom-ID-Tag");
-            if (tag.isEmpty()) {
-                tag = null;
-            }
-
-            ItemStack itemStack = new ItemStack(item);
-            itemStack.setTag(tag);
-
-            if (oldToNew) {
-                itemStack.setCount(oldInventory.get(oldIndex).getCount() - (number - notMoved));
-            } else {
-                itemStack.setCount(oldInventory.get(oldIndex).getCount() - (notMoved - number));
-            }
-
-            oldInventory.set(oldIndex, itemStack);
-
-            return true;
-
-        } else {
-            return false;
-        }
+        return moved;
     }
 
     /**
@@ -676,19 +370,7 @@ public class Functions {
      */
     @OnlyIn(Dist.CLIENT)
     public static int getKeyBind() {
-        int bind = 82;
-        try {
-            Map sortSettings = CONFIG.getSortSettings();
-            if (sortSettings != null) {
-                Map keySettings = Config.getMap("Keybind", sortSettings);
-                if (keySettings != null && keySettings.containsKey("Keybind")) {
-                    bind = (int) keySettings.get("Keybind");
-                }
-            }
-
-        } catch (Exception ignored) {}
-
-        return bind;
+        return Config.settings().keybind;
     }
 
     /**
@@ -708,10 +390,7 @@ public class Functions {
 
         if (player == null) return;
 
-        int hotbarSize = 9;
-        if (CONFIG.getConstant("Player Hotbar Size") != null) {
-            hotbarSize = (int) CONFIG.getConstant("Player Hotbar Size");
-        }
+        int hotbarSize = Config.settings().hotbarSize;
 
         int size = 0;
         for (Slot containerSlot: player.openContainer.inventorySlots) {
@@ -952,137 +631,21 @@ public class Functions {
                                                        int width, int height) {
         if (inventory.isEmpty()) return inventory;
 
-        if (order == ClientEventHandlers.Order.COLUMNS) {
-            return splitRows(inventory, width, height, true);
+        switch (order) {
+            case COLUMNS:
+                return LAYOUT.get().arrange(inventory, width, height, GridLayout.COLUMNS);
 
-        } else if (order == ClientEventHandlers.Order.ROWS) {
-            return splitRows(inventory, width, height, false);
+            case ROWS:
+                return LAYOUT.get().arrange(inventory, width, height, GridLayout.ROWS);
 
-        } else {
-            return inventory;
-        }
-    }
+            case CATEGORIES:
+                return LAYOUT.get().arrange(inventory, width, height, GridLayout.CATEGORIES);
 
-    /**
-     * Helper method to replace null items.
-     *
-     * @param array The array to replace items within.
-     * @param itemStack The ItemStack to place.
-     */
-    private static void fillEmpty(ItemStack[][] array, ItemStack itemStack) {
-        for (int i = 0; i < array.length; i++) {
-            for (int j = 0; j <array[i].length; j++) {
-                if (array[i][j] == null) {
-                    array[i][j] = itemStack.copy();
-                    return;
-                }
-            }
+            default:
+                return inventory;
         }
     }
 
-    /**
-     * Helper method to organize inventories into rows and columns.
-     *
-     * @param inventory The inventory to organize.
-     * @param width The width of the inventory.
-     * @param height The height of the inventory.
-     * @param vertical Whether to group into rows or columns.
-     *
-     * @return The sorted inventory.
-     */
-    private static ArrayList<ItemStack> splitRows(ArrayList<ItemStack> inventory, int width, int height,
-                                                  boolean vertical) {
-        int longer = width;
-        int shorter = height;
-
-        if (vertical) {
-            longer = height;
-            shorter = width;
-        }
-
-        ItemStack[][] array = new ItemStack[longer][shorter];
-
-        Item lastItem = inventory.get(0).getItem();
-
-        boolean overflow = false;
-        int row = 0;
-        int col = 0;
-
-        for (ItemStack itemStack: inventory) {
-            if (!overflow && itemStack.getItem() == lastItem) {
-                array[col][row] = itemStack;
-
-                if (row + 1 < shorter) {
-                    row++;
-
-                } else if (col + 1 < longer) {
-                    row = 0;
-                    col++;
-
-                } else {
-                    overflow = true;
-                }
-
-            } else if (!overflow) {
-                if (col + 1 < longer && row != 0) {
-                    col++;
-                    row = 0;
-
-                    array[col][row] = itemStack;
-
-                } else if (row == 0) {
-                    array[col][row] = itemStack;
-
-                } else {
-                    overflow = true;
-                    fillEmpty(array, itemStack);
-                }
-
-                row++;
-                lastItem = itemStack.getItem();
-
-            } else {
-                // Overflow protection code
-                fillEmpty(array, itemStack);
-            }
-        }
-
-        ArrayList<ItemStack> sorted = new ArrayList<>();
-
-        for (int i = 0; i < height; i++) {
-            for (int j = 0; j < width; j++) {
-                if (vertical) {
-                    if (array[i][j] == null) {
-                        sorted.add(ExampleMod.AIR);
-                    } else {
-                        sorted.add(array[i][j]);
-                    }
-                } else {
-                    if (array[j][i] == null) {
-                        sorted.add(ExampleMod.AIR);
-                    } else {
-                        sorted.add(array[j][i]);
-                    }
-                }
-            }
-        }
-
-        return sorted;
-    }
-
-    /**
-     * Switch two items within an inventory.
-     *
-     * @param oldIndex The first item.
-     * @param newIndex The second item.
-     * @param list The inventory to organize.
-     */
-    private static void switchItems(int oldIndex, int newIndex, ArrayList<ItemStack> list) {
-        ItemStack old = list.get(oldIndex);
-        list.set(oldIndex, list.get(newIndex));
-        list.set(newIndex, old);
-    }
-
     /**
      * Helper method to sort an inventory.
      *
@@ -1093,100 +656,15 @@ public class Functions {
      */
     private static ArrayList<ItemStack> sortLogic(ArrayList<ItemStack> inventory, Mode mode) {
         // TODO: Allow implementation of custom logic
-        Map<CompoundNBT, Integer> items = new LinkedHashMap<>();
-
-        for (ItemStack itemStack: inventory) {
-            CompoundNBT plain = itemStack.getTag();
-            if (plain == null) {
-                plain = new CompoundNBT();
-            }
-
-            if (plain.contains("Count")) {
-                plain.remove("Count");
-            }
-
-            plain.putInt("Custom-ID-Tag", Item.getIdFromItem(itemStack.getItem()));
-
-            if (items.containsKey(plain)) {
-                items.replace(plain, items.get(plain) + itemStack.getCount());
-            } else {
-                items.put(plain, itemStack.getCount());
-            }
-        }
-
-        ArrayList<ItemStack> sorted = new ArrayList<>();
-
-        for (CompoundNBT nbt : items.keySet()) {
-            int count = items.get(nbt);
-            Item item = Item.getItemById(nbt.getInt("Custom-ID-Tag"));
-
-            nbt.remove("Custom-ID-Tag");
-            if (nbt.isEmpty()) {
-                nbt = null;
-            }
-
-            ItemStack itemStack = new ItemStack(item);
-            itemStack.setTag(nbt);
-            itemStack.setCount(itemStack.getMaxStackSize());
-
-            if (count == 1 || count < itemStack.getMaxStackSize()) {
-                ItemStack toAdd = new ItemStack(item, count, nbt);
-                toAdd.setTag(nbt);
-
-                sorted.add(toAdd);
-                continue;
-            }
-
-            int maxStacks = Math.floorDiv(count, itemStack.getMaxStackSize());
-            for (int i = 0; i < maxStacks; i++) {
-                sorted.add(itemStack.copy());
-                count -= itemStack.getMaxStackSize();
-            }
-
-            if (count > 0) {
-                ItemStack toAdd = new ItemStack(item, count);
-                toAdd.setTag(nbt);
-                sorted.add(toAdd);
-            }
-        }
+        ArrayList<ItemStack> sorted = SortPlanner.merge(inventory, ItemStackModel.INSTANCE);
 
         if (mode == Mode.DEFAULT) {
             // Alphabet mode sorts everything alphabetically
-            for (int i = 0; i < sorted.size(); i++) {
-                for (int j = i + 1; j < sorted.size(); j++) {
-                    if (sorted.get(i).getItem() == sorted.get(j).getItem()) {
-                        if (sorted.get(i).getCount() < sorted.get(j).getCount()) {
-                            switchItems(i, j, sorted);
-
-                        } else if (sorted.get(i).isDamageable() && sorted.get(j).isDamageable()
-                                && sorted.get(i).getDamage() > sorted.get(j).getDamage()) {
-                            switchItems(i, j, sorted);
-                        }
-
-                    } else {
-                        if (sorted.get(i).getDisplayName().getUnformattedComponentText()
-                                .compareTo(sorted.get(j).getDisplayName().getUnformattedComponentText()) > 0) {
-                            switchItems(i, j, sorted);
-                        }
-                    }
-                }
-            }
+            SortPlanner.sortAlphabetical(sorted, ItemStackModel.INSTANCE);
 
         } else if (mode == Mode.COMPACT) {
-            ArrayList<ItemStack> tempSorted = new ArrayList<>();
-
-            for (ItemStack originalItem: inventory) {
-                for (ItemStack sortedItem: sorted) {
-                    if (originalItem.getItem() == sortedItem.getItem()) {
-                        tempSorted.add(sortedItem);
-                        sorted.remove(sortedItem);
-                        break;
-                    }
-                }
-            }
-
-            tempSorted.addAll(sorted);
-            sorted = tempSorted;
+            // Compact mode keeps the original order of the items
+            sorted = SortPlanner.sortCompact(sorted, inventory, ItemStack::getItem);
         }
 
         return sorted;
@@ -1199,88 +677,32 @@ public class Functions {
      */
     @OnlyIn(Dist.CLIENT)
     private static Mode getSortOrder() {
-        Mode sortOrder;
-        try {
-            Map sortMethod = Config.getMap("Sort Method", CONFIG.getSortSettings());
-            if (sortMethod != null && sortMethod.containsKey("Alphabetical") &&
-                    (boolean) sortMethod.get("Alphabetical")) {
-                sortOrder = Mode.DEFAULT;
-            } else if (sortMethod != null && sortMethod.containsKey("Compact") &&
-                    (boolean) sortMethod.get("Compact")) {
-                sortOrder = Mode.COMPACT;
-            } else sortOrder = Mode.NONE;
-
-        } catch (Exception error) {
-            LOGGER.warn(String.format("[%s] Config error, could not find sort method, assuming default.",
-                    ExampleMod.NAME));
-            sortOrder = Mode.DEFAULT;
-        }
-
-        return sortOrder;
+        return Config.settings().sortMode;
     }
 
     /**
-     * Helper method to clean up after performing a sort.
-     * Backs up the inventory, spawns any items that could not be fit into the world,
-     * logs the event, and cleans up the backup folder.
+     * Helper method to clean up after requesting a sort.
+     * Queues a backup of the inventory as it was before the sort, see {@link BackupWriter}.
      *
      * @param inventory The inventory to back up.
-     * @param maxSize The maximum items that can fit within an inventory.
      *
      * @return The success of the operation.
      */
     @OnlyIn(Dist.CLIENT)
-    private static boolean sortCleanup(ArrayList<ItemStack> inventory, int maxSize) {
-        // Dumping inventory items (in case of error)
-        Map backups = CONFIG.getMap("Backups");
-        if (backups != null) {
-            Object backupToggle = backups.get("Backups");
-            if (backupToggle != null && (boolean) backupToggle ) {
-                try {
-                    Backup.backup(backups, inventory);
-                } catch (IOException error) {
-                    LOGGER.error(String.format("[%s] Sorting backup error: (%s) - %s", ExampleMod.NAME,
-                            error.getClass().getCanonicalName(), Arrays.toString(error.getStackTrace())));
-                    return false;
-                }
+    private static boolean sortCleanup(ArrayList<ItemStack> inventory) {
+        // Dumping inventory items (in case of error), the disk is only touched by the backup writer
+        Settings settings = Config.settings();
+        if (settings.backups && !inventory.isEmpty()) {
+            if (!BackupWriter.INSTANCE.submit(Backup.getWorldPath(settings.backupLocation), Backup.getOwner(),
+                    settings.backupCount, inventory, settings.backupQueueSize, settings.backupQueuePolicy)) {
+                LOGGER.warn(String.format("[%s] Too many backups waiting to be written, skipped this one.",
+                        ExampleMod.NAME));
             }
         }
 
-        // In case all items can't be stored within inventory
-        if (inventory.size() > maxSize) {
-            ArrayList<ItemStack> overflow = new ArrayList<>(
-                    inventory.subList(maxSize, inventory.size())
-            );
-
-            LOGGER.warn(String.format("[%s] Sending overflow packet.", ExampleMod.NAME));
-            Channel.INSTANCE.sendToServer(new OverFlowPacket(overflow));
-        }
-
         return true;
     }
 
-    /**
-     * Exclude the first x items from a list. Used to remove hotbar items from an inventory.
-     *
-     * @param inventory The inventory to exclude the hotbar from.
-     * @param hotbarSize The size of the hotbar.
-     *
-     * @return The new inventory without the hotbar.
-     */
-    private static ArrayList<ItemStack> excludeHotbar(List<ItemStack> inventory, int hotbarSize) {
-        ArrayList<ItemStack> excluded = new ArrayList<>();
-
-        for (int i = hotbarSize; i < inventory.size(); i++) {
-            ItemStack item = inventory.get(i);
-
-            if (!isAir(item)) {
-                excluded.add(item);
-            }
-        }
-
-        return excluded;
-    }
-
     /**
      * Splits an inventory into hotbar and main inventory items.
      *
@@ -1305,43 +727,165 @@ public class Functions {
      * @return The success of the operation.
      */
     @OnlyIn(Dist.CLIENT)
-    private static boolean moveAllItems(ArrayList<ItemStack> origin, ArrayList<ItemStack> newInv, Item item) {
-        boolean toSend = false;
+    static boolean moveAllItems(ArrayList<ItemStack> origin, ArrayList<ItemStack> newInv, Item item) {
+        MovePlan plan = new MovePlan();
+        boolean moved = MovePlanner.moveAll(SlotArray.of(origin, ItemStackModel.INSTANCE),
+                SlotArray.of(newInv, ItemStackModel.INSTANCE),
+                index -> item == null || origin.get(index).getItem() == item, plan);
 
-        if (item == null) {
-            for (int index = 0; index < origin.size(); index++) {
-                if (isAir(origin.get(index))) continue;
+        plan.apply(origin, newInv, ItemStackModel.INSTANCE);
 
-                if (Functions.moveItem(origin, newInv, index, origin.get(index).getCount(), true)) {
-                    toSend = true;
-                } else {
-                    break;
-                }
-            }
+        return moved;
+    }
 
-        } else {
-            ArrayList<Integer> indexes = new ArrayList<>();
-            for (int i = 0; i < origin.size(); i++) {
-                if (origin.get(i).getItem() == item) {
-                    indexes.add(i);
-                }
-            }
+    /**
+     * Sort a list of stacks, and arrange them into an inventory of the given size.
+     * Used by the server to perform sort requests.
+     *
+     * @param inventory The stacks of the inventory.
+     * @param start The number of protected slots at the start of the inventory, which are left out.
+     * @param order The structure the items should be set in.
+     * @param mode The sorting logic to use.
+     * @param width The width of the inventory. 0 to skip arranging.
+     * @param height The height of the inventory. 0 to skip arranging.
+     *
+     * @return The sorted stacks, without the protected slots. Only arranged if the given size fits the inventory.
+     */
+    public static ArrayList<ItemStack> sortStacks(List<ItemStack> inventory, int start, ClientEventHandlers.Order order,
+                                                  Mode mode, int width, int height) {
+        ArrayList<ItemStack> sorted = sortLogic(SortPlanner.collect(inventory, start, ItemStackModel.INSTANCE), mode);
 
+        if (width > 0 && height > 0 && (long) width * height <= inventory.size() - start) {
+            sorted = orderInventory(sorted, order, width, height);
+        }
 
-            for (int index: indexes) {
-                if (Functions.moveItem(origin, newInv, index, origin.get(index).getCount(), true)) {
-                    toSend = true;
-                } else {
-                    break;
+        return sorted;
+    }
+
+    /**
+     * Get the slots of a container that are sorted: slots outside the player's inventory that the player can take
+     * from, leaving out the protected slots and the slots that only give items, such as crafting results.
+     *
+     * @param container The container.
+     * @param player The player sorting the container.
+     * @param start The number of protected slots at the start of the container, not counting the player's inventory.
+     *
+     * @return The slots, in order.
+     */
+    public static ArrayList<Slot> getSortableSlots(Container container, PlayerEntity player, int start) {
+        ArrayList<Slot> slots = new ArrayList<>();
+        int index = 0;
+
+        for (Slot slot: container.inventorySlots) {
+            if (slot.inventory instanceof PlayerInventory || index++ < start) continue;
+
+            if (slot instanceof CraftingResultSlot || slot instanceof FurnaceResultSlot
+                    || slot instanceof MerchantResultSlot || !slot.canTakeStack(player)) continue;
+
+            slots.add(slot);
+        }
+
+        return slots;
+    }
+
+    /**
+     * Whether the result of a sort leaves an inventory as it was, so it does not need to be applied.
+     * Compares the hash of the inventory before the sort to the hash of the slots laid out by the sort.
+     *
+     * @param before The hash of the inventory before the sort, see {@link StackKey#hashOf(List)}.
+     * @param inventory The stacks of the inventory, used for the protected slots.
+     * @param start The number of protected slots at the start of the inventory.
+     * @param sorted The sorted stacks, from {@link Functions#sortStacks}.
+     *
+     * @return True if every slot would keep its stack, false if anything moves or does not fit.
+     */
+    public static boolean isUnchanged(long before, List<ItemStack> inventory, int start, List<ItemStack> sorted) {
+        if (sorted.size() > inventory.size() - start) return false;
+
+        ArrayList<ItemStack> result = new ArrayList<>(inventory.subList(0, start));
+        result.addAll(sorted);
+        while (result.size() < inventory.size()) {
+            result.add(ExampleMod.AIR);
+        }
+
+        return StackKey.hashOf(result) == before;
+    }
+
+    /**
+     * Whether an inventory is already sorted, by sorting it on the client the same way the server would.
+     *
+     * @param inventory The stacks of the inventory.
+     * @param start The number of protected slots at the start of the inventory.
+     * @param order The structure the items should be set in.
+     * @param width The width of the inventory. 0 to skip arranging.
+     * @param height The height of the inventory. 0 to skip arranging.
+     *
+     * @return True if a sort request would not change anything.
+     */
+    @OnlyIn(Dist.CLIENT)
+    private static boolean isSorted(List<ItemStack> inventory, int start, ClientEventHandlers.Order order, int width,
+                                    int height) {
+        int from = Math.min(Math.max(start, 0), inventory.size());
+
+        return isUnchanged(StackKey.hashOf(inventory), inventory, from,
+                sortStacks(inventory, from, order, getSortOrder(), width, height));
+    }
+
+    /**
+     * Equip the best armor found in an inventory. The replaced armor takes the place of the equipped pieces.
+     *
+     * @param player The player to equip the armor on.
+     * @param inventory The main inventory of the player. Updated with the replaced armor.
+     */
+    public static void equipBestArmor(PlayerEntity player, List<ItemStack> inventory) {
+        NonNullList<ItemStack> armorInv = player.inventory.armorInventory;
+        ArrayList<Map.Entry<ItemStack, Integer>> fullInv = new ArrayList<>();
+
+        for (ItemStack itemStack: armorInv) {
+            fullInv.add(new SimpleEntry<>(itemStack, -1));
+        }
+
+        for (int id = 0; id < inventory.size(); id++) {
+            fullInv.add(new SimpleEntry<>(inventory.get(id), id));
+        }
+
+        int[] armorSlots = ArmorEquip.getBestArmor(fullInv);
+        for (int i = 0; i < armorSlots.length; i++) {
+            if (armorSlots[i] >= 0) {
+                EquipmentSlotType equipSlot;
+                switch (i) {
+                    case 0:
+                        // Helmet
+                        equipSlot = EquipmentSlotType.HEAD;
+                        break;
+
+                    case 1:
+                        // Chest Plate
+                        equipSlot = EquipmentSlotType.CHEST;
+                        break;
+
+                    case 2:
+                        // Leggings
+                        equipSlot = EquipmentSlotType.LEGS;
+                        break;
+
+                    case 3:
+                        // Boots
+                        equipSlot = EquipmentSlotType.FEET;
+                        break;
+
+                    default:
+                        continue;
                 }
+
+                ItemStack newItem = inventory.set(armorSlots[i], armorInv.get(3 - i));
+                player.setItemStackToSlot(equipSlot, newItem);
             }
         }
-
-        return toSend;
     }
 
     /**
-     * The general sorting function.
+     * The general sorting function. Asks the server to sort, and backs up the inventory.
      *
      * @param playerInventory Whether to sort player inventory or other inventory.
      * @param order The structure the items should be set in.
@@ -1350,9 +894,8 @@ public class Functions {
      */
     @OnlyIn(Dist.CLIENT)
     public static boolean sort(boolean playerInventory, ClientEventHandlers.Order order, ContainerScreen container) {
-        // Items to be sent to sort
-        ArrayList<ItemStack> toSend = new ArrayList<>();
-        int maxSize;
+        // Items to back up
+        ArrayList<ItemStack> backup = new ArrayList<>();
 
         // Determining Inventory
         if (playerInventory) {
@@ -1364,73 +907,14 @@ public class Functions {
                 return false;
             }
 
-            NonNullList<ItemStack> armorInv = player.inventory.armorInventory;
-            NonNullList<ItemStack> mainInv = player.inventory.mainInventory;
-
-            ArrayList<Map.Entry<ItemStack, Integer>> fullInv = new ArrayList<>();
-
-            for (ItemStack itemStack: armorInv) {
-                fullInv.add(new SimpleEntry<>(itemStack, -1));
-            }
-
-            NonNullList<ItemStack> invArray = NonNullList.create();
-            int id = 0;
-            for (ItemStack itemStack: mainInv) {
-                ItemStack newItem = itemStack.copy();
-                fullInv.add(new SimpleEntry<>(newItem, id++));
-                invArray.add(newItem);
-            }
-
-            Map config = CONFIG.getMap("Sort Options");
-            if (config != null && config.containsKey("Equip Best Armor on Sort") &&
-                    (boolean) config.get("Equip Best Armor on Sort")) {
-                int[] armorSlots = ArmorEquip.getBestArmor(fullInv);
-                for (int i = 0; i < armorSlots.length; i++) {
-                    if (armorSlots[i] >= 0) {
-                        EquipmentSlotType equipSlot;
-                        switch (i) {
-                            case 0:
-                                // Helmet
-                                equipSlot = EquipmentSlotType.HEAD;
-                                break;
-
-                            case 1:
-                                // Chest Plate
-                                equipSlot = EquipmentSlotType.CHEST;
-                                break;
-
-                            case 2:
-                                // Leggings
-                                equipSlot = EquipmentSlotType.LEGS;
-                                break;
-
-                            case 3:
-                                // Boots
-                                equipSlot = EquipmentSlotType.FEET;
-                                break;
-
-                            default:
-                                continue;
-                        }
-
-                        ItemStack newItem = invArray.set(armorSlots[i], armorInv.get(3 - i));
-
-                        LOGGER.debug(String.format("[%s] Sending network equip packet.", ExampleMod.NAME));
-                        Channel.INSTANCE.sendToServer(new EquipArmorPacket(newItem, equipSlot));
-                    }
-                }
-            }
-
             // Stop if inventory is empty
-            if (invArray.isEmpty()) {
+            if (player.inventory.mainInventory.isEmpty()) {
                 return true;
             }
 
             if (player.world.isRemote) {
-                int hotbarSize = 9;
-                if (CONFIG.getConstant("Player Hotbar Size") != null) {
-                    hotbarSize = (int) CONFIG.getConstant("Player Hotbar Size");
-                }
+                Settings settings = Config.settings();
+                int hotbarSize = settings.hotbarSize;
 
                 // TODO: add skip hotbar option
                 boolean skipHotbar = true;
@@ -1438,30 +922,24 @@ public class Functions {
                     skipHotbar = false;
                 }
 
-                toSend = excludeHotbar(invArray, skipHotbar ? hotbarSize : 0);
-
-                // Sorting the array
-                Mode sortOrder = getSortOrder();
+                int width = settings.playerInventoryWidth;
+                int height = settings.playerInventoryHeight;
+                boolean equipArmor = settings.equipArmorOnSort;
 
-                if (CONFIG.getConstant("Player Inventory Width") != null &&
-                        CONFIG.getConstant("Player Inventory Height") != null) {
-                    toSend = orderInventory(sortLogic(toSend, sortOrder), order,
-                            (int) CONFIG.getConstant("Player Inventory Width"),
-                            (int) CONFIG.getConstant("Player Inventory Height"));
-                } else {
-                    toSend = sortLogic(toSend, sortOrder);
+                // Nothing to send or back up, armor is equipped by the server so it is always sent
+                if (!equipArmor && isSorted(player.inventory.mainInventory, skipHotbar ? hotbarSize : 0, order,
+                        width, height)) {
+                    LOGGER.debug(String.format("[%s] Inventory already sorted, skipped sort request", ExampleMod.NAME));
+                    return true;
                 }
 
-                maxSize = player.inventory.mainInventory.size();
-
-                if (skipHotbar) {
-                    for (int i = 0; i < hotbarSize; i++) {
-                        toSend.add(i, invArray.get(i));
-                    }
+                for (ItemStack itemStack: player.inventory.mainInventory) {
+                    backup.add(itemStack.copy());
                 }
 
-                LOGGER.debug(String.format("[%s] Sending network sort packet", ExampleMod.NAME));
-                Channel.INSTANCE.sendToServer(new SortPacket(toSend, 0));
+                LOGGER.debug(String.format("[%s] Sending network sort request", ExampleMod.NAME));
+                Channel.INSTANCE.sendToServer(new SortRequest(true, order, getSortOrder(), width, height,
+                        skipHotbar ? hotbarSize : 0, equipArmor));
 
             } else {
                 LOGGER.warn(String.format("[%s] Client side sort code detected on the logical server. Aborting.",
@@ -1479,72 +957,58 @@ public class Functions {
                 }
 
                 if (!isAir(slot.getStack())) {
-                    toSend.add(slot.getStack());
+                    backup.add(slot.getStack().copy());
                 }
 
                 size++;
 
             }
 
-            maxSize = size;
-
             // Stop if inventory is empty
-            if (toSend.isEmpty()) {
+            if (backup.isEmpty()) {
                 return true;
             }
 
             if (container.getMinecraft().world != null && container.getMinecraft().world.isRemote) {
-                // Sorting the array
-                Mode sortOrder = getSortOrder();
-
-                boolean defaultSort = true;
-
-                if (CONFIG.getConstant(container.getClass().getName()) != null) {
-                    // Custom Registered Inventories
-                    defaultSort = false;
-
-                    Map options = null;
-                    try {
-                        options = (Map) CONFIG.getConstant(container.getClass().getName());
-                    } catch (Exception ignored) {
-                        LOGGER.debug(String.format("[%s] Could not read options for: %s",
-                                ExampleMod.NAME, container.getClass().getName()));
-                        defaultSort = true;
-                    }
+                int width = 0;
+                int height = 0;
+                int start = 0;
 
-                    if (options != null && options.containsKey("width") && options.containsKey("height")) {
-                        toSend = orderInventory(sortLogic(toSend, sortOrder), order,
-                                (int) options.get("width"), (int) options.get("height"));
+                Settings settings = Config.settings();
 
-                        LOGGER.debug(String.format("[%s] Sending network sort packet", ExampleMod.NAME));
-                        if (options.containsKey("protectedIndex")) {
-                            maxSize -= (int) options.get("protectedIndex");
-                            Channel.INSTANCE.sendToServer(new SortPacket(toSend,
-                                    (int) options.get("protectedIndex"), maxSize));
+                // Custom Registered Inventories, without a custom width or height the default handler takes over
+                Settings.Screen options = settings.getScreen(container.getClass().getName());
+                boolean defaultSort = options == null || !options.sized;
 
-                        } else {
-                            Channel.INSTANCE.sendToServer(new SortPacket(toSend, 0, maxSize));
-                        }
+                if (!defaultSort) {
+                    width = options.width;
+                    height = options.height;
+                    start = options.protectedIndex;
+                }
 
-                    } else {
-                        // No custom width or height, letting default handler take over
-                        defaultSort = true;
-                    }
+                if (defaultSort && settings.defaultChestWidth > 0) {
+                    width = settings.defaultChestWidth;
+                    height = size / width;
                 }
 
-                if (defaultSort) {
-                    if (CONFIG.getConstant("Default Chest Width") != null) {
-                        toSend = orderInventory(sortLogic(toSend, sortOrder), order,
-                                (int) CONFIG.getConstant("Default Chest Width"),
-                                maxSize / (int) CONFIG.getConstant("Default Chest Width"));
-                    } else {
-                        toSend = sortLogic(toSend, sortOrder);
+                // The slots the server sorts
+                ArrayList<ItemStack> contents = new ArrayList<>();
+                ClientPlayerEntity player = container.getMinecraft().player;
+                if (player != null) {
+                    for (Slot slot: getSortableSlots(container.getContainer(), player, start)) {
+                        contents.add(slot.getStack());
                     }
+                }
 
-                    LOGGER.debug(String.format("[%s] Sending network sort packet", ExampleMod.NAME));
-                    Channel.INSTANCE.sendToServer(new SortPacket(toSend, 0, maxSize));
+                if (player != null && isSorted(contents, 0, order, width, height)) {
+                    LOGGER.debug(String.format("[%s] Inventory already sorted, skipped sort request", ExampleMod.NAME));
+                    return true;
                 }
 
+                LOGGER.debug(String.format("[%s] Sending network sort request", ExampleMod.NAME));
+                Channel.INSTANCE.sendToServer(new SortRequest(false, order, getSortOrder(), width, height, start,
+                        false));
+
             } else {
                 LOGGER.warn(String.format("[%s] Client side sort code detected on the logical server. Aborting.",
                         ExampleMod.NAME));
@@ -1552,7 +1016,7 @@ public class Functions {
             }
         }
 
-        return sortCleanup(toSend, maxSize);
+        return sortCleanup(backup);
     }
 
     /**
@@ -1563,10 +1027,6 @@ public class Functions {
      */
     @OnlyIn(Dist.CLIENT)
     public static boolean playerSort(NonNullList<ItemStack> itemList) {
-        // Items to be sent to sort
-        ArrayList<ItemStack> toSend;
-        int maxSize = itemList.size();
-
         // Getting inventory to sort
         ClientPlayerEntity player = Minecraft.getInstance().player;
 
@@ -1581,24 +1041,17 @@ public class Functions {
         }
 
         if (player.world.isRemote) {
-            int hotbarSize = 9;
-            if (CONFIG.getConstant("Player Hotbar Size") != null) {
-                hotbarSize = (int) CONFIG.getConstant("Player Hotbar Size");
-            }
-
-            toSend = excludeHotbar(itemList, hotbarSize);
-
-            // Sorting the array
-            Mode sortOrder = getSortOrder();
-            toSend = sortLogic(toSend, sortOrder);
+            int hotbarSize = Config.settings().hotbarSize;
 
-            LOGGER.debug(String.format("[%s] Sending network sort packet", ExampleMod.NAME));
-            Channel.INSTANCE.sendToServer(new SortPacket(toSend, hotbarSize));
-
-            for (int i = 0; i < hotbarSize; i++) {
-                toSend.add(i, itemList.get(i));
+            if (isSorted(itemList, hotbarSize, ClientEventHandlers.Order.DEFAULT, 0, 0)) {
+                LOGGER.debug(String.format("[%s] Inventory already sorted, skipped sort request", ExampleMod.NAME));
+                return true;
             }
 
+            LOGGER.debug(String.format("[%s] Sending network sort request", ExampleMod.NAME));
+            Channel.INSTANCE.sendToServer(new SortRequest(true, ClientEventHandlers.Order.DEFAULT, getSortOrder(),
+                    0, 0, hotbarSize, false));
+
         } else {
             LOGGER.warn(String.format("[%s] Client side sort code detected on the logical server. Aborting.",
                     ExampleMod.NAME));
@@ -1606,77 +1059,73 @@ public class Functions {
 
         }
 
-        return sortCleanup(toSend, maxSize);
+        ArrayList<ItemStack> backup = new ArrayList<>();
+        for (ItemStack itemStack: itemList) {
+            backup.add(itemStack.copy());
+        }
+
+        return sortCleanup(backup);
     }
 
     /**
      * Refills a player's held item if possible.
+     * The held item is checked on the following ticks, and refilled once it has run out.
      *
      * @param playerEntity The player to refill.
      * @param item The item which should be refilled.
      * @param hand Hand that will be refilled.
      *
-     * @return The result of the operations. 0 Represents a successful refill, 1 represents no refill without error,
-     * 2 represents an error.
+     * @return Whether the refill was scheduled.
      */
     @OnlyIn(Dist.CLIENT)
-    public static int refill(ClientPlayerEntity playerEntity, Item item, Hand hand) {
-        try {
-            Thread.sleep(50);
-            /* I am ashamed of this
-            Explanation: For some reason, attempting to access the current held item can sometimes give you
-            the slot contents right before the block gets placed, and sometimes after. This means if you are on
-            your last item, the function can return the slot as containing air, or 1 of the item.
-
-            There does not appear to be any inherent order to it, so the next best thing is to wait a bit.
-            This seems to be a bit more reliable. 50ms is used because its slow enough to not have unexpected
-            results, but also quick enough it's barely noticeable for the client, and doesn't have any negative effects
-            on the game.
-
-            One possible workaround is asking the server for the information, as it appears to be more reliable.
-            (It is possible the apparent reliability is simply due to delay).
-            Just waiting seems more efficient, so that's what I'll settle on for now.
-            */
-
-            ItemStack heldItem = playerEntity.getHeldItem(hand);
-
-            if (isAir(heldItem)) {
-                // Finding all instances of the item
-                ArrayList<Integer> slots = new ArrayList<>();
-
-                for (int i = playerEntity.inventory.mainInventory.size() - 1; i >= 0; i--) {
-                    if (playerEntity.inventory.getStackInSlot(i).getItem() == item &&
-                            playerEntity.inventory.getStackInSlot(i) != playerEntity.getHeldItem(hand)) {
-                        slots.add(i);
-                    }
-                }
+    public static boolean refill(ClientPlayerEntity playerEntity, Item item, Hand hand) {
+        int selected = playerEntity.inventory.currentItem;
+        boolean scheduled = DEFERRED.schedule(() -> refillHeld(playerEntity, item, hand, selected), SETTLE_TICKS);
 
-                if (slots.size() == 0) {
-                    // No items found to refill
-                    return 1;
-                }
+        if (!scheduled) {
+            LOGGER.warn(String.format("[%s] Too many deferred actions, skipping refill.", ExampleMod.NAME));
+        }
 
-                if (playerEntity.world.isRemote) {
-                    LOGGER.debug(String.format("[%s] Sending network refill packet", ExampleMod.NAME));
-                    Channel.INSTANCE.sendToServer(new RefillPacket(hand, slots.get(0)));
+        return scheduled;
+    }
 
-                } else {
-                    LOGGER.warn(String.format("[%s] Client side refill code detected on the logical server. Aborting.",
-                            ExampleMod.NAME));
-                    return 2;
-                }
+    /**
+     * Refill a player's held item, if it has run out.
+     *
+     * @param playerEntity The player to refill.
+     * @param item The item which should be refilled.
+     * @param hand Hand that will be refilled.
+     * @param selected The selected hotbar slot when the refill was scheduled.
+     *
+     * @return False if the held item has not run out yet.
+     */
+    @OnlyIn(Dist.CLIENT)
+    private static boolean refillHeld(ClientPlayerEntity playerEntity, Item item, Hand hand, int selected) {
+        // The player switched slots in the meantime
+        if (hand == Hand.MAIN_HAND && playerEntity.inventory.currentItem != selected) return true;
 
-                // Refill Sent
-                return 0;
+        /* The held stack can still show the item right after the last one was placed, until the client catches up
+        with the placement. Checking again on the next ticks gives it time to settle, without blocking the thread. */
+        ItemStack heldItem = playerEntity.getHeldItem(hand);
+        if (!isAir(heldItem)) return false;
 
-            }
+        // Finding the last instance of the item
+        int slot = getInventoryIndex(playerEntity).getLastSlot(item);
+
+        if (slot == -1) {
+            // No items found to refill
+            return true;
+        }
 
-            return 1; // Hand not empty, don't need to refill
+        if (playerEntity.world.isRemote) {
+            LOGGER.debug(String.format("[%s] Sending network refill packet", ExampleMod.NAME));
+            Channel.INSTANCE.sendToServer(new RefillPacket(hand, slot));
 
-        } catch (Exception error) {
-            LOGGER.warn(String.format("[%s] Block refill Error: %s - %s", ExampleMod.NAME,
-                    error.getClass().getCanonicalName(), Arrays.toString(error.getStackTrace())));
-            return 2;
+        } else {
+            LOGGER.warn(String.format("[%s] Client side refill code detected on the logical server. Aborting.",
+                    ExampleMod.NAME));
         }
+
+        return true;
     }
 }
\ No newline at end of file
@@ -0,0 +1,194 @@
+/*
+ * Copyright (c) 2020 Hassan Abouelela
+ * Licensed under the MIT License
+ */
+
+package com.example.examplemod.functions;
+
+import com.example.examplemod.inventory.SlotIndex;
+import net.minecraft.entity.player.PlayerEntity;
+import net.minecraft.entity.player.PlayerInventory;
+import net.minecraft.inventory.container.Container;
+import net.minecraft.inventory.container.IContainerListener;
+import net.minecraft.inventory.container.Slot;
+import net.minecraft.item.Item;
+import net.minecraft.item.ItemStack;
+import net.minecraft.util.NonNullList;
+
+import java.util.BitSet;
+
+/**
+ * Keeps a {@link SlotIndex} of a player's main inventory, brought up to date from change notifications.
+ *
+ * <p>Changed slots are marked dirty, and a lookup only indexes the dirty slots again. On the server the locator listens
+ * to the player's container, which reports every changed slot while no other container is open, and packet handlers
+ * mark the slots they change through {@link ItemLocator#markDirty(int)}. The client is not told about stacks it
+ * changes in place when items are used, so the held slot is marked by the callers before a lookup.</p>
+ *
+ * <p>Slots changed through other containers are only reported by the inventory's change counter, which does not say
+ * which slot changed. When it moved since the last lookup, every slot is compared against the stack and value it was
+ * last indexed with. That is a reference and a number per slot, and only happens after the inventory changed.</p>
+ */
+public class ItemLocator implements IContainerListener {
+    /**
+     * The container of the player.
+     */
+    private final Container container;
+    /**
+     * The inventory of the player.
+     */
+    private final PlayerInventory inventory;
+    /**
+     * The index of the main inventory.
+     */
+    private final SlotIndex index;
+    /**
+     * The stack last indexed in each slot.
+     */
+    private final ItemStack[] stacks;
+    /**
+     * The value last indexed for each slot, see {@link ItemLocator#getValue(ItemStack)}.
+     */
+    private final int[] values;
+    /**
+     * The slots changed since the last lookup.
+     */
+    private final BitSet dirty;
+    /**
+     * The change counter of the inventory at the last lookup.
+     */
+    private int timesChanged;
+
+    /**
+     * Creates a locator. Use {@link ItemLocator#attach(PlayerEntity)}.
+     *
+     * @param player The player.
+     */
+    private ItemLocator(PlayerEntity player) {
+        this.container = player.container;
+        this.inventory = player.inventory;
+        this.index = new SlotIndex(player.inventory.mainInventory.size());
+        this.stacks = new ItemStack[this.index.size()];
+        this.values = new int[this.index.size()];
+        this.dirty = new BitSet(this.index.size());
+        this.dirty.set(0, this.index.size());
+        this.timesChanged = player.inventory.getTimesChanged();
+    }
+
+    /**
+     * Create a locator for a player. The index is built on the first lookup.
+     * On the server, the locator listens to the player's container. Listeners can not be removed, the locator is
+     * dropped with the container when the player respawns or leaves.
+     *
+     * @param player The player.
+     * @return The locator.
+     */
+    public static ItemLocator attach(PlayerEntity player) {
+        ItemLocator locator = new ItemLocator(player);
+        if (!player.world.isRemote) player.container.addListener(locator);
+
+        return locator;
+    }
+
+    /**
+     * Whether the locator tracks the current container of a player. Players get a new container when they respawn.
+     *
+     * @param player The player.
+     * @return True if the locator is up to date with the player.
+     */
+    public boolean isTracking(PlayerEntity player) {
+        return player.container == this.container;
+    }
+
+    /**
+     * Returns the index of the main inventory, after indexing the slots that changed since the last lookup.
+     *
+     * @return The index.
+     */
+    public SlotIndex getIndex() {
+        int size = Math.min(this.stacks.length, this.inventory.mainInventory.size());
+
+        if (this.inventory.getTimesChanged() != this.timesChanged) {
+            this.timesChanged = this.inventory.getTimesChanged();
+
+            for (int slot = 0; slot < size; slot++) {
+                ItemStack itemStack = this.inventory.mainInventory.get(slot);
+                if (itemStack != this.stacks[slot] || getValue(itemStack) != this.values[slot]) this.dirty.set(slot);
+            }
+        }
+
+        for (int slot = this.dirty.nextSetBit(0); slot >= 0 && slot < size; slot = this.dirty.nextSetBit(slot + 1)) {
+            update(slot, this.inventory.mainInventory.get(slot));
+        }
+        this.dirty.clear();
+
+        return this.index;
+    }
+
+    /**
+     * Whether a slot of the main inventory holds an item, to check a slot from the index before using it.
+     *
+     * @param slot The index in the main inventory, or -1.
+     * @param item The item.
+     *
+     * @return True if the slot holds the item.
+     */
+    public boolean holds(int slot, Item item) {
+        return slot >= 0 && slot < this.inventory.mainInventory.size()
+                && this.inventory.mainInventory.get(slot).getItem() == item;
+    }
+
+    /**
+     * Mark a slot of the main inventory as changed, to index it again on the next lookup.
+     * Indexes outside the main inventory, like the armor slots, are ignored.
+     *
+     * @param slot The index in the player's inventory.
+     */
+    public void markDirty(int slot) {
+        if (slot >= 0 && slot < this.stacks.length) this.dirty.set(slot);
+    }
+
+    @Override
+    public void sendAllContents(Container container, NonNullList<ItemStack> items) {
+        this.dirty.set(0, this.stacks.length);
+    }
+
+    @Override
+    public void sendSlotContents(Container container, int slotNumber, ItemStack itemStack) {
+        Slot slot = container.getSlot(slotNumber);
+        if (slot.inventory == this.inventory) markDirty(slot.getSlotIndex());
+    }
+
+    @Override
+    public void sendWindowProperty(Container container, int varToUpdate, int newValue) { }
+
+    /**
+     * Get the value a stack is indexed with: the remaining durability of damageable stacks, the count of other stacks,
+     * and 0 for empty stacks.
+     *
+     * @param itemStack The stack.
+     * @return The value.
+     */
+    private static int getValue(ItemStack itemStack) {
+        if (itemStack.isEmpty()) return 0;
+
+        return itemStack.isDamageable() ? itemStack.getMaxDamage() - itemStack.getDamage() : itemStack.getCount();
+    }
+
+    /**
+     * Index the new contents of a slot.
+     *
+     * @param slot The index in the main inventory.
+     * @param itemStack The stack now in the slot.
+     */
+    private void update(int slot, ItemStack itemStack) {
+        this.stacks[slot] = itemStack;
+        this.values[slot] = getValue(itemStack);
+
+        if (itemStack.isEmpty()) {
+            this.index.update(slot, null, 0, false);
+        } else {
+            this.index.update(slot, itemStack.getItem(), this.values[slot], itemStack.isDamageable());
+        }
+    }
+}
@@ -0,0 +1,94 @@
+/*
+ * Copyright (c) 2020 Hassan Abouelela
+ * Licensed under the MIT License
+ */
+
+package com.example.examplemod.functions;
+
+import com.example.examplemod.inventory.StackModel;
+import net.minecraft.item.Item;
+import net.minecraft.item.ItemStack;
+
+import javax.annotation.Nullable;
+
+/**
+ * Describes ItemStacks to the inventory planners. Keys are {@link StackKey}s, and kinds are items.
+ */
+public final class ItemStackModel implements StackModel<ItemStack> {
+    /**
+     * The shared instance. The model has no state.
+     */
+    public static final ItemStackModel INSTANCE = new ItemStackModel();
+
+    /**
+     * Use {@link ItemStackModel#INSTANCE}.
+     */
+    private ItemStackModel() {}
+
+    @Override
+    public boolean isEmpty(ItemStack stack) {
+        return Functions.isAir(stack);
+    }
+
+    @Override
+    public Object getKey(ItemStack stack) {
+        return StackKey.of(stack);
+    }
+
+    @Override
+    public Object getKind(ItemStack stack) {
+        return stack.getItem();
+    }
+
+    @Override
+    public int getKindId(ItemStack stack) {
+        return Item.getIdFromItem(stack.getItem());
+    }
+
+    @Nullable
+    @Override
+    public Object getCategory(ItemStack stack) {
+        return stack.getItem().getGroup();
+    }
+
+    @Override
+    public String getName(ItemStack stack) {
+        // Translated names depend on the language of each side, and the server has none for most modded items
+        if (stack.hasDisplayName()) return stack.getDisplayName().getUnformattedComponentText();
+
+        return String.valueOf(stack.getItem().getRegistryName());
+    }
+
+    @Override
+    public int getDamage(ItemStack stack) {
+        return stack.isDamageable() ? stack.getDamage() : 0;
+    }
+
+    @Override
+    public int getCount(ItemStack stack) {
+        return stack.getCount();
+    }
+
+    @Override
+    public int getMaxStackSize(ItemStack stack) {
+        return stack.getMaxStackSize();
+    }
+
+    @Override
+    public ItemStack withCount(ItemStack stack, int count) {
+        ItemStack copy = stack.copy();
+        copy.setCount(count);
+
+        return copy;
+    }
+
+    @Override
+    public ItemStack createStack(Object kind, int count) {
+        return new ItemStack((Item) kind, count);
+    }
+
+    @Override
+    public ItemStack empty() {
+        return ItemStack.EMPTY;
+    }
+}
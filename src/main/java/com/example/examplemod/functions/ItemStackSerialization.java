@@ -5,7 +5,9 @@
 
 package com.example.examplemod.functions;
 
+import com.fasterxml.jackson.core.JsonParser;
 import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.core.JsonToken;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import net.minecraft.item.Item;
 import net.minecraft.item.ItemStack;
@@ -23,6 +25,9 @@ import java.util.Map;
 
 /**
  * Class to serialize ItemStacks to be backed up.
+ * Backups are now written by {@link BackupStore}, as a manifest of every slot that refers to each distinct stack in a
+ * shared, content-addressed objects folder, and is often only the changes since the previous manifest. This format is
+ * kept to restore older backups.
  */
 class ItemStackSerialization {
     private final Map<String, Object> itemInfo;
@@ -95,19 +100,62 @@ class ItemStackSerialization {
 
     /**
      * A utility to convert a string form of a serialized ItemStack into an ItemStack object.
+     * The fields are read as they are parsed, without building a map of them first.
      *
      * @param backupItem A string representation of the serialized ItemStack.
      *
      * @return The ItemStack object represented by the string.
-     * @throws IOException Could not load tag serialization file.
+     * @throws IOException Could not parse the string, or load tag serialization file.
      */
     static ItemStack deserialize(String backupItem) throws IOException {
-        Map readItem = mapper.readValue(backupItem, Map.class);
-        Item item = Item.getItemById((int) readItem.get("Item ID"));
-        ItemStack itemStack = new ItemStack(item, (int) readItem.get("Size"));
+        int id = 0;
+        int size = 1;
+        String tags = null;
+        Integer damage = null;
+        Integer repairCost = null;
+
+        try (JsonParser parser = mapper.getFactory().createParser(backupItem)) {
+            if (parser.nextToken() != JsonToken.START_OBJECT) {
+                throw new IOException("Not a serialized item: " + backupItem);
+            }
+
+            while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                String field = parser.getCurrentName();
+                if (parser.nextToken() == JsonToken.VALUE_NULL) continue;
+
+                switch (field) {
+                    case "Item ID":
+                        id = parser.getIntValue();
+                        break;
+
+                    case "Size":
+                        size = parser.getIntValue();
+                        break;
+
+                    case "Tags":
+                        tags = parser.getText();
+                        break;
+
+                    case "Damage":
+                        damage = parser.getIntValue();
+                        break;
+
+                    case "Repair Cost":
+                        repairCost = parser.getIntValue();
+                        break;
+
+                    default:
+                        // The display name is not restored
+                        parser.skipChildren();
+                }
+            }
+        }
+
+        Item item = Item.getItemById(id);
+        ItemStack itemStack = new ItemStack(item, size);
 
-        if (readItem.get("Tags") != null) {
-            File nbtFile = Paths.get((String) readItem.get("Tags")).toFile();
+        if (tags != null) {
+            File nbtFile = Paths.get(tags).toFile();
             CompoundNBT nbt = CompressedStreamTools.read(nbtFile);
                 if (nbt != null) {
                     itemStack.setTag(nbt);
@@ -119,12 +167,12 @@ class ItemStackSerialization {
 //            itemStack.setDisplayName(textComponent);
 //        }
 
-        if (readItem.get("Damage") != null) {
-            itemStack.setDamage((int) readItem.get("Damage"));
+        if (damage != null) {
+            itemStack.setDamage(damage);
         }
 
-        if (readItem.get("Repair Cost") != null) {
-            itemStack.setRepairCost((int) readItem.get("Repair Cost"));
+        if (repairCost != null) {
+            itemStack.setRepairCost(repairCost);
         }
 
         return itemStack;
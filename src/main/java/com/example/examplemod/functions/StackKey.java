@@ -0,0 +1,263 @@
+/*
+ * Copyright (c) 2020 Hassan Abouelela
+ * Licensed under the MIT License
+ */
+
+package com.example.examplemod.functions;
+
+import net.minecraft.item.Item;
+import net.minecraft.item.ItemStack;
+import net.minecraft.nbt.CollectionNBT;
+import net.minecraft.nbt.CompoundNBT;
+import net.minecraft.nbt.INBT;
+
+import javax.annotation.Nullable;
+import java.lang.ref.WeakReference;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.WeakHashMap;
+
+/**
+ * Immutable key identifying a kind of ItemStack (item and tags), regardless of count.
+ * Used to group stacks that can be merged, without touching the tags of the stacks themselves.
+ */
+public final class StackKey {
+    /**
+     * Interned copies of every tag currently used by a key. Equal tags share one instance.
+     */
+    private static final Map<CompoundNBT, WeakReference<CompoundNBT>> interned =
+            Collections.synchronizedMap(new WeakHashMap<>());
+
+    /**
+     * The item of the stack.
+     */
+    private final Item item;
+    /**
+     * The numeric registry ID of the item.
+     */
+    private final int itemId;
+    /**
+     * The interned tags of the stack. Null if the stack has no tags. Never modified.
+     */
+    @Nullable
+    private final CompoundNBT tag;
+    /**
+     * The cached hash of the key.
+     */
+    private final int hash;
+
+    /**
+     * Creates a key. Use {@link StackKey#of(ItemStack)}.
+     *
+     * @param item The item of the stack.
+     * @param tag The interned tags of the stack.
+     * @param tagHash The hash of the tags.
+     */
+    private StackKey(Item item, @Nullable CompoundNBT tag, int tagHash) {
+        this.item = item;
+        this.itemId = Item.getIdFromItem(item);
+        this.tag = tag;
+        this.hash = 31 * this.itemId + tagHash;
+    }
+
+    /**
+     * Get the key of an ItemStack. The stack is not modified.
+     *
+     * @param itemStack The ItemStack to get the key of.
+     * @return The key of the stack.
+     */
+    public static StackKey of(ItemStack itemStack) {
+        CompoundNBT tag = itemStack.getTag();
+        if (tag == null || tag.isEmpty()) {
+            return new StackKey(itemStack.getItem(), null, 0);
+        }
+
+        return new StackKey(itemStack.getItem(), intern(tag), tag.hashCode());
+    }
+
+    /**
+     * Get the hash of the key of an ItemStack, without creating the key.
+     * Only depends on the numeric item ID and the content of the tags, so it is the same on the client and server.
+     *
+     * @param itemStack The ItemStack to hash.
+     * @return The hash, equal to the hash of {@link StackKey#of(ItemStack)}.
+     */
+    public static int hashOf(ItemStack itemStack) {
+        CompoundNBT tag = itemStack.getTag();
+        int tagHash = tag == null || tag.isEmpty() ? 0 : tag.hashCode();
+
+        return 31 * Item.getIdFromItem(itemStack.getItem()) + tagHash;
+    }
+
+    /**
+     * Get a hash of the content of an inventory: the kind and count of the stack in every slot, in order.
+     * Used to find sorts and backups that would not change anything. Like {@link StackKey#hashOf(ItemStack)}, it is
+     * the same on the client and server.
+     *
+     * @param inventory The stacks of the inventory.
+     * @return The hash, the same for inventories with equal stacks in the same slots.
+     */
+    public static long hashOf(List<ItemStack> inventory) {
+        long hash = 1;
+
+        for (ItemStack itemStack: inventory) {
+            long slot = itemStack.isEmpty() ? 0 : ((long) hashOf(itemStack) << 32) | itemStack.getCount();
+            hash = (hash ^ slot) * 0x100000001B3L;
+        }
+
+        return hash;
+    }
+
+    /**
+     * Get a strong digest of the kind of an ItemStack: its numeric item ID and tags, regardless of count.
+     * Unlike {@link StackKey#hashOf(ItemStack)}, two kinds practically never share a digest, so it can stand in for
+     * the tags of a stack. The tags are written in a fixed order first, so it is the same on the client and server.
+     *
+     * @param itemStack The ItemStack to digest.
+     * @return The first 64 bits of the SHA-1 of the kind.
+     */
+    public static long digestOf(ItemStack itemStack) {
+        StringBuilder canonical = new StringBuilder();
+        canonical.append(Item.getIdFromItem(itemStack.getItem())).append(';');
+
+        CompoundNBT tag = itemStack.getTag();
+        if (tag != null && !tag.isEmpty()) appendCanonical(canonical, tag);
+
+        byte[] digest;
+        try {
+            digest = MessageDigest.getInstance("SHA-1").digest(canonical.toString().getBytes(StandardCharsets.UTF_8));
+        } catch (NoSuchAlgorithmException error) {
+            throw new IllegalStateException(error);
+        }
+
+        long value = 0;
+        for (int i = 0; i < Long.BYTES; i++) {
+            value = (value << 8) | (digest[i] & 0xFF);
+        }
+
+        return value;
+    }
+
+    /**
+     * Write a tag in a fixed form: the keys of compounds sorted, and every value prefixed with its type.
+     *
+     * @param canonical The builder to write to.
+     * @param tag The tag to write.
+     */
+    private static void appendCanonical(StringBuilder canonical, INBT tag) {
+        canonical.append(tag.getId());
+
+        if (tag instanceof CompoundNBT) {
+            CompoundNBT compound = (CompoundNBT) tag;
+            List<String> keys = new ArrayList<>(compound.keySet());
+            Collections.sort(keys);
+
+            canonical.append('{');
+            for (String key: keys) {
+                canonical.append(key.length()).append(':').append(key);
+                appendCanonical(canonical, compound.get(key));
+            }
+            canonical.append('}');
+
+        } else if (tag instanceof CollectionNBT) {
+            canonical.append('[').append(((CollectionNBT<?>) tag).size()).append(':');
+            for (INBT element: (CollectionNBT<?>) tag) {
+                appendCanonical(canonical, element);
+            }
+            canonical.append(']');
+
+        } else {
+            String value = tag.toString();
+            canonical.append(value.length()).append(':').append(value);
+        }
+    }
+
+    /**
+     * Get the shared copy of a tag, storing a copy if the tag has not been seen before.
+     *
+     * @param tag The tag to intern.
+     * @return A copy of the tag that is shared between all equal keys.
+     */
+    private static CompoundNBT intern(CompoundNBT tag) {
+        synchronized (interned) {
+            WeakReference<CompoundNBT> reference = interned.get(tag);
+            CompoundNBT shared = reference == null ? null : reference.get();
+
+            if (shared == null) {
+                shared = tag.copy();
+                interned.put(shared, new WeakReference<>(shared));
+            }
+
+            return shared;
+        }
+    }
+
+    /**
+     * Returns the item of the key.
+     *
+     * @return The item of the key.
+     */
+    public Item getItem() {
+        return this.item;
+    }
+
+    /**
+     * Returns the numeric registry ID of the item.
+     *
+     * @return The numeric registry ID of the item.
+     */
+    public int getItemId() {
+        return this.itemId;
+    }
+
+    /**
+     * Whether an ItemStack is of the kind described by this key.
+     *
+     * @param itemStack The ItemStack to check.
+     * @return True if the stack has the same item and tags.
+     */
+    public boolean matches(ItemStack itemStack) {
+        if (itemStack.getItem() != this.item) return false;
+
+        CompoundNBT other = itemStack.getTag();
+        if (other == null || other.isEmpty()) {
+            return this.tag == null;
+        }
+
+        return other == this.tag || other.equals(this.tag);
+    }
+
+    /**
+     * Create a new ItemStack of this kind. The stack gets its own copy of the tags.
+     *
+     * @param count The number of items in the stack.
+     * @return The new ItemStack.
+     */
+    public ItemStack createStack(int count) {
+        ItemStack itemStack = new ItemStack(this.item, count);
+        itemStack.setTag(this.tag == null ? null : this.tag.copy());
+
+        return itemStack;
+    }
+
+    @Override
+    public boolean equals(Object other) {
+        if (this == other) return true;
+        if (!(other instanceof StackKey)) return false;
+
+        StackKey key = (StackKey) other;
+        if (this.hash != key.hash || this.item != key.item) return false;
+
+        return this.tag == key.tag || (this.tag != null && this.tag.equals(key.tag));
+    }
+
+    @Override
+    public int hashCode() {
+        return this.hash;
+    }
+}
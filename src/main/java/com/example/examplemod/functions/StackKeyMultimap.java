@@ -0,0 +1,116 @@
+/*
+ * Copyright (c) 2020 Hassan Abouelela
+ * Licensed under the MIT License
+ */
+
+package com.example.examplemod.functions;
+
+import net.minecraft.item.ItemStack;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Groups the slots of an inventory by {@link StackKey}, along with the total number of items in each group.
+ * Groups are kept in the order they were first seen.
+ */
+public class StackKeyMultimap {
+    /**
+     * A single group of slots.
+     */
+    private static class Group {
+        /**
+         * The indexes of the slots in the group.
+         */
+        private final ArrayList<Integer> indexes = new ArrayList<>();
+        /**
+         * The total number of items in the group.
+         */
+        private int total = 0;
+    }
+
+    /**
+     * The groups, by key.
+     */
+    private final Map<StackKey, Group> groups = new LinkedHashMap<>();
+
+    /**
+     * Add a slot to the group of its key.
+     *
+     * @param key The key of the stack in the slot.
+     * @param index The index of the slot.
+     * @param count The number of items in the slot.
+     */
+    public void put(StackKey key, int index, int count) {
+        Group group = this.groups.get(key);
+        if (group == null) {
+            group = new Group();
+            this.groups.put(key, group);
+        }
+
+        group.indexes.add(index);
+        group.total += count;
+    }
+
+    /**
+     * Add a slot to the group of its key.
+     *
+     * @param itemStack The stack in the slot.
+     * @param index The index of the slot.
+     */
+    public void put(ItemStack itemStack, int index) {
+        put(StackKey.of(itemStack), index, itemStack.getCount());
+    }
+
+    /**
+     * Returns all keys, in the order they were first added.
+     *
+     * @return All keys.
+     */
+    public Set<StackKey> keySet() {
+        return this.groups.keySet();
+    }
+
+    /**
+     * Returns the total number of items of a key.
+     *
+     * @param key The key to look up.
+     * @return The total number of items, or 0 if the key is not present.
+     */
+    public int getTotal(StackKey key) {
+        Group group = this.groups.get(key);
+        return group == null ? 0 : group.total;
+    }
+
+    /**
+     * Returns the indexes of all slots of a key.
+     *
+     * @param key The key to look up.
+     * @return The indexes of the slots, in the order they were added.
+     */
+    public List<Integer> getIndexes(StackKey key) {
+        Group group = this.groups.get(key);
+        return group == null ? new ArrayList<>() : group.indexes;
+    }
+
+    /**
+     * Returns the number of distinct keys.
+     *
+     * @return The number of distinct keys.
+     */
+    public int size() {
+        return this.groups.size();
+    }
+
+    /**
+     * Returns whether there are no keys.
+     *
+     * @return Whether there are no keys.
+     */
+    public boolean isEmpty() {
+        return this.groups.isEmpty();
+    }
+}
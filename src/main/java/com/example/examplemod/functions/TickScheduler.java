@@ -0,0 +1,200 @@
+/*
+ * Copyright (c) 2020 Hassan Abouelela
+ * Licensed under the MIT License
+ */
+
+package com.example.examplemod.functions;
+
+import com.example.examplemod.ExampleMod;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.util.Arrays;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Runs deferred actions on later ticks, instead of blocking the current thread until the game state settles.
+ *
+ * <p>Actions may be scheduled from any thread, and are run by the thread calling {@link #tick()}, starting with the
+ * tick after they were scheduled. An action that is not done yet is retried every tick until it runs out of time.
+ * The queue is bounded, actions scheduled while it is full are dropped.</p>
+ */
+public class TickScheduler {
+    /**
+     * Event Logger.
+     */
+    private static final Logger LOGGER = LogManager.getLogger();
+
+    /**
+     * A deferred action.
+     */
+    public interface Action {
+        /**
+         * Run the action.
+         *
+         * @return True if the action is done, false to retry it on the next tick.
+         */
+        boolean run();
+    }
+
+    /**
+     * A scheduled action.
+     */
+    private static final class Entry {
+        /**
+         * The action.
+         */
+        private final Action action;
+        /**
+         * The first tick the action may run on.
+         */
+        private final long due;
+        /**
+         * The last tick the action may run on.
+         */
+        private final long expiry;
+
+        /**
+         * Creates an entry.
+         *
+         * @param action The action.
+         * @param due The first tick the action may run on.
+         * @param expiry The last tick the action may run on.
+         */
+        Entry(Action action, long due, long expiry) {
+            this.action = action;
+            this.due = due;
+            this.expiry = expiry;
+        }
+    }
+
+    /**
+     * The maximum number of pending actions.
+     */
+    private final int capacity;
+    /**
+     * The pending actions.
+     */
+    private final Queue<Entry> queue = new ConcurrentLinkedQueue<>();
+    /**
+     * The number of pending actions.
+     */
+    private final AtomicInteger size = new AtomicInteger(0);
+    /**
+     * The number of ticks so far.
+     */
+    private final AtomicLong ticks = new AtomicLong(0);
+    /**
+     * The number of actions dropped because the queue was full.
+     */
+    private final AtomicLong dropped = new AtomicLong(0);
+    /**
+     * The number of actions that ran out of time before being done.
+     */
+    private final AtomicLong expired = new AtomicLong(0);
+
+    /**
+     * Creates a scheduler.
+     *
+     * @param capacity The maximum number of pending actions.
+     */
+    public TickScheduler(int capacity) {
+        this.capacity = capacity;
+    }
+
+    /**
+     * Schedule an action, to run on the next tick.
+     *
+     * @param action The action.
+     * @param timeout The number of ticks after the first run that the action may be retried for.
+     *
+     * @return False if the queue is full, and the action was dropped.
+     */
+    public boolean schedule(Action action, int timeout) {
+        if (this.size.incrementAndGet() > this.capacity) {
+            this.size.decrementAndGet();
+            this.dropped.incrementAndGet();
+            return false;
+        }
+
+        long due = this.ticks.get() + 1;
+        this.queue.add(new Entry(action, due, due + Math.max(timeout, 0)));
+
+        return true;
+    }
+
+    /**
+     * Run the pending actions that are due. Called once per tick.
+     */
+    public void tick() {
+        long tick = this.ticks.incrementAndGet();
+
+        // Only the actions pending at the start of the tick, retried actions are added back behind them
+        for (int pending = this.queue.size(); pending > 0; pending--) {
+            Entry entry = this.queue.poll();
+            if (entry == null) break;
+
+            if (entry.due > tick) {
+                this.queue.add(entry);
+                continue;
+            }
+
+            boolean done;
+            try {
+                done = entry.action.run();
+
+            } catch (Exception error) {
+                LOGGER.error(String.format("[%s] Deferred action error: (%s) - %s", ExampleMod.NAME,
+                        error.getClass().getCanonicalName(), Arrays.toString(error.getStackTrace())));
+                done = true;
+            }
+
+            if (!done && tick < entry.expiry) {
+                this.queue.add(entry);
+                continue;
+            }
+
+            if (!done) this.expired.incrementAndGet();
+            this.size.decrementAndGet();
+        }
+    }
+
+    /**
+     * Drop every pending action.
+     */
+    public void clear() {
+        while (this.queue.poll() != null) {
+            this.size.decrementAndGet();
+        }
+    }
+
+    /**
+     * Returns the number of pending actions.
+     *
+     * @return The number of pending actions.
+     */
+    public int getPending() {
+        return this.size.get();
+    }
+
+    /**
+     * Returns the number of actions dropped because the queue was full.
+     *
+     * @return The number of dropped actions.
+     */
+    public long getDropped() {
+        return this.dropped.get();
+    }
+
+    /**
+     * Returns the number of actions that ran out of time before being done.
+     *
+     * @return The number of expired actions.
+     */
+    public long getExpired() {
+        return this.expired.get();
+    }
+}
@@ -9,6 +9,7 @@ import com.example.examplemod.ExampleMod;
 import com.example.examplemod.network.Channel;
 import com.example.examplemod.network.EmptyPackets;
 import com.mojang.brigadier.CommandDispatcher;
+import com.mojang.brigadier.arguments.IntegerArgumentType;
 import com.mojang.brigadier.arguments.StringArgumentType;
 import net.minecraft.command.CommandSource;
 import net.minecraft.command.Commands;
@@ -33,6 +34,14 @@ public class CommandControl {
                         .requires(source -> source.hasPermissionLevel(0))
                         .then(Commands.literal("reload").executes(new Reload()))
                         .then(Commands.literal("restore")
+                                // Restores from the server's inventory journal, which can undo what players lost
+                                .then(Commands.literal("server")
+                                        .requires(source -> source.hasPermissionLevel(2))
+                                        .then(Commands.argument("Steps", IntegerArgumentType.integer(1))
+                                                .executes(new JournalRestore())
+                                        )
+                                        .executes(new JournalRestore()) // No input restores the latest snapshot
+                                )
                                 .then(Commands.argument(
                                         "Source (Backup Name)", StringArgumentType.greedyString()
                                 )
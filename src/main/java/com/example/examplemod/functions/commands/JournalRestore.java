@@ -0,0 +1,69 @@
+/*
+ * Copyright (c) 2020 Hassan Abouelela
+ * Licensed under the MIT License
+ */
+
+package com.example.examplemod.functions.commands;
+
+import com.example.examplemod.network.InventoryJournal;
+import com.mojang.brigadier.Command;
+import com.mojang.brigadier.arguments.IntegerArgumentType;
+import com.mojang.brigadier.context.CommandContext;
+import com.mojang.brigadier.exceptions.CommandSyntaxException;
+import net.minecraft.command.CommandSource;
+import net.minecraft.util.text.StringTextComponent;
+
+/**
+ * Restore From Inventory Journal Command Class.
+ * Restores the inventory of the player running the command on the server, from the server's inventory journal.
+ */
+class JournalRestore implements Command<CommandSource> {
+    /**
+     * Logic for journal restore command.
+     *
+     * @param ctx The Command Context.
+     * @return Success.
+     */
+    @Override
+    public int run(CommandContext<CommandSource> ctx) {
+        int steps;
+        try {
+            steps = IntegerArgumentType.getInteger(ctx, "Steps");
+        } catch (IllegalArgumentException ignored) {
+            // No input restores the latest snapshot
+            steps = 1;
+        }
+
+        CommandSource source = ctx.getSource();
+
+        try {
+            int restoring = steps;
+            boolean started = InventoryJournal.restore(source.asPlayer(), steps, restored -> {
+                if (restored == InventoryJournal.WRONG_CONTAINER) {
+                    source.sendErrorMessage(new StringTextComponent("Restore Failed: Inventory snapshot " +
+                            restoring + " also changed a container. Open the same container to restore it."));
+                } else if (restored < 0) {
+                    source.sendErrorMessage(new StringTextComponent("Restore Failed: No inventory snapshot " +
+                            restoring + " in the journal."));
+                } else {
+                    source.sendFeedback(new StringTextComponent("Restored " + restored + " slots from inventory " +
+                            "snapshot " + restoring + "."), true);
+                }
+            });
+
+            if (!started) {
+                source.sendErrorMessage(new StringTextComponent("Restore Failed: The inventory journal is busy or " +
+                        "not running."));
+                return 1;
+            }
+
+            source.sendFeedback(new StringTextComponent("Attempting restore on inventory snapshot " + steps + "."),
+                    true);
+            return 0;
+
+        } catch (CommandSyntaxException e) {
+            source.sendErrorMessage(new StringTextComponent("Restore Failed: " + e));
+            return 1;
+        }
+    }
+}
@@ -0,0 +1,68 @@
+/*
+ * Copyright (c) 2020 Hassan Abouelela
+ * Licensed under the MIT License
+ */
+
+package com.example.examplemod.inventory;
+
+import java.util.ArrayList;
+
+/**
+ * The result of crafting as many items as possible out of an inventory, as planned by {@link CraftPlanner}.
+ *
+ * @param <S> The type of the stacks.
+ */
+public final class CraftPlan<S> {
+    /**
+     * The new inventory.
+     */
+    private final ArrayList<S> inventory;
+    /**
+     * The new crafting grid.
+     */
+    private final ArrayList<S> craftingGrid;
+    /**
+     * The items that could not fit into the inventory.
+     */
+    private final ArrayList<S> overflow;
+
+    /**
+     * Creates a plan.
+     *
+     * @param inventory The new inventory.
+     * @param craftingGrid The new crafting grid.
+     * @param overflow The items that could not fit into the inventory.
+     */
+    CraftPlan(ArrayList<S> inventory, ArrayList<S> craftingGrid, ArrayList<S> overflow) {
+        this.inventory = inventory;
+        this.craftingGrid = craftingGrid;
+        this.overflow = overflow;
+    }
+
+    /**
+     * Returns the new inventory.
+     *
+     * @return The new inventory.
+     */
+    public ArrayList<S> getInventory() {
+        return this.inventory;
+    }
+
+    /**
+     * Returns the new crafting grid.
+     *
+     * @return The new crafting grid.
+     */
+    public ArrayList<S> getCraftingGrid() {
+        return this.craftingGrid;
+    }
+
+    /**
+     * Returns the items that could not fit into the inventory.
+     *
+     * @return The overflowing stacks.
+     */
+    public ArrayList<S> getOverflow() {
+        return this.overflow;
+    }
+}
@@ -0,0 +1,149 @@
+/*
+ * Copyright (c) 2020 Hassan Abouelela
+ * Licensed under the MIT License
+ */
+
+package com.example.examplemod.inventory;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Plans crafting as many items as possible out of an inventory.
+ */
+public class CraftPlanner {
+    /**
+     * Plan crafting as many items as possible out of an inventory.
+     * Every ingredient in the inventory is pulled into the craft, the results go into stacks of the same kind and then
+     * empty slots, and the ingredients left over refill the crafting grid.
+     *
+     * @param craftingGrid The crafting grid, holding the materials required for a single craft.
+     * @param craftResult The stack produced by a single craft.
+     * @param inventory The inventory to craft from and into. Not modified.
+     * @param model The model of the stacks.
+     * @param <S> The type of the stacks.
+     *
+     * @return The new inventory and crafting grid, and the items that did not fit.
+     */
+    public static <S> CraftPlan<S> plan(List<S> craftingGrid, S craftResult, List<S> inventory, StackModel<S> model) {
+        ArrayList<S> newInventory = new ArrayList<>(inventory);
+
+        ArrayDeque<Integer> emptySlots = new ArrayDeque<>();
+        ArrayList<Integer> resultSlots = new ArrayList<>();
+
+        // The number of items of each ingredient, and the number of grid slots it takes
+        Map<Object, int[]> itemCount = new LinkedHashMap<>();
+        Map<Object, int[]> gridSlots = new LinkedHashMap<>();
+
+        for (S craftingItem: craftingGrid) {
+            if (model.isEmpty(craftingItem)) continue;
+
+            Object kind = model.getKind(craftingItem);
+            itemCount.computeIfAbsent(kind, ignored -> new int[1])[0] += model.getCount(craftingItem);
+            gridSlots.computeIfAbsent(kind, ignored -> new int[1])[0]++;
+        }
+
+        Object resultKind = model.getKind(craftResult);
+
+        for (int slot = 0; slot < newInventory.size(); slot++) {
+            S stack = newInventory.get(slot);
+
+            if (model.isEmpty(stack)) {
+                emptySlots.add(slot);
+
+            } else if (gridSlots.containsKey(model.getKind(stack))) {
+                itemCount.get(model.getKind(stack))[0] += model.getCount(stack);
+
+                newInventory.set(slot, model.empty());
+                emptySlots.add(slot);
+
+            } else if (model.getKind(stack).equals(resultKind)) {
+                resultSlots.add(slot);
+            }
+        }
+
+        // Calculate how many crafts can be done
+        int maxCraft = 0;
+        for (Map.Entry<Object, int[]> entry: itemCount.entrySet()) {
+            int max = Math.floorDiv(entry.getValue()[0], gridSlots.get(entry.getKey())[0]);
+
+            if (maxCraft == 0 && max != 0) {
+                maxCraft = max;
+            } else if (max < maxCraft) {
+                maxCraft = max;
+            }
+        }
+
+        int craftedItems = maxCraft * model.getCount(craftResult);
+        ArrayList<S> newGrid = new ArrayList<>();
+        ArrayList<S> leftover = new ArrayList<>();
+
+        // Fit as many left over ingredients as possible into the crafting grid and inventory
+        for (Map.Entry<Object, int[]> entry: itemCount.entrySet()) {
+            int slots = gridSlots.get(entry.getKey())[0];
+            int count = entry.getValue()[0] - maxCraft * slots;
+
+            if (count <= 0) continue;
+
+            S stack = model.createStack(entry.getKey(), 1);
+            int maxSize = model.getMaxStackSize(stack);
+
+            for (int i = 0; i < slots && count > 0; i++) {
+                int taken = Math.min(count, maxSize);
+                newGrid.add(model.withCount(stack, taken));
+                count -= taken;
+            }
+
+            while (count > 0) {
+                int taken = Math.min(count, maxSize);
+
+                if (!emptySlots.isEmpty()) {
+                    newInventory.set(emptySlots.poll(), model.withCount(stack, taken));
+                } else {
+                    leftover.add(model.withCount(stack, taken));
+                }
+
+                count -= taken;
+            }
+        }
+
+        // Fit as many craft results as possible into the inventory
+        for (int slot: resultSlots) {
+            if (craftedItems == 0) break;
+
+            S stack = newInventory.get(slot);
+            int taken = Math.min(craftedItems, model.getMaxStackSize(stack) - model.getCount(stack));
+            if (taken <= 0) continue;
+
+            newInventory.set(slot, model.withCount(stack, model.getCount(stack) + taken));
+            craftedItems -= taken;
+        }
+
+        ArrayList<S> overflow = new ArrayList<>();
+        int resultSize = model.getMaxStackSize(craftResult);
+
+        while (craftedItems > 0) {
+            int taken = Math.min(craftedItems, resultSize);
+
+            if (!emptySlots.isEmpty()) {
+                newInventory.set(emptySlots.poll(), model.withCount(craftResult, taken));
+            } else {
+                overflow.add(model.withCount(craftResult, taken));
+            }
+
+            craftedItems -= taken;
+        }
+
+        // Update empty spots
+        while (newGrid.size() < craftingGrid.size()) {
+            newGrid.add(model.empty());
+        }
+
+        overflow.addAll(leftover);
+
+        return new CraftPlan<>(newInventory, newGrid, overflow);
+    }
+}
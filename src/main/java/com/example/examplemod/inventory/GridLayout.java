@@ -0,0 +1,363 @@
+/*
+ * Copyright (c) 2020 Hassan Abouelela
+ * Licensed under the MIT License
+ */
+
+package com.example.examplemod.inventory;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+
+/**
+ * Layout engine arranging sorted stacks into the grid of an inventory.
+ *
+ * <p>The grid is a flat array of lines, filled by a {@link Strategy}. Cells that a strategy could not place into
+ * directly are handed out by a free-cell cursor, which only ever moves forward. An instance keeps its buffers between
+ * layouts, so it should be reused, but not shared between threads.</p>
+ *
+ * @param <S> The type of the stacks.
+ */
+public class GridLayout<S> {
+    /**
+     * A way of placing stacks into the grid.
+     */
+    public interface Strategy {
+        /**
+         * Whether the lines of the grid run down the columns of the inventory, instead of across its rows.
+         *
+         * @return True if lines are columns.
+         */
+        boolean isTransposed();
+
+        /**
+         * Place the stacks into the grid.
+         *
+         * @param grid The empty grid to place into.
+         * @param stacks The sorted stacks to place. Never empty.
+         * @param <S> The type of the stacks.
+         */
+        <S> void place(GridLayout<S> grid, List<S> stacks);
+    }
+
+    /**
+     * Groups of the same item fill the rows of the inventory, each group starting on a new row.
+     */
+    public static final Strategy COLUMNS = new LineStrategy(false);
+    /**
+     * Groups of the same item fill the columns of the inventory, each group starting on a new column.
+     */
+    public static final Strategy ROWS = new LineStrategy(true);
+    /**
+     * Stacks are grouped by category, such as creative tab, each category getting a region of whole rows.
+     */
+    public static final Strategy CATEGORIES = new CategoryStrategy();
+
+    /**
+     * The model of the stacks.
+     */
+    private final StackModel<S> model;
+    /**
+     * The cells of the grid, line after line. Null cells are free.
+     */
+    private Object[] cells = new Object[0];
+    /**
+     * Scratch buffer for strategies to remember stacks that they place last.
+     */
+    private int[] pending = new int[0];
+    /**
+     * The number of cells in the grid.
+     */
+    private int size;
+    /**
+     * The number of cells in a line.
+     */
+    private int lineLength;
+    /**
+     * The number of lines.
+     */
+    private int lines;
+    /**
+     * Every cell before this position is taken.
+     */
+    private int freeCursor;
+
+    /**
+     * Creates a layout engine.
+     *
+     * @param model The model of the stacks.
+     */
+    public GridLayout(StackModel<S> model) {
+        this.model = model;
+    }
+
+    /**
+     * Arrange stacks into an inventory of the given size.
+     * The stacks are replaced in place by the contents of the grid, in slot order, with empty stacks in free cells.
+     * Stacks that do not fit into the grid are dropped.
+     *
+     * @param stacks The sorted stacks to arrange.
+     * @param width The width of the inventory.
+     * @param height The height of the inventory.
+     * @param strategy The strategy to arrange with.
+     *
+     * @return The arranged stacks.
+     */
+    @SuppressWarnings("unchecked")
+    public ArrayList<S> arrange(ArrayList<S> stacks, int width, int height, Strategy strategy) {
+        if (stacks.isEmpty() || width <= 0 || height <= 0) return stacks;
+
+        boolean transposed = strategy.isTransposed();
+        reset(transposed ? height : width, transposed ? width : height);
+
+        strategy.place(this, stacks);
+
+        stacks.clear();
+        stacks.ensureCapacity(this.size);
+
+        for (int slot = 0; slot < this.size; slot++) {
+            int position = transposed ? (slot % width) * height + slot / width : slot;
+            S stack = (S) this.cells[position];
+            this.cells[position] = null;
+
+            stacks.add(stack == null ? this.model.empty() : stack);
+        }
+
+        return stacks;
+    }
+
+    /**
+     * Empty the grid and resize it, growing the buffers if needed.
+     *
+     * @param lineLength The number of cells in a line.
+     * @param lines The number of lines.
+     */
+    private void reset(int lineLength, int lines) {
+        this.lineLength = lineLength;
+        this.lines = lines;
+        this.size = lineLength * lines;
+        this.freeCursor = 0;
+
+        if (this.cells.length < this.size) {
+            this.cells = new Object[this.size];
+        }
+    }
+
+    /**
+     * Returns the model of the stacks.
+     *
+     * @return The model.
+     */
+    StackModel<S> getModel() {
+        return this.model;
+    }
+
+    /**
+     * Returns the number of cells in a line.
+     *
+     * @return The number of cells in a line.
+     */
+    int getLineLength() {
+        return this.lineLength;
+    }
+
+    /**
+     * Returns the number of lines.
+     *
+     * @return The number of lines.
+     */
+    int getLines() {
+        return this.lines;
+    }
+
+    /**
+     * Returns the number of cells in the grid.
+     *
+     * @return The number of cells.
+     */
+    int getSize() {
+        return this.size;
+    }
+
+    /**
+     * Returns a scratch buffer of at least the given length. The contents are undefined.
+     *
+     * @param length The minimum length.
+     * @return The buffer.
+     */
+    int[] getPending(int length) {
+        if (this.pending.length < length) {
+            this.pending = new int[length];
+        }
+
+        return this.pending;
+    }
+
+    /**
+     * Place a stack into a cell.
+     *
+     * @param position The position of the cell.
+     * @param stack The stack to place.
+     */
+    void set(int position, S stack) {
+        this.cells[position] = stack;
+    }
+
+    /**
+     * Place a stack into the first free cell.
+     *
+     * @param stack The stack to place.
+     * @return False if the grid is full.
+     */
+    boolean allocate(S stack) {
+        while (this.freeCursor < this.size && this.cells[this.freeCursor] != null) {
+            this.freeCursor++;
+        }
+
+        if (this.freeCursor == this.size) return false;
+
+        this.cells[this.freeCursor++] = stack;
+        return true;
+    }
+
+    /**
+     * Fills lines with runs of the same item, each new item starting on a new line.
+     * Once out of lines, the remaining stacks go into the free cells left behind.
+     */
+    private static final class LineStrategy implements Strategy {
+        /**
+         * Whether lines are columns.
+         */
+        private final boolean transposed;
+
+        /**
+         * Creates the strategy.
+         *
+         * @param transposed Whether lines are columns.
+         */
+        LineStrategy(boolean transposed) {
+            this.transposed = transposed;
+        }
+
+        @Override
+        public boolean isTransposed() {
+            return this.transposed;
+        }
+
+        @Override
+        public <S> void place(GridLayout<S> grid, List<S> stacks) {
+            StackModel<S> model = grid.getModel();
+            int lineLength = grid.getLineLength();
+            int lines = grid.getLines();
+
+            Object lastKind = model.getKind(stacks.get(0));
+
+            boolean overflow = false;
+            int line = 0;
+            int offset = 0;
+
+            for (S stack: stacks) {
+                if (overflow) {
+                    grid.allocate(stack);
+
+                } else if (Objects.equals(model.getKind(stack), lastKind)) {
+                    // A new item filled a line that is one cell long
+                    if (offset == lineLength) {
+                        if (line + 1 < lines) {
+                            line++;
+                            offset = 0;
+                        } else {
+                            overflow = true;
+                            grid.allocate(stack);
+                            continue;
+                        }
+                    }
+
+                    grid.set(line * lineLength + offset, stack);
+
+                    if (offset + 1 < lineLength) {
+                        offset++;
+
+                    } else if (line + 1 < lines) {
+                        offset = 0;
+                        line++;
+
+                    } else {
+                        overflow = true;
+                    }
+
+                } else {
+                    if (line + 1 < lines && offset != 0) {
+                        line++;
+                        offset = 0;
+
+                        grid.set(line * lineLength, stack);
+
+                    } else if (offset == 0) {
+                        grid.set(line * lineLength, stack);
+
+                    } else {
+                        overflow = true;
+                        grid.allocate(stack);
+                    }
+
+                    offset++;
+                    lastKind = model.getKind(stack);
+                }
+            }
+        }
+    }
+
+    /**
+     * Gives each category a region of whole rows, in the order the categories first appear.
+     * Stacks of a category that runs past the end of the grid go into the free cells left behind.
+     */
+    private static final class CategoryStrategy implements Strategy {
+        @Override
+        public boolean isTransposed() {
+            return false;
+        }
+
+        @Override
+        public <S> void place(GridLayout<S> grid, List<S> stacks) {
+            StackModel<S> model = grid.getModel();
+            int lineLength = grid.getLineLength();
+            int size = grid.getSize();
+
+            // The next free position and end of each region. Starts out as the number of stacks of the category.
+            Map<Object, int[]> regions = new LinkedHashMap<>();
+            for (S stack: stacks) {
+                regions.computeIfAbsent(model.getCategory(stack), category -> new int[2])[1]++;
+            }
+
+            int start = 0;
+            for (int[] region: regions.values()) {
+                int count = region[1];
+
+                region[0] = start;
+                region[1] = Math.min(start + count, size);
+
+                start = Math.min(start + Math.floorDiv(count + lineLength - 1, lineLength) * lineLength, size);
+            }
+
+            int[] pending = grid.getPending(stacks.size());
+            int pendingCount = 0;
+
+            for (int i = 0; i < stacks.size(); i++) {
+                int[] region = regions.get(model.getCategory(stacks.get(i)));
+
+                if (region[0] < region[1]) {
+                    grid.set(region[0]++, stacks.get(i));
+                } else {
+                    pending[pendingCount++] = i;
+                }
+            }
+
+            for (int i = 0; i < pendingCount; i++) {
+                grid.allocate(stacks.get(pending[i]));
+            }
+        }
+    }
+}
@@ -0,0 +1,79 @@
+/*
+ * Copyright (c) 2020 Hassan Abouelela
+ * Licensed under the MIT License
+ */
+
+package com.example.examplemod.inventory;
+
+/**
+ * A single step of a {@link MovePlan}: some items moving from a slot of one inventory to a slot of the other.
+ */
+public final class Move {
+    /**
+     * Whether the items move from the first inventory to the second, or the other way around.
+     */
+    private final boolean fromFirst;
+    /**
+     * The slot the items are taken from.
+     */
+    private final int source;
+    /**
+     * The slot the items are put into.
+     */
+    private final int target;
+    /**
+     * The number of items.
+     */
+    private final int count;
+
+    /**
+     * Creates a move.
+     *
+     * @param fromFirst Whether the items move from the first inventory to the second.
+     * @param source The slot the items are taken from.
+     * @param target The slot the items are put into.
+     * @param count The number of items.
+     */
+    public Move(boolean fromFirst, int source, int target, int count) {
+        this.fromFirst = fromFirst;
+        this.source = source;
+        this.target = target;
+        this.count = count;
+    }
+
+    /**
+     * Returns whether the items move from the first inventory to the second.
+     *
+     * @return True if the items move from the first inventory to the second.
+     */
+    public boolean isFromFirst() {
+        return this.fromFirst;
+    }
+
+    /**
+     * Returns the slot the items are taken from.
+     *
+     * @return The source slot.
+     */
+    public int getSource() {
+        return this.source;
+    }
+
+    /**
+     * Returns the slot the items are put into.
+     *
+     * @return The target slot.
+     */
+    public int getTarget() {
+        return this.target;
+    }
+
+    /**
+     * Returns the number of items.
+     *
+     * @return The number of items.
+     */
+    public int getCount() {
+        return this.count;
+    }
+}
@@ -0,0 +1,75 @@
+/*
+ * Copyright (c) 2020 Hassan Abouelela
+ * Licensed under the MIT License
+ */
+
+package com.example.examplemod.inventory;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * An ordered list of moves between two inventories, as planned by {@link MovePlanner}.
+ */
+public final class MovePlan {
+    /**
+     * The moves, in the order they should be done.
+     */
+    private final ArrayList<Move> moves = new ArrayList<>();
+
+    /**
+     * Add a move to the end of the plan.
+     *
+     * @param move The move.
+     */
+    void add(Move move) {
+        this.moves.add(move);
+    }
+
+    /**
+     * Returns the moves of the plan.
+     *
+     * @return The moves, in order.
+     */
+    public List<Move> getMoves() {
+        return Collections.unmodifiableList(this.moves);
+    }
+
+    /**
+     * Returns whether the plan does nothing.
+     *
+     * @return True if there are no moves.
+     */
+    public boolean isEmpty() {
+        return this.moves.isEmpty();
+    }
+
+    /**
+     * Apply the plan to the inventories it was planned for.
+     * Changed slots are replaced by new stacks, the stacks in the inventories are not modified.
+     *
+     * @param first The first inventory.
+     * @param second The second inventory.
+     * @param model The model of the stacks.
+     * @param <S> The type of the stacks.
+     */
+    public <S> void apply(List<S> first, List<S> second, StackModel<S> model) {
+        for (Move move: this.moves) {
+            List<S> from = move.isFromFirst() ? first : second;
+            List<S> to = move.isFromFirst() ? second : first;
+
+            S source = from.get(move.getSource());
+            S target = to.get(move.getTarget());
+
+            if (model.isEmpty(target)) {
+                to.set(move.getTarget(), model.withCount(source, move.getCount()));
+            } else {
+                to.set(move.getTarget(), model.withCount(target, model.getCount(target) + move.getCount()));
+            }
+
+            int left = model.getCount(source) - move.getCount();
+            from.set(move.getSource(), left > 0 ? model.withCount(source, left) : model.empty());
+        }
+    }
+}
@@ -0,0 +1,107 @@
+/*
+ * Copyright (c) 2020 Hassan Abouelela
+ * Licensed under the MIT License
+ */
+
+package com.example.examplemod.inventory;
+
+import java.util.function.IntPredicate;
+
+/**
+ * Plans moving items between two inventories.
+ * The slot arrays are updated as moves are planned, so several plans can be chained on the same arrays.
+ */
+public class MovePlanner {
+    /**
+     * Plan moving items out of a slot of the first inventory into the second, or back into it from the second.
+     * Items are moved out into stacks of the same key first, then into the first empty slot. Items are moved back
+     * from the last stacks of the same key, up to a full stack.
+     *
+     * @param first The first inventory.
+     * @param second The second inventory.
+     * @param index The slot of the first inventory.
+     * @param number The number of items to move.
+     * @param firstToSecond Whether to move the items out of the slot, or back into it.
+     * @param plan The plan to add the moves to.
+     *
+     * @return Whether any items were moved.
+     */
+    public static boolean moveItem(SlotArray first, SlotArray second, int index, int number, boolean firstToSecond,
+                                   MovePlan plan) {
+        if (index < 0 || index >= first.size() || first.isEmpty(index)) return false;
+
+        Object key = first.getKey(index);
+        int maxSize = first.getMaxSize(index);
+        int moved = 0;
+
+        if (firstToSecond) {
+            number = Math.min(Math.abs(number), first.getCount(index));
+            int emptySlot = -1;
+
+            for (int slot = 0; slot < second.size() && moved < number; slot++) {
+                if (second.isEmpty(slot)) {
+                    if (emptySlot == -1) emptySlot = slot;
+                    continue;
+                }
+
+                if (!second.hasSpace(slot) || !key.equals(second.getKey(slot))) continue;
+
+                int count = Math.min(number - moved, second.getMaxSize(slot) - second.getCount(slot));
+                second.setCount(slot, second.getCount(slot) + count);
+                plan.add(new Move(true, index, slot, count));
+                moved += count;
+            }
+
+            if (moved < number && emptySlot != -1) {
+                second.set(emptySlot, key, number - moved, maxSize);
+                plan.add(new Move(true, index, emptySlot, number - moved));
+                moved = number;
+            }
+
+            first.setCount(index, first.getCount(index) - moved);
+
+        } else {
+            number = Math.min(Math.abs(number), maxSize - first.getCount(index));
+
+            for (int slot = second.size() - 1; slot >= 0 && moved < number; slot--) {
+                if (second.isEmpty(slot) || !key.equals(second.getKey(slot))) continue;
+
+                int count = Math.min(number - moved, second.getCount(slot));
+                second.setCount(slot, second.getCount(slot) - count);
+                plan.add(new Move(false, slot, index, count));
+                moved += count;
+            }
+
+            first.setCount(index, first.getCount(index) + moved);
+        }
+
+        return moved > 0;
+    }
+
+    /**
+     * Plan moving every stack of the first inventory that passes a filter into the second.
+     * Stops at the first stack that can not be moved at all.
+     *
+     * @param first The inventory to empty.
+     * @param second The inventory to fill.
+     * @param filter Tests the slots of the first inventory that should be moved.
+     * @param plan The plan to add the moves to.
+     *
+     * @return Whether any items were moved.
+     */
+    public static boolean moveAll(SlotArray first, SlotArray second, IntPredicate filter, MovePlan plan) {
+        boolean moved = false;
+
+        for (int slot = 0; slot < first.size(); slot++) {
+            if (first.isEmpty(slot) || !filter.test(slot)) continue;
+
+            if (moveItem(first, second, slot, first.getCount(slot), true, plan)) {
+                moved = true;
+            } else {
+                break;
+            }
+        }
+
+        return moved;
+    }
+}
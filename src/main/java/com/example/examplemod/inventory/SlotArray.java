@@ -0,0 +1,165 @@
+/*
+ * Copyright (c) 2020 Hassan Abouelela
+ * Licensed under the MIT License
+ */
+
+package com.example.examplemod.inventory;
+
+import javax.annotation.Nullable;
+import java.util.List;
+
+/**
+ * The contents of an inventory as flat arrays of stack keys and counts, for planners to work on.
+ * Planners change the arrays as they plan, and leave the stacks the arrays were read from untouched.
+ */
+public final class SlotArray {
+    /**
+     * The key of the stack in each slot. Null for empty slots.
+     */
+    private final Object[] keys;
+    /**
+     * The number of items in each slot.
+     */
+    private final int[] counts;
+    /**
+     * The maximum number of items in each slot.
+     */
+    private final int[] maxSizes;
+
+    /**
+     * Creates an array of empty slots.
+     *
+     * @param size The number of slots.
+     */
+    public SlotArray(int size) {
+        this.keys = new Object[size];
+        this.counts = new int[size];
+        this.maxSizes = new int[size];
+    }
+
+    /**
+     * Read the contents of an inventory.
+     *
+     * @param stacks The stacks in the inventory.
+     * @param model The model of the stacks.
+     * @param <S> The type of the stacks.
+     *
+     * @return The slots.
+     */
+    public static <S> SlotArray of(List<S> stacks, StackModel<S> model) {
+        SlotArray slots = new SlotArray(stacks.size());
+
+        for (int slot = 0; slot < stacks.size(); slot++) {
+            S stack = stacks.get(slot);
+            if (model.isEmpty(stack)) continue;
+
+            slots.set(slot, model.getKey(stack), model.getCount(stack), model.getMaxStackSize(stack));
+        }
+
+        return slots;
+    }
+
+    /**
+     * Returns the number of slots.
+     *
+     * @return The number of slots.
+     */
+    public int size() {
+        return this.keys.length;
+    }
+
+    /**
+     * Whether a slot is empty.
+     *
+     * @param slot The slot.
+     * @return True if the slot holds no items.
+     */
+    public boolean isEmpty(int slot) {
+        return this.keys[slot] == null;
+    }
+
+    /**
+     * Returns the key of the stack in a slot.
+     *
+     * @param slot The slot.
+     * @return The key, or null if the slot is empty.
+     */
+    @Nullable
+    public Object getKey(int slot) {
+        return this.keys[slot];
+    }
+
+    /**
+     * Returns the number of items in a slot.
+     *
+     * @param slot The slot.
+     * @return The number of items.
+     */
+    public int getCount(int slot) {
+        return this.counts[slot];
+    }
+
+    /**
+     * Returns the maximum number of items in a slot.
+     *
+     * @param slot The slot.
+     * @return The maximum number of items, or 0 if the slot is empty.
+     */
+    public int getMaxSize(int slot) {
+        return this.maxSizes[slot];
+    }
+
+    /**
+     * Whether a slot can take more items.
+     *
+     * @param slot The slot.
+     * @return True if the slot is empty, or holds less than a full stack.
+     */
+    public boolean hasSpace(int slot) {
+        return this.keys[slot] == null || this.counts[slot] < this.maxSizes[slot];
+    }
+
+    /**
+     * Set the contents of a slot.
+     *
+     * @param slot The slot.
+     * @param key The key of the stack.
+     * @param count The number of items. Empties the slot if not positive.
+     * @param maxSize The maximum number of items.
+     */
+    public void set(int slot, Object key, int count, int maxSize) {
+        if (count <= 0) {
+            clear(slot);
+            return;
+        }
+
+        this.keys[slot] = key;
+        this.counts[slot] = count;
+        this.maxSizes[slot] = maxSize;
+    }
+
+    /**
+     * Change the number of items in a slot. Empties the slot if the count is not positive.
+     *
+     * @param slot The slot.
+     * @param count The new number of items.
+     */
+    public void setCount(int slot, int count) {
+        if (count <= 0) {
+            clear(slot);
+        } else {
+            this.counts[slot] = count;
+        }
+    }
+
+    /**
+     * Empty a slot.
+     *
+     * @param slot The slot.
+     */
+    public void clear(int slot) {
+        this.keys[slot] = null;
+        this.counts[slot] = 0;
+        this.maxSizes[slot] = 0;
+    }
+}
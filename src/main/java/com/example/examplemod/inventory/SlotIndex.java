@@ -0,0 +1,289 @@
+/*
+ * Copyright (c) 2020 Hassan Abouelela
+ * Licensed under the MIT License
+ */
+
+package com.example.examplemod.inventory;
+
+import javax.annotation.Nullable;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Objects;
+import java.util.TreeSet;
+
+/**
+ * An index of where each kind of item is in an inventory, kept up to date one slot at a time.
+ * Answers the lookups of refills and replacements without scanning the inventory: the last slot holding a kind, the
+ * fullest stack of a kind, the most durable tool of a kind, and the empty, plain and tool slots around them.
+ *
+ * <p>Every slot has a value: the remaining durability of damageable stacks, and the count of other stacks. Lookups
+ * return -1 when no slot matches.</p>
+ */
+public final class SlotIndex {
+    /**
+     * The slots holding a single kind.
+     */
+    private final class Slots {
+        /**
+         * The slots, by index.
+         */
+        private final TreeSet<Integer> slots = new TreeSet<>();
+        /**
+         * The slots holding plain stacks, fullest first, later slots first on ties.
+         */
+        private final TreeSet<Integer> stacks = new TreeSet<>(byCount);
+        /**
+         * The slots holding damageable stacks, most durable first, earlier slots first on ties.
+         */
+        private final TreeSet<Integer> tools = new TreeSet<>(byDurability);
+    }
+
+    /**
+     * The kind in each slot. Null for empty slots.
+     */
+    private final Object[] kinds;
+    /**
+     * The value of each slot.
+     */
+    private final int[] values;
+    /**
+     * Whether each slot holds a damageable stack.
+     */
+    private final boolean[] damageable;
+
+    /**
+     * Orders plain stacks, see {@link Slots#stacks}.
+     */
+    private final Comparator<Integer> byCount;
+    /**
+     * Orders damageable stacks, see {@link Slots#tools}.
+     */
+    private final Comparator<Integer> byDurability;
+
+    /**
+     * The slots of every kind in the inventory.
+     */
+    private final Map<Object, Slots> byKind = new HashMap<>();
+    /**
+     * The empty slots.
+     */
+    private final TreeSet<Integer> empty = new TreeSet<>();
+    /**
+     * The slots holding plain stacks, of any kind.
+     */
+    private final TreeSet<Integer> plain = new TreeSet<>();
+    /**
+     * The slots holding damageable stacks, of any kind.
+     */
+    private final TreeSet<Integer> tools = new TreeSet<>();
+
+    /**
+     * Creates an index of empty slots.
+     *
+     * @param size The number of slots.
+     */
+    public SlotIndex(int size) {
+        this.kinds = new Object[size];
+        this.values = new int[size];
+        this.damageable = new boolean[size];
+
+        this.byCount = (first, second) -> this.values[first] != this.values[second]
+                ? Integer.compare(this.values[second], this.values[first]) : Integer.compare(second, first);
+        this.byDurability = (first, second) -> this.values[first] != this.values[second]
+                ? Integer.compare(this.values[second], this.values[first]) : Integer.compare(first, second);
+
+        for (int slot = 0; slot < size; slot++) {
+            this.empty.add(slot);
+        }
+    }
+
+    /**
+     * Returns the number of slots.
+     *
+     * @return The number of slots.
+     */
+    public int size() {
+        return this.kinds.length;
+    }
+
+    /**
+     * Record the new contents of a slot. Slots outside the index are ignored.
+     *
+     * @param slot The slot.
+     * @param kind The kind now in the slot, or null if the slot is now empty.
+     * @param value The remaining durability of a damageable stack, or the count of any other stack.
+     * @param damageable Whether the stack is damageable.
+     */
+    public void update(int slot, @Nullable Object kind, int value, boolean damageable) {
+        if (slot < 0 || slot >= this.kinds.length) return;
+
+        if (Objects.equals(this.kinds[slot], kind) && this.values[slot] == value
+                && this.damageable[slot] == damageable) return;
+
+        // The sorted sets must not see the slot while its value changes
+        remove(slot);
+
+        this.kinds[slot] = kind;
+        this.values[slot] = kind == null ? 0 : value;
+        this.damageable[slot] = kind != null && damageable;
+
+        add(slot);
+    }
+
+    /**
+     * Remove a slot from the sets it is in, according to its current contents.
+     *
+     * @param slot The slot.
+     */
+    private void remove(int slot) {
+        Object kind = this.kinds[slot];
+
+        if (kind == null) {
+            this.empty.remove(slot);
+            return;
+        }
+
+        Slots slots = this.byKind.get(kind);
+        slots.slots.remove(slot);
+
+        if (this.damageable[slot]) {
+            slots.tools.remove(slot);
+            this.tools.remove(slot);
+        } else {
+            slots.stacks.remove(slot);
+            this.plain.remove(slot);
+        }
+
+        if (slots.slots.isEmpty()) this.byKind.remove(kind);
+    }
+
+    /**
+     * Add a slot to the sets it belongs in, according to its current contents.
+     *
+     * @param slot The slot.
+     */
+    private void add(int slot) {
+        Object kind = this.kinds[slot];
+
+        if (kind == null) {
+            this.empty.add(slot);
+            return;
+        }
+
+        Slots slots = this.byKind.computeIfAbsent(kind, ignored -> new Slots());
+        slots.slots.add(slot);
+
+        if (this.damageable[slot]) {
+            slots.tools.add(slot);
+            this.tools.add(slot);
+        } else {
+            slots.stacks.add(slot);
+            this.plain.add(slot);
+        }
+    }
+
+    /**
+     * Returns the kind in a slot.
+     *
+     * @param slot The slot.
+     * @return The kind, or null if the slot is empty.
+     */
+    @Nullable
+    public Object getKind(int slot) {
+        return this.kinds[slot];
+    }
+
+    /**
+     * Returns the value of a slot.
+     *
+     * @param slot The slot.
+     * @return The remaining durability of a damageable stack, the count of any other stack, or 0 if empty.
+     */
+    public int getValue(int slot) {
+        return this.values[slot];
+    }
+
+    /**
+     * Returns the last slot holding a kind.
+     *
+     * @param kind The kind.
+     * @return The slot.
+     */
+    public int getLastSlot(Object kind) {
+        Slots slots = this.byKind.get(kind);
+
+        return slots == null ? -1 : slots.slots.last();
+    }
+
+    /**
+     * Returns the fullest plain stack of a kind. The later slot wins ties.
+     *
+     * @param kind The kind.
+     * @return The slot.
+     */
+    public int getBestStack(Object kind) {
+        Slots slots = this.byKind.get(kind);
+
+        return slots == null || slots.stacks.isEmpty() ? -1 : slots.stacks.first();
+    }
+
+    /**
+     * Returns the most durable damageable stack of a kind. The earlier slot wins ties.
+     *
+     * @param kind The kind.
+     * @return The slot.
+     */
+    public int getBestTool(Object kind) {
+        Slots slots = this.byKind.get(kind);
+
+        return slots == null || slots.tools.isEmpty() ? -1 : slots.tools.first();
+    }
+
+    /**
+     * Returns the first empty slot from an index.
+     *
+     * @param from The first slot to consider.
+     * @return The slot.
+     */
+    public int getFirstEmpty(int from) {
+        Integer slot = this.empty.ceiling(from);
+
+        return slot == null ? -1 : slot;
+    }
+
+    /**
+     * Returns the last empty slot before an index.
+     *
+     * @param to The slot after the last slot to consider.
+     * @return The slot.
+     */
+    public int getLastEmpty(int to) {
+        Integer slot = this.empty.lower(to);
+
+        return slot == null ? -1 : slot;
+    }
+
+    /**
+     * Returns the last slot holding a plain stack, of any kind.
+     *
+     * @return The slot.
+     */
+    public int getLastPlain() {
+        return this.plain.isEmpty() ? -1 : this.plain.last();
+    }
+
+    /**
+     * Returns the last slot holding a damageable stack, of any kind, with more than some durability left.
+     *
+     * @param threshold The durability the stack must have more of.
+     * @return The slot.
+     */
+    public int getLastTool(int threshold) {
+        for (int slot: this.tools.descendingSet()) {
+            if (this.values[slot] > threshold) return slot;
+        }
+
+        return -1;
+    }
+}
@@ -0,0 +1,244 @@
+/*
+ * Copyright (c) 2020 Hassan Abouelela
+ * Licensed under the MIT License
+ */
+
+package com.example.examplemod.inventory;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Function;
+
+/**
+ * Plans sorting an inventory: collecting its stacks, merging stacks of the same key, and ordering them.
+ * Arranging the ordered stacks into the grid of the inventory is done by {@link GridLayout}.
+ */
+public class SortPlanner {
+    /**
+     * The precomputed sort key of a single stack.
+     * Everything needed for a comparison is read from the stack once, so sorting never touches the stacks.
+     *
+     * @param <S> The type of the stack.
+     */
+    private static final class SortKey<S> implements Comparable<SortKey<S>> {
+        /**
+         * The display name of the stack.
+         */
+        private final String name;
+        /**
+         * The numeric ID of the kind of item.
+         */
+        private final int kindId;
+        /**
+         * The number of items in the stack.
+         */
+        private final int count;
+        /**
+         * The damage of the stack, or 0 if the item can not be damaged.
+         */
+        private final int damage;
+        /**
+         * The position of the stack before sorting. Used to keep the sort stable.
+         */
+        private final int index;
+        /**
+         * The stack this key belongs to.
+         */
+        private final S stack;
+
+        /**
+         * Creates the sort key of a stack.
+         *
+         * @param stack The stack to create a key for.
+         * @param index The position of the stack in the unsorted list.
+         * @param model The model of the stack.
+         */
+        SortKey(S stack, int index, StackModel<S> model) {
+            this.name = model.getName(stack);
+            this.kindId = model.getKindId(stack);
+            this.count = model.getCount(stack);
+            this.damage = model.getDamage(stack);
+            this.index = index;
+            this.stack = stack;
+        }
+
+        /**
+         * Alphabetical by name, then grouped by item, with the fullest and least damaged stacks first.
+         *
+         * @param other The key to compare to.
+         * @return The comparison result.
+         */
+        @Override
+        public int compareTo(SortKey<S> other) {
+            int result = this.name.compareTo(other.name);
+            if (result != 0) return result;
+
+            result = Integer.compare(this.kindId, other.kindId);
+            if (result != 0) return result;
+
+            result = Integer.compare(other.count, this.count);
+            if (result != 0) return result;
+
+            result = Integer.compare(this.damage, other.damage);
+            if (result != 0) return result;
+
+            return Integer.compare(this.index, other.index);
+        }
+    }
+
+    /**
+     * Collect the stacks of an inventory that should be sorted.
+     *
+     * @param inventory The inventory.
+     * @param start The number of protected slots at the start of the inventory, such as hotbar slots.
+     * @param model The model of the stacks.
+     * @param <S> The type of the stacks.
+     *
+     * @return The stacks that are not empty or protected, in slot order.
+     */
+    public static <S> ArrayList<S> collect(List<S> inventory, int start, StackModel<S> model) {
+        ArrayList<S> collected = new ArrayList<>();
+
+        for (int slot = Math.max(start, 0); slot < inventory.size(); slot++) {
+            S stack = inventory.get(slot);
+
+            if (!model.isEmpty(stack)) {
+                collected.add(stack);
+            }
+        }
+
+        return collected;
+    }
+
+    /**
+     * Merge stacks of the same key into as few full stacks as possible.
+     * Keys are kept in the order they are first seen, with the full stacks of a key before the remainder.
+     *
+     * @param stacks The stacks to merge. Not modified.
+     * @param model The model of the stacks.
+     * @param <S> The type of the stacks.
+     *
+     * @return New merged stacks.
+     */
+    public static <S> ArrayList<S> merge(List<S> stacks, StackModel<S> model) {
+        // The first stack and total count of each key
+        Map<Object, S> firsts = new LinkedHashMap<>();
+        Map<Object, int[]> totals = new HashMap<>();
+
+        for (S stack: stacks) {
+            Object key = model.getKey(stack);
+            int[] total = totals.get(key);
+
+            if (total == null) {
+                firsts.put(key, stack);
+                totals.put(key, new int[] {model.getCount(stack)});
+            } else {
+                total[0] += model.getCount(stack);
+            }
+        }
+
+        ArrayList<S> merged = new ArrayList<>();
+
+        for (Map.Entry<Object, S> entry: firsts.entrySet()) {
+            S first = entry.getValue();
+            int count = totals.get(entry.getKey())[0];
+            int maxSize = model.getMaxStackSize(first);
+
+            if (count < maxSize) {
+                merged.add(model.withCount(first, count));
+                continue;
+            }
+
+            for (; count >= maxSize; count -= maxSize) {
+                merged.add(model.withCount(first, maxSize));
+            }
+
+            if (count > 0) {
+                merged.add(model.withCount(first, count));
+            }
+        }
+
+        return merged;
+    }
+
+    /**
+     * Sorts a list of stacks alphabetically, in place.
+     * Keys are built once per stack, and sorted in O(n log n).
+     *
+     * @param stacks The stacks to sort.
+     * @param model The model of the stacks.
+     * @param <S> The type of the stacks.
+     */
+    @SuppressWarnings("unchecked")
+    public static <S> void sortAlphabetical(List<S> stacks, StackModel<S> model) {
+        if (stacks.size() < 2) return;
+
+        SortKey<S>[] keys = new SortKey[stacks.size()];
+        for (int i = 0; i < keys.length; i++) {
+            keys[i] = new SortKey<>(stacks.get(i), i, model);
+        }
+
+        Arrays.sort(keys);
+
+        for (int i = 0; i < keys.length; i++) {
+            stacks.set(i, keys[i].stack);
+        }
+    }
+
+    /**
+     * Rearranges compacted stacks into the order their items first appeared in the original inventory.
+     * Each original stack takes the next unused compacted stack of the same kind, and any compacted stacks left over
+     * are appended in their current order. Runs in linear time: the positions of each kind are chained together in
+     * one pass, and every original stack then takes the head of its chain.
+     *
+     * @param sorted The compacted stacks.
+     * @param original The inventory before compacting.
+     * @param kind Gets the kind of a stack. Stacks are matched when their kinds are equal.
+     * @param <T> The type of the stacks.
+     *
+     * @return The compacted stacks, in the original order.
+     */
+    public static <T> ArrayList<T> sortCompact(List<T> sorted, List<T> original, Function<T, ?> kind) {
+        int size = sorted.size();
+        // The next position of the same kind, or -1 at the end of a chain
+        int[] next = new int[size];
+        // The first unused position of each kind
+        Map<Object, int[]> heads = new HashMap<>();
+
+        for (int i = size - 1; i >= 0; i--) {
+            int[] head = heads.get(kind.apply(sorted.get(i)));
+            if (head == null) {
+                next[i] = -1;
+                heads.put(kind.apply(sorted.get(i)), new int[] {i});
+            } else {
+                next[i] = head[0];
+                head[0] = i;
+            }
+        }
+
+        ArrayList<T> result = new ArrayList<>(size);
+        boolean[] used = new boolean[size];
+
+        for (T originalStack: original) {
+            int[] head = heads.get(kind.apply(originalStack));
+            if (head == null || head[0] == -1) continue;
+
+            int index = head[0];
+            head[0] = next[index];
+            used[index] = true;
+            result.add(sorted.get(index));
+        }
+
+        for (int i = 0; i < size; i++) {
+            if (!used[i]) {
+                result.add(sorted.get(i));
+            }
+        }
+
+        return result;
+    }
+}
@@ -0,0 +1,114 @@
+/*
+ * Copyright (c) 2020 Hassan Abouelela
+ * Licensed under the MIT License
+ */
+
+package com.example.examplemod.inventory;
+
+import javax.annotation.Nullable;
+
+/**
+ * Describes a type of item stack to the planners of this package, so they can run without the game.
+ * Implementations never modify the stacks they are given.
+ *
+ * @param <S> The type of the stacks.
+ */
+public interface StackModel<S> {
+    /**
+     * Whether a stack is empty.
+     *
+     * @param stack The stack.
+     * @return True if the slot holding the stack is free.
+     */
+    boolean isEmpty(S stack);
+
+    /**
+     * Get the key of a stack. Stacks with equal keys can be merged.
+     *
+     * @param stack The stack.
+     * @return The key, with value equality.
+     */
+    Object getKey(S stack);
+
+    /**
+     * Get the kind of item in a stack, regardless of its tags.
+     *
+     * @param stack The stack.
+     * @return The kind, with value equality.
+     */
+    Object getKind(S stack);
+
+    /**
+     * Get the numeric ID of the kind of item in a stack.
+     *
+     * @param stack The stack.
+     * @return The ID.
+     */
+    int getKindId(S stack);
+
+    /**
+     * Get the category of a stack, used to group stacks in a grid.
+     *
+     * @param stack The stack.
+     * @return The category, or null if the stack has none.
+     */
+    @Nullable
+    Object getCategory(S stack);
+
+    /**
+     * Get the name a stack is sorted by. Must not depend on the language, so the client and server agree on the order.
+     *
+     * @param stack The stack.
+     * @return The name.
+     */
+    String getName(S stack);
+
+    /**
+     * Get the damage of a stack.
+     *
+     * @param stack The stack.
+     * @return The damage, or 0 if the stack can not be damaged.
+     */
+    int getDamage(S stack);
+
+    /**
+     * Get the number of items in a stack.
+     *
+     * @param stack The stack.
+     * @return The number of items.
+     */
+    int getCount(S stack);
+
+    /**
+     * Get the maximum number of items in a stack of the same key.
+     *
+     * @param stack The stack.
+     * @return The maximum number of items.
+     */
+    int getMaxStackSize(S stack);
+
+    /**
+     * Create a new stack with the same key as another.
+     *
+     * @param stack The stack to copy.
+     * @param count The number of items in the new stack.
+     * @return The new stack.
+     */
+    S withCount(S stack, int count);
+
+    /**
+     * Create a new stack of a kind of item, without tags.
+     *
+     * @param kind The kind of item, as returned by {@link StackModel#getKind(Object)}.
+     * @param count The number of items in the new stack.
+     * @return The new stack.
+     */
+    S createStack(Object kind, int count);
+
+    /**
+     * Create an empty stack.
+     *
+     * @return The empty stack.
+     */
+    S empty();
+}
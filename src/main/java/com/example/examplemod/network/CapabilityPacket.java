@@ -0,0 +1,62 @@
+/*
+ * Copyright (c) 2020 Hassan Abouelela
+ * Licensed under the MIT License
+ */
+
+package com.example.examplemod.network;
+
+import net.minecraft.network.PacketBuffer;
+
+/**
+ * Class to tell the server which optional features a client wants it to perform. Sent when joining a server.
+ */
+public class CapabilityPacket {
+    /**
+     * Flag asking the server to refill held items itself, in the tick they run out.
+     */
+    public static final int SERVER_REFILL = 1;
+
+    /**
+     * The features the client opts into.
+     */
+    private final int flags;
+
+    /**
+     * Constructor for a capability packet.
+     *
+     * @param flags The features the client opts into, such as {@link CapabilityPacket#SERVER_REFILL}.
+     */
+    public CapabilityPacket(int flags) {
+        this.flags = flags;
+    }
+
+    /**
+     * Returns whether the client opts into a feature.
+     *
+     * @param flag The flag of the feature.
+     * @return True if the client opts in.
+     */
+    boolean has(int flag) {
+        return (this.flags & flag) != 0;
+    }
+
+    /**
+     * The encoder for this packet.
+     *
+     * @param message The packet.
+     * @param buffer The buffer to write to.
+     */
+    static void encode(CapabilityPacket message, PacketBuffer buffer) {
+        buffer.writeVarInt(message.flags);
+    }
+
+    /**
+     * The decoder for this packet.
+     *
+     * @param buffer The buffer to read from.
+     * @return The packet.
+     */
+    static CapabilityPacket decode(PacketBuffer buffer) {
+        return new CapabilityPacket(buffer.readVarInt());
+    }
+}
@@ -12,7 +12,11 @@ import net.minecraftforge.fml.network.simple.SimpleChannel;
 
 
 public class Channel {
-    private static final String PROTOCOL_VERSION = "1";
+    private static final String PROTOCOL_VERSION = "4";
+    /**
+     * The oldest protocol version that is still compatible. Version 4 added capability packets.
+     */
+    private static final int MINIMUM_PROTOCOL_VERSION = 4;
     public static final SimpleChannel INSTANCE = NetworkRegistry.newSimpleChannel(
             new ResourceLocation(ExampleMod.ID, "main"),
             () -> PROTOCOL_VERSION,
@@ -27,7 +31,7 @@ public class Channel {
                     return false;
                 }
 
-                return 0 < version && version <= Integer.parseInt(PROTOCOL_VERSION);
+                return MINIMUM_PROTOCOL_VERSION <= version && version <= Integer.parseInt(PROTOCOL_VERSION);
             },
             (client_protocol) -> {
                 if (client_protocol.equals("ABSENT") || client_protocol.equals("ACCEPTVANILLA")) return false;
@@ -40,7 +44,7 @@ public class Channel {
                     return false;
                 }
 
-                return 0 < version && version <= Integer.parseInt(PROTOCOL_VERSION);
+                return MINIMUM_PROTOCOL_VERSION <= version && version <= Integer.parseInt(PROTOCOL_VERSION);
             }
     );
 
@@ -63,6 +67,10 @@ public class Channel {
                 MessagePacket::encode, MessagePacket::decode, ServerHandler::handleMessage);
         INSTANCE.registerMessage(id++, EquipArmorPacket.class,
                 EquipArmorPacket::encode, EquipArmorPacket::decode, ServerHandler::handleEquip);
+        INSTANCE.registerMessage(id++, SortRequest.class,
+                SortRequest::encode, SortRequest::decode, ServerHandler::handleSortRequest);
+        INSTANCE.registerMessage(id++, CapabilityPacket.class,
+                CapabilityPacket::encode, CapabilityPacket::decode, ServerHandler::handleCapabilities);
 
         // Server -> Player
         INSTANCE.registerMessage(id++, EmptyPackets.class,
@@ -0,0 +1,171 @@
+/*
+ * Copyright (c) 2020 Hassan Abouelela
+ * Licensed under the MIT License
+ */
+
+package com.example.examplemod.network;
+
+import net.minecraft.entity.player.PlayerInventory;
+import net.minecraft.entity.player.ServerPlayerEntity;
+import net.minecraft.inventory.EquipmentSlotType;
+import net.minecraft.inventory.container.Container;
+import net.minecraft.inventory.container.Slot;
+import net.minecraft.item.ItemStack;
+import net.minecraft.network.play.server.SSetSlotPacket;
+import net.minecraft.util.Hand;
+
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Class to keep track of the slots changed by packet handlers, and have them sent to the players.
+ * Replaces resending whole containers after every packet. Only used on the server thread.
+ *
+ * <p>Vanilla sends the changed slots of a player's open container every time the player ticks, and updates the stacks
+ * the container remembers so they are only sent once. Only the slots of the player's inventory that the open container
+ * does not show, like the armor slots while a chest is open, would otherwise wait until the open container is closed.
+ * Those are sent at the end of the tick, straight to the player's inventory, since the client only accepts slots of its
+ * own container for the hotbar while another container is open. The player's own container is left alone, so it still
+ * sends those slots again once the open container is closed.</p>
+ *
+ * <p>Manual check: open a chest, sort the player's inventory with armor in it, and check the armor is equipped and
+ * shown on the player (F5) before closing the chest, and still shown after closing it.</p>
+ */
+public class ContainerSync {
+    /**
+     * Window ID the client applies to the player's inventory directly, by inventory index.
+     */
+    private static final int INVENTORY_WINDOW = -2;
+
+    /**
+     * The changed indexes of every player's inventory, since the last flush.
+     */
+    private static final Map<ServerPlayerEntity, BitSet> changes = new HashMap<>();
+
+    /**
+     * Get the changed indexes of a player's inventory, creating them if needed.
+     *
+     * @param player The player.
+     * @return The changed indexes of the player's inventory.
+     */
+    private static BitSet get(ServerPlayerEntity player) {
+        return changes.computeIfAbsent(player, ignored -> new BitSet());
+    }
+
+    /**
+     * Mark a slot of a player's inventory as changed.
+     *
+     * @param player The player.
+     * @param index The index in the player's inventory.
+     */
+    static void markInventory(ServerPlayerEntity player, int index) {
+        get(player).set(index);
+        ServerRefill.markChanged(player, index, index + 1);
+    }
+
+    /**
+     * Mark a range of a player's inventory as changed.
+     *
+     * @param player The player.
+     * @param from The first index (inclusive).
+     * @param to The last index (exclusive).
+     */
+    static void markInventory(ServerPlayerEntity player, int from, int to) {
+        if (from >= to) return;
+
+        get(player).set(from, to);
+        ServerRefill.markChanged(player, from, to);
+    }
+
+    /**
+     * Mark the slot of a held item as changed.
+     *
+     * @param player The player.
+     * @param hand The hand holding the item.
+     */
+    static void markHeld(ServerPlayerEntity player, Hand hand) {
+        markEquipment(player, hand == Hand.MAIN_HAND ? EquipmentSlotType.MAINHAND : EquipmentSlotType.OFFHAND);
+    }
+
+    /**
+     * Mark an equipment slot as changed.
+     *
+     * @param player The player.
+     * @param slotType The equipment slot.
+     */
+    static void markEquipment(ServerPlayerEntity player, EquipmentSlotType slotType) {
+        PlayerInventory inventory = player.inventory;
+
+        switch (slotType) {
+            case MAINHAND:
+                markInventory(player, inventory.currentItem);
+                break;
+
+            case OFFHAND:
+                markInventory(player, inventory.mainInventory.size() + inventory.armorInventory.size());
+                break;
+
+            default:
+                markInventory(player, inventory.mainInventory.size() + slotType.getIndex());
+        }
+    }
+
+    /**
+     * Mark a slot of a container as changed.
+     *
+     * @param player The player viewing the container.
+     * @param container The container.
+     * @param slotNumber The number of the slot in the container.
+     */
+    static void markSlot(ServerPlayerEntity player, Container container, int slotNumber) {
+        // Other containers are only shown while open, and then synced by the player's tick
+        if (container != player.container || slotNumber < 0 || slotNumber >= container.inventorySlots.size()) return;
+
+        // The crafting slots are not shown anywhere else, and are synced once the open container is closed
+        Slot slot = container.getSlot(slotNumber);
+        if (slot.inventory == player.inventory) markInventory(player, slot.getSlotIndex());
+    }
+
+    /**
+     * Send the changed slots the players' open containers do not show. Called at the end of every server tick.
+     */
+    public static void flush() {
+        if (changes.isEmpty()) return;
+
+        for (Map.Entry<ServerPlayerEntity, BitSet> entry: changes.entrySet()) {
+            ServerPlayerEntity player = entry.getKey();
+
+            if (player.connection == null || player.openContainer == player.container) continue;
+
+            BitSet hidden = getHidden(player, entry.getValue(), player.openContainer);
+            for (int index = hidden.nextSetBit(0); index >= 0; index = hidden.nextSetBit(index + 1)) {
+                if (index >= player.inventory.getSizeInventory()) break;
+
+                ItemStack itemStack = player.inventory.getStackInSlot(index).copy();
+                player.connection.sendPacket(new SSetSlotPacket(INVENTORY_WINDOW, index, itemStack));
+            }
+        }
+
+        changes.clear();
+    }
+
+    /**
+     * Get the changed slots of a player's inventory a container does not show.
+     *
+     * @param player The player.
+     * @param inventory The changed indexes of the player's inventory.
+     * @param container The container.
+     *
+     * @return The changed indexes the container has no slot for.
+     */
+    private static BitSet getHidden(ServerPlayerEntity player, BitSet inventory, Container container) {
+        BitSet hidden = (BitSet) inventory.clone();
+
+        for (Slot slot: container.inventorySlots) {
+            if (slot.inventory == player.inventory) hidden.clear(slot.getSlotIndex());
+        }
+
+        return hidden;
+    }
+}
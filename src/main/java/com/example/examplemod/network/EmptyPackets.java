@@ -5,8 +5,11 @@
 
 package com.example.examplemod.network;
 
+import com.example.examplemod.Config;
 import com.example.examplemod.ExampleMod;
 import com.example.examplemod.functions.Backup;
+import net.minecraft.client.Minecraft;
+import net.minecraft.client.entity.player.ClientPlayerEntity;
 import net.minecraft.item.ItemStack;
 import net.minecraft.network.PacketBuffer;
 import net.minecraftforge.fml.network.NetworkEvent;
@@ -14,10 +17,8 @@ import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 
 import java.util.ArrayList;
-import java.util.Map;
 import java.util.function.Supplier;
 
-import static com.example.examplemod.ExampleMod.CONFIG;
 
 /**
  * Class to send instructions to the client.
@@ -165,17 +166,15 @@ public class EmptyPackets {
      * @param args An ArrayList with the first argument being the source to restore from.
      */
     private static void restore(ArrayList<String> args) {
-        Map backups = CONFIG.getMap("Backups");
-        if (backups == null) {
-            LOGGER.warn(sendMessage(true, String.format(
-                    "[%s] Restore Failed: Could not read config file.", ExampleMod.NAME
-            )));
-            return;
-        }
-
+        // Only as many items as the inventory holds are read
+        ClientPlayerEntity player = Minecraft.getInstance().player;
+        int limit = player != null ? player.inventory.mainInventory.size() : Integer.MAX_VALUE;
 
         ArrayList<ItemStack> restored = new ArrayList<>();
-        int result = Backup.restore(backups, args.get(0), restored);
+        int result = Backup.restore(Config.settings().backupLocation, args.get(0), itemStack -> {
+            restored.add(itemStack);
+            return restored.size() < limit;
+        });
 
         switch (result) {
             case 0:
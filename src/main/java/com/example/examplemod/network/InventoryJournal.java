@@ -0,0 +1,436 @@
+/*
+ * Copyright (c) 2020 Hassan Abouelela
+ * Licensed under the MIT License
+ */
+
+package com.example.examplemod.network;
+
+import com.example.examplemod.ExampleMod;
+import net.minecraft.entity.player.ServerPlayerEntity;
+import net.minecraft.inventory.container.Slot;
+import net.minecraft.item.ItemStack;
+import net.minecraft.nbt.CompoundNBT;
+import net.minecraft.nbt.CompressedStreamTools;
+import net.minecraft.nbt.ListNBT;
+import net.minecraftforge.common.util.Constants;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import javax.annotation.Nullable;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+
+/**
+ * Class to journal the inventories of players on the server, before they are changed by a packet.
+ * Backups are only made by clients, so this is the only record a dedicated server has when a sort goes wrong.
+ *
+ * <p>Snapshots are taken on the server thread, and appended to a file per player in the world folder by a single
+ * background thread. A record is the length of a compressed NBT compound followed by the compound: the time, what
+ * changed the inventory, the player's main inventory, and the open container and its type if the packet changes it
+ * too. A snapshot with a container is only restored while a container of the same type and size is open. A record
+ * cut short by a crash is removed before the file is appended to again. Each file is compacted to its latest
+ * {@link InventoryJournal#KEEP} records once it holds twice as many.</p>
+ */
+public class InventoryJournal {
+    /**
+     * Event logger.
+     */
+    private static final Logger LOGGER = LogManager.getLogger();
+    /**
+     * The name of the journal folder, inside the world folder.
+     */
+    private static final String FOLDER = ExampleMod.NAME_SHORT + "Journal";
+    /**
+     * The extension of journal files.
+     */
+    private static final String EXTENSION = ".journal";
+    /**
+     * The maximum number of snapshots waiting to be written.
+     */
+    private static final int CAPACITY = 256;
+    /**
+     * The number of records kept per player when a journal is compacted.
+     */
+    private static final int KEEP = 64;
+    /**
+     * The longest time to wait for snapshots to be written when the server stops, in milliseconds.
+     */
+    private static final long STOP_TIMEOUT_MS = 5000;
+    /**
+     * Result of a restore that has no snapshot.
+     */
+    public static final int NO_SNAPSHOT = -1;
+    /**
+     * Result of a restore whose snapshot is of a container that is not open.
+     */
+    public static final int WRONG_CONTAINER = -2;
+
+    /**
+     * The journal folder of the running server, null if the journal is not started.
+     */
+    private static Path folder = null;
+    /**
+     * The thread writing the journal, null if the journal is not started.
+     */
+    private static ThreadPoolExecutor writer = null;
+    /**
+     * The number of records in each journal file. Only used by the writer thread.
+     */
+    private static final Map<UUID, Integer> records = new HashMap<>();
+    /**
+     * The number of snapshots dropped because too many were waiting to be written.
+     */
+    private static final AtomicLong dropped = new AtomicLong(0);
+
+    /**
+     * Start journaling, for a server that is starting.
+     *
+     * @param worldFolder The folder of the server's world.
+     */
+    public static void start(File worldFolder) {
+        stop();
+
+        folder = worldFolder.toPath().resolve(FOLDER);
+        writer = new ThreadPoolExecutor(1, 1, 0, TimeUnit.MILLISECONDS, new ArrayBlockingQueue<>(CAPACITY),
+                task -> {
+                    Thread thread = new Thread(task, ExampleMod.NAME_SHORT + " Inventory Journal");
+                    thread.setDaemon(true);
+                    return thread;
+                });
+    }
+
+    /**
+     * Stop journaling, for a server that is stopping. Waits for the snapshots waiting to be written.
+     */
+    public static void stop() {
+        if (writer == null) return;
+
+        writer.shutdown();
+        try {
+            if (!writer.awaitTermination(STOP_TIMEOUT_MS, TimeUnit.MILLISECONDS)) {
+                LOGGER.warn(String.format("[%s] Stopped with %d inventory snapshots left to write.", ExampleMod.NAME,
+                        writer.getQueue().size()));
+            }
+        } catch (InterruptedException ignored) {
+            Thread.currentThread().interrupt();
+        }
+
+        if (dropped.get() > 0) {
+            LOGGER.warn(String.format("[%s] Dropped %d inventory snapshots, the journal could not keep up.",
+                    ExampleMod.NAME, dropped.get()));
+        }
+
+        writer = null;
+        folder = null;
+        records.clear();
+        dropped.set(0);
+    }
+
+    /**
+     * Record the inventory of a player before a packet changes it. Only called on the server thread.
+     *
+     * @param player The player.
+     * @param source What is about to change the inventory.
+     * @param container Whether the open container is about to change too.
+     */
+    static void record(ServerPlayerEntity player, String source, boolean container) {
+        if (writer == null) return;
+
+        CompoundNBT snapshot = new CompoundNBT();
+        snapshot.putLong("Time", System.currentTimeMillis());
+        snapshot.putString("Source", source);
+
+        ListNBT inventory = new ListNBT();
+        for (ItemStack itemStack: player.inventory.mainInventory) {
+            inventory.add(itemStack.write(new CompoundNBT()));
+        }
+        snapshot.put("Inventory", inventory);
+
+        if (container) {
+            ListNBT slots = new ListNBT();
+            for (Slot slot: player.openContainer.inventorySlots) {
+                slots.add(slot.getStack().write(new CompoundNBT()));
+            }
+            snapshot.put("Container", slots);
+            snapshot.putString("ContainerType", player.openContainer.getClass().getName());
+        }
+
+        Path file = folder.resolve(player.getUniqueID() + EXTENSION);
+        UUID id = player.getUniqueID();
+
+        try {
+            writer.execute(() -> append(id, file, snapshot));
+        } catch (RejectedExecutionException ignored) {
+            dropped.incrementAndGet();
+        }
+    }
+
+    /**
+     * Restore the inventory of a player from the journal. The journal is read on the writer thread, after the
+     * snapshots waiting to be written, and the inventory is replaced on the server thread. The replaced inventory is
+     * recorded first, so restoring again undoes a restore.
+     *
+     * @param player The player.
+     * @param steps Which snapshot to restore, 1 for the latest.
+     * @param done Called on the server thread with the number of restored slots, {@link #NO_SNAPSHOT} if there is no
+     *             such snapshot, or {@link #WRONG_CONTAINER} if the snapshot needs a container that is not open.
+     *
+     * @return False if the journal is not started.
+     */
+    public static boolean restore(ServerPlayerEntity player, int steps, Consumer<Integer> done) {
+        if (writer == null) return false;
+
+        Path file = folder.resolve(player.getUniqueID() + EXTENSION);
+
+        try {
+            writer.execute(() -> {
+                CompoundNBT snapshot = null;
+                try {
+                    snapshot = read(file, steps);
+                } catch (IOException error) {
+                    LOGGER.error(String.format("[%s] Journal read error: (%s) - %s", ExampleMod.NAME,
+                            error.getClass().getCanonicalName(), Arrays.toString(error.getStackTrace())));
+                }
+
+                CompoundNBT restored = snapshot;
+                player.server.execute(() -> done.accept(apply(player, restored)));
+            });
+
+        } catch (RejectedExecutionException ignored) {
+            return false;
+        }
+
+        return true;
+    }
+
+    /**
+     * Replace the main inventory of a player with a snapshot, and the open container if the snapshot has one.
+     * Restoring only the player's half of a sort with a container would duplicate the items moved between them, so
+     * those snapshots are refused unless a container of the same type and size is open.
+     *
+     * @param player The player.
+     * @param snapshot The snapshot, or null.
+     *
+     * @return The number of restored slots, {@link #NO_SNAPSHOT} if there is no snapshot, or {@link #WRONG_CONTAINER}
+     *         if the snapshot needs a container that is not open.
+     */
+    private static int apply(ServerPlayerEntity player, @Nullable CompoundNBT snapshot) {
+        if (snapshot == null || player.removed) return NO_SNAPSHOT;
+
+        boolean container = snapshot.contains("Container", Constants.NBT.TAG_LIST);
+        ListNBT slots = snapshot.getList("Container", Constants.NBT.TAG_COMPOUND);
+
+        if (container && (player.openContainer == player.container
+                || !player.openContainer.getClass().getName().equals(snapshot.getString("ContainerType"))
+                || player.openContainer.inventorySlots.size() != slots.size())) {
+            return WRONG_CONTAINER;
+        }
+
+        record(player, "restore", container);
+
+        ListNBT inventory = snapshot.getList("Inventory", Constants.NBT.TAG_COMPOUND);
+        int size = Math.min(inventory.size(), player.inventory.mainInventory.size());
+        for (int slot = 0; slot < size; slot++) {
+            player.inventory.setInventorySlotContents(slot, ItemStack.read(inventory.getCompound(slot)));
+        }
+
+        ContainerSync.markInventory(player, 0, size);
+        int restored = size;
+
+        // The open container is synced by the player's tick. Its slots of the player's inventory were restored above
+        if (container) {
+            for (int index = 0; index < slots.size(); index++) {
+                Slot slot = player.openContainer.getSlot(index);
+                if (slot.inventory == player.inventory) continue;
+
+                slot.putStack(ItemStack.read(slots.getCompound(index)));
+                restored++;
+            }
+        }
+
+        return restored;
+    }
+
+    /**
+     * Append a snapshot to a journal file, compacting the file if it is full. Only called on the writer thread.
+     *
+     * @param id The player.
+     * @param file The journal file of the player.
+     * @param snapshot The snapshot.
+     */
+    private static void append(UUID id, Path file, CompoundNBT snapshot) {
+        try {
+            Integer count = records.get(id);
+            if (count == null) {
+                Files.createDirectories(file.getParent());
+                count = Files.exists(file) ? repair(file) : 0;
+            }
+
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            CompressedStreamTools.writeCompressed(snapshot, bytes);
+
+            try (DataOutputStream output = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(file,
+                    StandardOpenOption.CREATE, StandardOpenOption.APPEND)))) {
+                output.writeInt(bytes.size());
+                bytes.writeTo(output);
+            }
+            count++;
+
+            if (count >= 2 * KEEP) count = compact(file);
+            records.put(id, count);
+
+        } catch (IOException error) {
+            LOGGER.error(String.format("[%s] Journal write error: (%s) - %s", ExampleMod.NAME,
+                    error.getClass().getCanonicalName(), Arrays.toString(error.getStackTrace())));
+            records.remove(id);
+        }
+    }
+
+    /**
+     * Find where each complete record of a journal file starts.
+     *
+     * @param file The journal file.
+     * @param end Set to the end of the last complete record.
+     *
+     * @return The offsets of the records, oldest first.
+     * @throws IOException Could not read the file.
+     */
+    private static List<Long> scan(Path file, long[] end) throws IOException {
+        List<Long> offsets = new ArrayList<>();
+        ByteBuffer header = ByteBuffer.allocate(4);
+        long offset = 0;
+
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            long size = channel.size();
+
+            while (offset + 4 <= size) {
+                header.clear();
+                while (header.hasRemaining()) {
+                    if (channel.read(header, offset + header.position()) < 0) break;
+                }
+
+                int length = header.getInt(0);
+                if (header.hasRemaining() || length < 0 || offset + 4 + length > size) break;
+
+                offsets.add(offset);
+                offset += 4 + length;
+            }
+        }
+
+        end[0] = offset;
+        return offsets;
+    }
+
+    /**
+     * Remove a record cut short by a crash from the end of a journal file.
+     *
+     * @param file The journal file.
+     *
+     * @return The number of complete records.
+     * @throws IOException Could not read or truncate the file.
+     */
+    private static int repair(Path file) throws IOException {
+        long[] end = new long[1];
+        List<Long> offsets = scan(file, end);
+
+        if (end[0] < Files.size(file)) {
+            try (FileChannel channel = FileChannel.open(file, StandardOpenOption.WRITE)) {
+                channel.truncate(end[0]);
+            }
+            LOGGER.warn(String.format("[%s] Removed an incomplete record from %s", ExampleMod.NAME,
+                    file.getFileName()));
+        }
+
+        return offsets.size();
+    }
+
+    /**
+     * Rewrite a journal file with only its latest records.
+     *
+     * @param file The journal file.
+     *
+     * @return The number of records left.
+     * @throws IOException Could not rewrite the file.
+     */
+    private static int compact(Path file) throws IOException {
+        long[] end = new long[1];
+        List<Long> offsets = scan(file, end);
+        if (offsets.size() <= KEEP) return offsets.size();
+
+        long start = offsets.get(offsets.size() - KEEP);
+        Path temporary = Paths.get(file + ".tmp");
+
+        try (FileChannel input = FileChannel.open(file, StandardOpenOption.READ);
+             FileChannel output = FileChannel.open(temporary, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                     StandardOpenOption.TRUNCATE_EXISTING)) {
+            long position = start;
+            while (position < end[0]) {
+                position += input.transferTo(position, end[0] - position, output);
+            }
+        }
+
+        Files.move(temporary, file, StandardCopyOption.REPLACE_EXISTING);
+        return KEEP;
+    }
+
+    /**
+     * Read a snapshot from a journal file.
+     *
+     * @param file The journal file.
+     * @param steps Which snapshot to read, 1 for the latest.
+     *
+     * @return The snapshot, or null if there is no such snapshot.
+     * @throws IOException Could not read the file.
+     */
+    @Nullable
+    private static CompoundNBT read(Path file, int steps) throws IOException {
+        if (!Files.exists(file)) return null;
+
+        long[] end = new long[1];
+        List<Long> offsets = scan(file, end);
+        if (steps < 1 || steps > offsets.size()) return null;
+
+        byte[] record;
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            channel.position(offsets.get(offsets.size() - steps));
+
+            DataInputStream input = new DataInputStream(Channels.newInputStream(channel));
+            record = new byte[input.readInt()];
+            input.readFully(record);
+
+        } catch (EOFException error) {
+            return null;
+        }
+
+        try (InputStream input = new ByteArrayInputStream(record)) {
+            return CompressedStreamTools.readCompressed(input);
+        }
+    }
+}
@@ -6,7 +6,11 @@
 package com.example.examplemod.network;
 
 import com.example.examplemod.ExampleMod;
+import com.example.examplemod.functions.Functions;
+import com.example.examplemod.functions.StackKey;
+import net.minecraft.entity.player.PlayerInventory;
 import net.minecraft.entity.player.ServerPlayerEntity;
+import net.minecraft.inventory.container.Slot;
 import net.minecraft.inventory.container.WorkbenchContainer;
 import net.minecraft.item.ItemStack;
 import net.minecraft.util.text.StringTextComponent;
@@ -15,6 +19,9 @@ import net.minecraftforge.fml.network.NetworkEvent;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 
+import java.util.ArrayList;
+import java.util.function.BiConsumer;
+import java.util.function.BiPredicate;
 import java.util.function.Supplier;
 
 /**
@@ -43,6 +50,8 @@ class ServerHandler {
                 return;
             }
 
+            InventoryJournal.record(sender, "overflow", false);
+
             for (ItemStack item: message.getItems()){
                 // TODO: Implement check to prevent malicious item spawning
                 // Note: Could not figure out how to cause malicious item spawning to begin with
@@ -76,13 +85,12 @@ class ServerHandler {
                 ItemStack item = sender.inventory.removeStackFromSlot(message.getIndex());
                 sender.dropItem(item, false, true);
 
-                sender.sendContainerToPlayer(sender.container);
+                ContainerSync.markInventory(sender, message.getIndex());
             } else {
                 ItemStack item = sender.openContainer.getInventory().remove(message.getIndex());
                 sender.dropItem(item, false, true);
 
-                sender.sendContainerToPlayer(sender.container);
-                sender.sendContainerToPlayer(sender.openContainer);
+                ContainerSync.markSlot(sender, sender.openContainer, message.getIndex());
             }
 
             LOGGER.debug(String.format("[%s] Processed drop packet.", ExampleMod.NAME));
@@ -109,9 +117,21 @@ class ServerHandler {
                 return;
             }
 
+            InventoryJournal.record(sender, "sort", !message.isPlayer());
+
             if (message.isPlayer()) {
                 // Sort Player Inventory
-                for (ItemStack item: message.getItems()) {
+                ArrayList<ItemStack> items = message.resolve(sender.inventory::getStackInSlot,
+                        sender.inventory.mainInventory.size());
+
+                if (items == null) {
+                    LOGGER.warn(String.format("[%s] Sort packet does not match the inventory of %s, resyncing.",
+                            ExampleMod.NAME, sender.getDisplayName().getFormattedText()));
+                    sender.sendContainerToPlayer(sender.container);
+                    return;
+                }
+
+                for (ItemStack item: items) {
                     sender.inventory.setInventorySlotContents(index++, item);
                 }
 
@@ -119,11 +139,23 @@ class ServerHandler {
                     sender.inventory.setInventorySlotContents(index++, ExampleMod.AIR);
                 }
 
-                sender.sendContainerToPlayer(sender.container);
+                ContainerSync.markInventory(sender, message.getIndex(), index);
 
             } else {
                 // Sort Open Inventory
-                for (ItemStack item: message.getItems()) {
+                int end = Math.min(Math.max(index + message.getCount(), message.getSize()),
+                        sender.openContainer.inventorySlots.size());
+                ArrayList<ItemStack> items = message.resolve(slot -> sender.openContainer.getSlot(slot).getStack(),
+                        end);
+
+                if (items == null) {
+                    LOGGER.warn(String.format("[%s] Sort packet does not match the open container of %s, resyncing.",
+                            ExampleMod.NAME, sender.getDisplayName().getFormattedText()));
+                    sender.sendContainerToPlayer(sender.openContainer);
+                    return;
+                }
+
+                for (ItemStack item: items) {
                     sender.openContainer.putStackInSlot(index++, item);
                 }
 
@@ -131,7 +163,9 @@ class ServerHandler {
                     sender.openContainer.putStackInSlot(index++, ExampleMod.AIR);
                 }
 
-                sender.sendContainerToPlayer(sender.openContainer);
+                for (int slot = message.getIndex(); slot < index; slot++) {
+                    ContainerSync.markSlot(sender, sender.openContainer, slot);
+                }
             }
 
             LOGGER.debug(String.format("[%s] Performed sort on: %s",
@@ -141,6 +175,142 @@ class ServerHandler {
         ctx.get().setPacketHandled(true);
     }
 
+    /**
+     * Handler for sort requests. Sorts the server's copy of the inventory.
+     *
+     * @param message A {@link SortRequest}.
+     * @param ctx Supplier of the network event context.
+     */
+    static void handleSortRequest(SortRequest message, Supplier<NetworkEvent.Context> ctx) {
+        ctx.get().enqueueWork(() -> {
+            LOGGER.debug(String.format("[%s] Received sort request.", ExampleMod.NAME));
+
+            ServerPlayerEntity sender = ctx.get().getSender();
+
+            if (sender == null) {
+                LOGGER.warn(String.format("[%s] Attempted server sort on a null player, returning.", ExampleMod.NAME));
+                return;
+            }
+
+            // The current content of the slots to sort, and how to replace it
+            ArrayList<ItemStack> inventory = new ArrayList<>();
+            BiConsumer<Integer, ItemStack> setSlot;
+            BiPredicate<Integer, ItemStack> canHold;
+            int start;
+            long before;
+            boolean armorChanged = false;
+            boolean recorded = false;
+
+            if (message.isPlayer()) {
+                inventory.addAll(sender.inventory.mainInventory);
+                start = Math.min(Math.max(message.getStart(), 0), inventory.size());
+                before = StackKey.hashOf(inventory);
+                setSlot = (index, itemStack) -> {
+                    sender.inventory.setInventorySlotContents(index, itemStack);
+                    ContainerSync.markInventory(sender, index);
+                };
+                canHold = (index, itemStack) -> true;
+
+                if (message.isEquipArmor()) {
+                    // Equipping changes the armor right away, before the sort is known to change anything
+                    InventoryJournal.record(sender, "sort request", false);
+                    recorded = true;
+                    Functions.equipBestArmor(sender, inventory);
+                    armorChanged = StackKey.hashOf(inventory) != before;
+                    ContainerSync.markInventory(sender, sender.inventory.mainInventory.size(),
+                            sender.inventory.mainInventory.size() + sender.inventory.armorInventory.size());
+                }
+
+            } else {
+                // The protected slots, and slots that only give items, are left out
+                ArrayList<Slot> slots = Functions.getSortableSlots(sender.openContainer, sender, message.getStart());
+                for (Slot slot: slots) {
+                    inventory.add(slot.getStack());
+                }
+                start = 0;
+                before = StackKey.hashOf(inventory);
+
+                setSlot = (index, itemStack) -> {
+                    slots.get(index).putStack(itemStack);
+                    ContainerSync.markSlot(sender, sender.openContainer, slots.get(index).slotNumber);
+                };
+                canHold = (index, itemStack) -> slots.get(index).isItemValid(itemStack)
+                        && itemStack.getCount() <= slots.get(index).getItemStackLimit(itemStack);
+            }
+
+            ArrayList<ItemStack> sorted = Functions.sortStacks(inventory, start, message.getOrder(),
+                    message.getMode(), message.getWidth(), message.getHeight());
+
+            // Already sorted, leave the slots alone so nothing is sent back to the client
+            if (!armorChanged && Functions.isUnchanged(before, inventory, start, sorted)) {
+                LOGGER.debug(String.format("[%s] Skipped sort, nothing to change for: %s",
+                        ExampleMod.NAME, sender.getDisplayName().getFormattedText()));
+                return;
+            }
+
+            // Slots that only take some items, like fuel slots, are not sorted into
+            for (int index = start; index < inventory.size() && index - start < sorted.size(); index++) {
+                ItemStack itemStack = sorted.get(index - start);
+
+                if (!itemStack.isEmpty() && !canHold.test(index, itemStack)) {
+                    LOGGER.debug(String.format("[%s] Skipped sort, a slot can not hold its sorted stack for: %s",
+                            ExampleMod.NAME, sender.getDisplayName().getFormattedText()));
+                    return;
+                }
+            }
+
+            if (!recorded) InventoryJournal.record(sender, "sort request", !message.isPlayer());
+
+            for (int index = 0; index < inventory.size(); index++) {
+                if (index < start) {
+                    // Protected slots are only written if armor was swapped into them
+                    if (inventory.get(index) != sender.inventory.mainInventory.get(index)) {
+                        setSlot.accept(index, inventory.get(index));
+                    }
+                } else if (index - start < sorted.size()) {
+                    setSlot.accept(index, sorted.get(index - start));
+                } else {
+                    setSlot.accept(index, ExampleMod.AIR);
+                }
+            }
+
+            // In case all items can't be stored within inventory
+            for (int index = inventory.size() - start; index < sorted.size(); index++) {
+                sender.dropItem(sorted.get(index), false, true);
+            }
+
+            LOGGER.debug(String.format("[%s] Performed sort on: %s",
+                    ExampleMod.NAME, sender.getDisplayName().getFormattedText()));
+        });
+
+        ctx.get().setPacketHandled(true);
+    }
+
+    /**
+     * Handler for capability packets.
+     *
+     * @param message A {@link CapabilityPacket}.
+     * @param ctx Supplier of the network event context.
+     */
+    static void handleCapabilities(CapabilityPacket message, Supplier<NetworkEvent.Context> ctx) {
+        ctx.get().enqueueWork(() -> {
+            ServerPlayerEntity sender = ctx.get().getSender();
+
+            if (sender == null) {
+                LOGGER.warn(String.format("[%s] Capability sender is null, aborting.", ExampleMod.NAME));
+                return;
+            }
+
+            ServerRefill.setEnabled(sender, message.has(CapabilityPacket.SERVER_REFILL));
+
+            LOGGER.debug(String.format("[%s] Server refill %s for: %s", ExampleMod.NAME,
+                    message.has(CapabilityPacket.SERVER_REFILL) ? "enabled" : "disabled",
+                    sender.getDisplayName().getFormattedText()));
+        });
+
+        ctx.get().setPacketHandled(true);
+    }
+
     /**
      * Handler for refill packets.
      *
@@ -162,7 +332,8 @@ class ServerHandler {
             ItemStack newItem = sender.inventory.removeStackFromSlot(message.getIndex());
             sender.setHeldItem(message.getHand(), newItem);
 
-            sender.sendContainerToPlayer(sender.container);
+            ContainerSync.markInventory(sender, message.getIndex());
+            ContainerSync.markHeld(sender, message.getHand());
 
             LOGGER.debug(String.format("[%s] Performed refill on: %s",
                     ExampleMod.NAME, sender.getDisplayName().getFormattedText()));
@@ -189,6 +360,8 @@ class ServerHandler {
                 return;
             }
 
+            InventoryJournal.record(sender, "replace", !message.useHand() && !message.isInPlayerInventory());
+
             if (message.useHand()) {
                 ItemStack oldItem = sender.getHeldItem(message.getHand());
                 ItemStack newItem = sender.inventory.getStackInSlot(message.getReplacementIndex());
@@ -196,7 +369,8 @@ class ServerHandler {
                 sender.setHeldItem(message.getHand(), newItem);
                 sender.inventory.setInventorySlotContents(message.getReplacementIndex(), oldItem);
 
-                sender.sendContainerToPlayer(sender.container);
+                ContainerSync.markHeld(sender, message.getHand());
+                ContainerSync.markInventory(sender, message.getReplacementIndex());
 
             } else {
                 if (message.isInPlayerInventory()) {
@@ -206,7 +380,8 @@ class ServerHandler {
                     sender.inventory.setInventorySlotContents(message.getOldIndex(), newItem);
                     sender.inventory.setInventorySlotContents(message.getReplacementIndex(), oldItem);
 
-                    sender.sendContainerToPlayer(sender.container);
+                    ContainerSync.markInventory(sender, message.getOldIndex());
+                    ContainerSync.markInventory(sender, message.getReplacementIndex());
 
                 } else {
                     ItemStack oldItem = sender.inventory.getStackInSlot(message.getOldIndex());
@@ -215,8 +390,8 @@ class ServerHandler {
                     sender.inventory.setInventorySlotContents(message.getOldIndex(), newItem);
                     sender.openContainer.putStackInSlot(message.getReplacementIndex(), oldItem);
 
-                    sender.sendContainerToPlayer(sender.container);
-                    sender.sendContainerToPlayer(sender.openContainer);
+                    ContainerSync.markInventory(sender, message.getOldIndex());
+                    ContainerSync.markSlot(sender, sender.openContainer, message.getReplacementIndex());
                 }
             }
 
@@ -245,13 +420,14 @@ class ServerHandler {
                 return;
             }
 
+            InventoryJournal.record(sender, "optimization", true);
+
             if (sender.openContainer instanceof WorkbenchContainer) {
                 // External Crafting Grid
                 for (int i = 0; i < message.getOptimizedList().size(); i++) {
                     sender.openContainer.putStackInSlot(i + 1, message.getOptimizedList().get(i));
+                    ContainerSync.markSlot(sender, sender.openContainer, i + 1);
                 }
-
-                sender.sendContainerToPlayer(sender.openContainer);
                 LOGGER.debug(String.format("[%s] Optimized crafting grid.", ExampleMod.NAME));
 
             } else {
@@ -264,10 +440,9 @@ class ServerHandler {
                  */
 
                 for (int i = 0; i < message.getOptimizedList().size(); i++) {
+                    ContainerSync.markSlot(sender, sender.container, index);
                     sender.container.putStackInSlot(index++, message.getOptimizedList().get(i));
                 }
-
-                sender.sendContainerToPlayer(sender.container);
                 LOGGER.debug(String.format("[%s] Optimized player crafting grid.", ExampleMod.NAME));
             }
         });
@@ -318,7 +493,7 @@ class ServerHandler {
             }
 
             sender.setItemStackToSlot(message.getSlotType(), message.getItemStack());
-            sender.sendContainerToPlayer(sender.container);
+            ContainerSync.markEquipment(sender, message.getSlotType());
         });
         ctx.get().setPacketHandled(true);
     }
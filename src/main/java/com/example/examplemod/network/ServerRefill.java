@@ -0,0 +1,210 @@
+/*
+ * Copyright (c) 2020 Hassan Abouelela
+ * Licensed under the MIT License
+ */
+
+package com.example.examplemod.network;
+
+import com.example.examplemod.ExampleMod;
+import com.example.examplemod.functions.ItemLocator;
+import net.minecraft.entity.player.PlayerInventory;
+import net.minecraft.entity.player.ServerPlayerEntity;
+import net.minecraft.item.Item;
+import net.minecraft.item.ItemStack;
+import net.minecraft.util.Hand;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+
+/**
+ * Class to refill held items on the server, in the same tick they run out, for the players that opted in.
+ * Replaces the client noticing the empty hand and asking for a refill, which races with the next use under lag.
+ * Only used on the server thread.
+ */
+public class ServerRefill {
+    /**
+     * Event logger.
+     */
+    private static final Logger LOGGER = LogManager.getLogger();
+
+    /**
+     * A hand that was used during the tick, and may need a refill.
+     */
+    private static final class Pending {
+        /**
+         * The player.
+         */
+        private final ServerPlayerEntity player;
+        /**
+         * The hand that was used.
+         */
+        private final Hand hand;
+        /**
+         * The item that was used.
+         */
+        private final Item item;
+        /**
+         * The selected hotbar slot when the item was used.
+         */
+        private final int selected;
+
+        /**
+         * Creates a pending refill.
+         *
+         * @param player The player.
+         * @param hand The hand that was used.
+         * @param item The item that was used.
+         */
+        Pending(ServerPlayerEntity player, Hand hand, Item item) {
+            this.player = player;
+            this.hand = hand;
+            this.item = item;
+            this.selected = player.inventory.currentItem;
+        }
+    }
+
+    /**
+     * The players that opted into server refills.
+     */
+    private static final Set<UUID> enabled = new HashSet<>();
+    /**
+     * The hands used during the current tick.
+     */
+    private static final ArrayList<Pending> pending = new ArrayList<>();
+    /**
+     * The index of the inventory of every player that opted in. Kept until the player leaves, so the index is only
+     * built once.
+     */
+    private static final Map<UUID, ItemLocator> locators = new HashMap<>();
+
+    /**
+     * Set whether a player opted into server refills.
+     *
+     * @param player The player.
+     * @param enable True to opt in.
+     */
+    static void setEnabled(ServerPlayerEntity player, boolean enable) {
+        if (enable) {
+            enabled.add(player.getUniqueID());
+            getLocator(player);
+        } else {
+            enabled.remove(player.getUniqueID());
+        }
+    }
+
+    /**
+     * Forget a player that left the server.
+     *
+     * @param player The player.
+     */
+    public static void remove(ServerPlayerEntity player) {
+        enabled.remove(player.getUniqueID());
+        locators.remove(player.getUniqueID());
+    }
+
+    /**
+     * Get the index of a player's inventory, creating it if the player has none yet or respawned since.
+     *
+     * @param player The player.
+     * @return The index of the player's inventory.
+     */
+    private static ItemLocator getLocator(ServerPlayerEntity player) {
+        ItemLocator locator = locators.get(player.getUniqueID());
+
+        if (locator == null || !locator.isTracking(player)) {
+            locator = ItemLocator.attach(player);
+            locators.put(player.getUniqueID(), locator);
+        }
+
+        return locator;
+    }
+
+    /**
+     * Mark a range of a player's inventory as changed in the player's index, if the player has one.
+     * Called for every slot changed by a packet handler, which the player's container does not report while another
+     * container is open.
+     *
+     * @param player The player.
+     * @param from The first index (inclusive).
+     * @param to The last index (exclusive).
+     */
+    static void markChanged(ServerPlayerEntity player, int from, int to) {
+        ItemLocator locator = locators.get(player.getUniqueID());
+        if (locator == null) return;
+
+        for (int index = from; index < to; index++) {
+            locator.markDirty(index);
+        }
+    }
+
+    /**
+     * Record a player using an item, to refill the hand at the end of the tick if the item ran out.
+     * Does nothing for players that did not opt in.
+     *
+     * @param player The player.
+     * @param hand The hand holding the item.
+     * @param item The item used.
+     */
+    public static void used(ServerPlayerEntity player, Hand hand, Item item) {
+        if (!enabled.contains(player.getUniqueID())) return;
+
+        pending.add(new Pending(player, hand, item));
+    }
+
+    /**
+     * Refill every hand used during the tick that ran out. Called at the end of every server tick, before the
+     * changed slots are sent.
+     */
+    public static void apply() {
+        if (pending.isEmpty()) return;
+
+        for (Pending refill: pending) {
+            ServerPlayerEntity player = refill.player;
+            PlayerInventory inventory = player.inventory;
+
+            if (player.removed || !player.getHeldItem(refill.hand).isEmpty()) continue;
+            if (refill.hand == Hand.MAIN_HAND && inventory.currentItem != refill.selected) continue;
+
+            ItemLocator locator = getLocator(player);
+            int slot = locator.getIndex().getLastSlot(refill.item);
+
+            // The index only sees the player's container while no other container is open
+            if (!locator.holds(slot, refill.item)) slot = findSlot(inventory, refill.item);
+            if (slot == -1) continue;
+
+            player.setHeldItem(refill.hand, inventory.removeStackFromSlot(slot));
+            ContainerSync.markInventory(player, slot);
+            ContainerSync.markHeld(player, refill.hand);
+
+            LOGGER.debug(String.format("[%s] Performed server refill on: %s",
+                    ExampleMod.NAME, player.getDisplayName().getFormattedText()));
+        }
+
+        pending.clear();
+    }
+
+    /**
+     * Find the slot to refill an item from by scanning the inventory, when the index is behind.
+     * Like client refills, the last matching slot of the inventory is used.
+     *
+     * @param inventory The inventory of the player.
+     * @param item The item to refill.
+     *
+     * @return The slot, or -1 if the item is not in the inventory.
+     */
+    private static int findSlot(PlayerInventory inventory, Item item) {
+        for (int slot = inventory.mainInventory.size() - 1; slot >= 0; slot--) {
+            ItemStack itemStack = inventory.mainInventory.get(slot);
+
+            if (!itemStack.isEmpty() && itemStack.getItem() == item) return slot;
+        }
+
+        return -1;
+    }
+}
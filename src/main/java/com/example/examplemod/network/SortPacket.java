@@ -5,23 +5,125 @@
 
 package com.example.examplemod.network;
 
+import com.example.examplemod.ExampleMod;
+import com.example.examplemod.functions.StackKey;
+import net.minecraft.client.Minecraft;
+import net.minecraft.client.entity.player.ClientPlayerEntity;
+import net.minecraft.item.Item;
 import net.minecraft.item.ItemStack;
 import net.minecraft.network.PacketBuffer;
+import net.minecraftforge.api.distmarker.Dist;
+import net.minecraftforge.api.distmarker.OnlyIn;
 
+import javax.annotation.Nullable;
 import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.IntFunction;
 
 /**
  * Class to rewrite the content of an inventory.
+ *
+ * <p>Stacks the server already has are sent as the slot they are currently in, their new count, and their item,
+ * instead of in full. Stacks with tags also carry a 64-bit digest of their item and tags, see
+ * {@link StackKey#digestOf(ItemStack)}. The server only copies a stack from that exact slot, and only if it holds the
+ * same item with the same tags, so a copy is never taken from a stack that only looks similar. Stacks that are new to
+ * the inventory are sent in full.</p>
  */
 public class SortPacket {
+    /**
+     * Wire tag of an empty slot.
+     */
+    private static final byte EMPTY = 0;
+    /**
+     * Wire tag of a stack copied from a slot already in the inventory.
+     */
+    private static final byte MOVED = 1;
+    /**
+     * Wire tag of a stack sent in full.
+     */
+    private static final byte FULL = 2;
+    /**
+     * Wire tag of a stack with tags copied from a slot already in the inventory.
+     */
+    private static final byte MOVED_TAGGED = 3;
+
+    /**
+     * A received slot of the new inventory.
+     */
+    private static final class Entry {
+        /**
+         * The stack, if sent in full or empty. Null if the stack is copied from another slot.
+         */
+        @Nullable
+        private final ItemStack itemStack;
+        /**
+         * The slot to copy the stack from.
+         */
+        private final int source;
+        /**
+         * The new count of the copied stack.
+         */
+        private final int count;
+        /**
+         * The numeric registry ID of the item of the copied stack, used to check the source slot.
+         */
+        private final int item;
+        /**
+         * Whether the copied stack has tags.
+         */
+        private final boolean tagged;
+        /**
+         * The digest of the item and tags of the copied stack, used to check the source slot. Only set if tagged.
+         */
+        private final long digest;
+
+        /**
+         * Creates an entry for a stack sent in full.
+         *
+         * @param itemStack The stack.
+         */
+        Entry(ItemStack itemStack) {
+            this.itemStack = itemStack;
+            this.source = -1;
+            this.count = 0;
+            this.item = 0;
+            this.tagged = false;
+            this.digest = 0;
+        }
+
+        /**
+         * Creates an entry for a stack copied from another slot.
+         *
+         * @param source The slot to copy from.
+         * @param count The new count.
+         * @param item The numeric registry ID of the item of the stack.
+         * @param tagged Whether the stack has tags.
+         * @param digest The digest of the item and tags of the stack, if it has tags.
+         */
+        Entry(int source, int count, int item, boolean tagged, long digest) {
+            this.itemStack = null;
+            this.source = source;
+            this.count = count;
+            this.item = item;
+            this.tagged = tagged;
+            this.digest = digest;
+        }
+    }
+
     /**
      * The player to perform the sort on.
      */
     private final boolean player;
     /**
-     * The new inventory.
+     * The new inventory. Only set on the sending side.
      */
     private final ArrayList<ItemStack> newInventory;
+    /**
+     * The received new inventory. Only set on the receiving side.
+     */
+    private final ArrayList<Entry> entries;
     /**
      * The index of the first item in the inventory.
      */
@@ -40,6 +142,7 @@ public class SortPacket {
     public SortPacket(ArrayList<ItemStack> newInventory, int startingIndex) {
         this.player = true;
         this.newInventory = newInventory;
+        this.entries = null;
         this.index = startingIndex;
         this.size = 0;
     }
@@ -54,21 +157,23 @@ public class SortPacket {
     public SortPacket(ArrayList<ItemStack> newInventory, int startingIndex, int size) {
         this.player = false;
         this.newInventory = newInventory;
+        this.entries = null;
         this.index = startingIndex;
         this.size = size;
     }
 
     /**
-     * Private full constructor for a sort packet. This is used to ask a server to rewrite what is in a given inventory.
+     * Private received constructor for a sort packet.
      *
-     * @param newInventory The inventory that will replace the old one.
+     * @param entries The received new inventory.
      * @param startingIndex The number of protected slots, such as hotbar slots.
      * @param size The size of the new inventory.
      * @param player If the inventory belongs to a player.
      */
-    private SortPacket(ArrayList<ItemStack> newInventory, int startingIndex, int size, boolean player) {
+    private SortPacket(ArrayList<Entry> entries, int startingIndex, int size, boolean player) {
         this.player = player;
-        this.newInventory = newInventory;
+        this.newInventory = null;
+        this.entries = entries;
         this.index = startingIndex;
         this.size = size;
     }
@@ -83,7 +188,8 @@ public class SortPacket {
     }
 
     /**
-     * Returns the new inventory.
+     * Returns the new inventory, as given to the packet.
+     * Not available once the packet has been received, see {@link SortPacket#resolve(IntFunction, int)}.
      *
      * @return The new inventory.
      */
@@ -91,6 +197,15 @@ public class SortPacket {
         return this.newInventory;
     }
 
+    /**
+     * Returns the number of slots in the new inventory.
+     *
+     * @return The number of slots.
+     */
+    int getCount() {
+        return this.entries != null ? this.entries.size() : this.newInventory.size();
+    }
+
     /**
      * Returns the beginning index.
      *
@@ -109,6 +224,84 @@ public class SortPacket {
         return this.size;
     }
 
+    /**
+     * Rebuild the new inventory of a received packet.
+     * Must be called before any slot is changed, as copied stacks are read from the current slots.
+     *
+     * @param slots Gets the current stack in a slot.
+     * @param end The end of the slots that can be copied from (exclusive). They start at the beginning index.
+     *
+     * @return The new inventory, or null if a copied stack is no longer in its slot.
+     */
+    @Nullable
+    ArrayList<ItemStack> resolve(IntFunction<ItemStack> slots, int end) {
+        ArrayList<ItemStack> resolved = new ArrayList<>(this.entries.size());
+
+        for (Entry entry: this.entries) {
+            if (entry.itemStack != null) {
+                resolved.add(entry.itemStack);
+                continue;
+            }
+
+            // The inventory changed since the packet was sent, the client is resynced instead
+            if (entry.source < this.index || entry.source >= end) return null;
+
+            ItemStack source = slots.apply(entry.source);
+            if (source.isEmpty() || Item.getIdFromItem(source.getItem()) != entry.item) return null;
+            if (hasTags(source) != entry.tagged || (entry.tagged && StackKey.digestOf(source) != entry.digest)) {
+                return null;
+            }
+
+            if (entry.count <= 0 || entry.count > source.getMaxStackSize()) return null;
+
+            ItemStack itemStack = source.copy();
+            itemStack.setCount(entry.count);
+            resolved.add(itemStack);
+        }
+
+        return resolved;
+    }
+
+    /**
+     * Whether a stack has tags. Copies of stacks with tags are checked against their digest.
+     *
+     * @param itemStack The stack.
+     * @return True if the stack has tags that are not empty.
+     */
+    private static boolean hasTags(ItemStack itemStack) {
+        return itemStack.getTag() != null && !itemStack.getTag().isEmpty();
+    }
+
+    /**
+     * Get the current content of the slots a packet replaces, as seen by the client.
+     *
+     * @param message The packet.
+     * @return The stacks in the slots, starting at the beginning index. Empty if there is no player.
+     */
+    @OnlyIn(Dist.CLIENT)
+    private static List<ItemStack> getCurrentSlots(SortPacket message) {
+        ClientPlayerEntity player = Minecraft.getInstance().player;
+        ArrayList<ItemStack> current = new ArrayList<>();
+
+        if (player == null) return current;
+
+        if (message.player) {
+            for (int slot = message.index; slot < player.inventory.mainInventory.size(); slot++) {
+                current.add(player.inventory.mainInventory.get(slot));
+            }
+
+        } else {
+            int end = Math.min(Math.max(message.index + message.newInventory.size(), message.size),
+                    player.openContainer.inventorySlots.size());
+
+            for (int slot = message.index; slot < end; slot++) {
+                current.add(player.openContainer.getSlot(slot).getStack());
+            }
+        }
+
+        return current;
+    }
+
     /**
      * The encoder for this packet.
      *
@@ -118,14 +311,39 @@ public class SortPacket {
     static void encode(SortPacket message, PacketBuffer buffer) {
         buffer.writeInt(message.index);
         buffer.writeInt(message.size);
+        buffer.writeBoolean(message.player);
+
+        // The first slot of each kind of stack the server already has
+        List<ItemStack> current = getCurrentSlots(message);
+        Map<StackKey, Integer> slots = new HashMap<>();
+        for (int i = 0; i < current.size(); i++) {
+            ItemStack itemStack = current.get(i);
+            if (!itemStack.isEmpty()) slots.putIfAbsent(StackKey.of(itemStack), message.index + i);
+        }
 
         // Writing number of items to be sent, and items to buffer
-        buffer.writeInt(message.newInventory.size());
+        buffer.writeVarInt(message.newInventory.size());
         for (ItemStack item: message.newInventory) {
-            buffer.writeItemStack(item);
-        }
+            if (item.isEmpty()) {
+                buffer.writeByte(EMPTY);
+                continue;
+            }
 
-        buffer.writeBoolean(message.player);
+            Integer source = slots.get(StackKey.of(item));
+
+            if (source == null) {
+                buffer.writeByte(FULL);
+                buffer.writeItemStack(item);
+                continue;
+            }
+
+            boolean tagged = hasTags(item);
+            buffer.writeByte(tagged ? MOVED_TAGGED : MOVED);
+            buffer.writeVarInt(source);
+            buffer.writeVarInt(item.getCount());
+            buffer.writeVarInt(Item.getIdFromItem(item.getItem()));
+            if (tagged) buffer.writeLong(StackKey.digestOf(item));
+        }
     }
 
     /**
@@ -137,16 +355,33 @@ public class SortPacket {
     static SortPacket decode(PacketBuffer buffer) {
         int index = buffer.readInt();
         int size = buffer.readInt();
+        boolean player = buffer.readBoolean();
 
         // Getting number of ItemStacks
-        int itemNumber = buffer.readInt();
-        ArrayList<ItemStack> inventory = new ArrayList<>();
+        int itemNumber = buffer.readVarInt();
+        ArrayList<Entry> entries = new ArrayList<>();
 
         // Adding items from buffer
         for (int item = 0; item < itemNumber; item++) {
-            inventory.add(buffer.readItemStack());
+            switch (buffer.readByte()) {
+                case MOVED:
+                    entries.add(new Entry(buffer.readVarInt(), buffer.readVarInt(), buffer.readVarInt(), false, 0));
+                    break;
+
+                case MOVED_TAGGED:
+                    entries.add(new Entry(buffer.readVarInt(), buffer.readVarInt(), buffer.readVarInt(), true,
+                            buffer.readLong()));
+                    break;
+
+                case FULL:
+                    entries.add(new Entry(buffer.readItemStack()));
+                    break;
+
+                default:
+                    entries.add(new Entry(ExampleMod.AIR));
+            }
         }
 
-        return new SortPacket(inventory, index, size, buffer.readBoolean());
+        return new SortPacket(entries, index, size, player);
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,157 @@
+/*
+ * Copyright (c) 2020 Hassan Abouelela
+ * Licensed under the MIT License
+ */
+
+package com.example.examplemod.network;
+
+import com.example.examplemod.events.ClientEventHandlers;
+import com.example.examplemod.functions.Functions;
+import net.minecraft.network.PacketBuffer;
+
+/**
+ * Class to ask the server to sort an inventory. The server sorts its own copy of the inventory.
+ */
+public class SortRequest {
+    /**
+     * Whether to sort the player's inventory, or the open container.
+     */
+    private final boolean player;
+    /**
+     * The structure the items should be set in.
+     */
+    private final ClientEventHandlers.Order order;
+    /**
+     * The sorting logic to use.
+     */
+    private final Functions.Mode mode;
+    /**
+     * The width of the inventory. 0 if the items should not be arranged.
+     */
+    private final int width;
+    /**
+     * The height of the inventory. 0 if the items should not be arranged.
+     */
+    private final int height;
+    /**
+     * The number of protected slots at the start of the inventory, such as hotbar slots.
+     */
+    private final int start;
+    /**
+     * Whether the best armor in the inventory should be equipped.
+     */
+    private final boolean equipArmor;
+
+    /**
+     * Constructor for a sort request.
+     *
+     * @param player Whether to sort the player's inventory, or the open container.
+     * @param order The structure the items should be set in.
+     * @param mode The sorting logic to use.
+     * @param width The width of the inventory. 0 if the items should not be arranged.
+     * @param height The height of the inventory. 0 if the items should not be arranged.
+     * @param start The number of protected slots, such as hotbar slots.
+     * @param equipArmor Whether the best armor in the inventory should be equipped. Only used for players.
+     */
+    public SortRequest(boolean player, ClientEventHandlers.Order order, Functions.Mode mode, int width, int height,
+                       int start, boolean equipArmor) {
+        this.player = player;
+        this.order = order;
+        this.mode = mode;
+        this.width = width;
+        this.height = height;
+        this.start = start;
+        this.equipArmor = equipArmor;
+    }
+
+    /**
+     * Returns whether to sort the player's inventory, or the open container.
+     *
+     * @return True for the player's inventory.
+     */
+    boolean isPlayer() {
+        return this.player;
+    }
+
+    /**
+     * Returns the structure the items should be set in.
+     *
+     * @return The order.
+     */
+    ClientEventHandlers.Order getOrder() {
+        return this.order;
+    }
+
+    /**
+     * Returns the sorting logic to use.
+     *
+     * @return The mode.
+     */
+    Functions.Mode getMode() {
+        return this.mode;
+    }
+
+    /**
+     * Returns the width of the inventory.
+     *
+     * @return The width.
+     */
+    int getWidth() {
+        return this.width;
+    }
+
+    /**
+     * Returns the height of the inventory.
+     *
+     * @return The height.
+     */
+    int getHeight() {
+        return this.height;
+    }
+
+    /**
+     * Returns the number of protected slots.
+     *
+     * @return The number of protected slots.
+     */
+    int getStart() {
+        return this.start;
+    }
+
+    /**
+     * Returns whether the best armor should be equipped.
+     *
+     * @return Whether to equip armor.
+     */
+    boolean isEquipArmor() {
+        return this.equipArmor;
+    }
+
+    /**
+     * The encoder for this packet.
+     *
+     * @param message The packet.
+     * @param buffer The buffer to write to.
+     */
+    static void encode(SortRequest message, PacketBuffer buffer) {
+        buffer.writeBoolean(message.player);
+        buffer.writeEnumValue(message.order);
+        buffer.writeEnumValue(message.mode);
+        buffer.writeVarInt(message.width);
+        buffer.writeVarInt(message.height);
+        buffer.writeVarInt(message.start);
+        buffer.writeBoolean(message.equipArmor);
+    }
+
+    /**
+     * The decoder for this packet.
+     *
+     * @param buffer The buffer to read from.
+     * @return The packet.
+     */
+    static SortRequest decode(PacketBuffer buffer) {
+        return new SortRequest(buffer.readBoolean(), buffer.readEnumValue(ClientEventHandlers.Order.class),
+                buffer.readEnumValue(Functions.Mode.class), buffer.readVarInt(), buffer.readVarInt(),
+                buffer.readVarInt(), buffer.readBoolean());
+    }
+}